@@ -1,20 +1,80 @@
 package com.zq.eldermindllmserver.config;
 
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * HTTP客户端配置类
+ * 为上游智谱AI调用提供带连接池、长连接复用和超时控制的HTTP客户端
  */
 @Configuration
 public class HttpClientConfig {
 
+    /**
+     * 上游连接池
+     * 单路由连接数与限流器最大并发数对齐，并预留少量余量
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager upstreamConnectionManager(LLMConfig llmConfig) {
+        LLMConfig.HttpClient httpConfig = llmConfig.getHttpClient();
+        int perRoute = Math.max(1, llmConfig.getRateLimiter().getMaxConcurrentRequests() + httpConfig.getExtraConnections());
+
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofSeconds(httpConfig.getConnectTimeout()))
+                .setSocketTimeout(Timeout.ofSeconds(llmConfig.getTimeout()))
+                .setValidateAfterInactivity(TimeValue.ofSeconds(httpConfig.getValidateAfterInactivity()))
+                .setTimeToLive(TimeValue.ofSeconds(httpConfig.getConnectionTimeToLive()))
+                .build();
+
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(perRoute)
+                .setMaxConnTotal(perRoute * 2)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+    }
+
+    /**
+     * 上游HTTP客户端
+     * 默认开启gzip/deflate响应解压，后台线程定期清理空闲和过期连接
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient upstreamHttpClient(PoolingHttpClientConnectionManager upstreamConnectionManager,
+                                                  LLMConfig llmConfig) {
+        LLMConfig.HttpClient httpConfig = llmConfig.getHttpClient();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofSeconds(httpConfig.getConnectTimeout()))
+                .setResponseTimeout(Timeout.ofSeconds(llmConfig.getTimeout()))
+                .setConnectionKeepAlive(TimeValue.ofSeconds(httpConfig.getKeepAlive()))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(upstreamConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(httpConfig.getMaxIdleTime()))
+                .build();
+    }
+
     /**
      * 创建RestTemplate Bean
      */
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(CloseableHttpClient upstreamHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(upstreamHttpClient));
     }
 }
@@ -4,6 +4,11 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * LLM推理配置类
  */
@@ -37,6 +42,11 @@ public class LLMConfig {
      */
     private String model = "glm-4v-plus";
 
+    /**
+     * 智谱AI对话补全接口地址，容量测试时可指向本地桩服务
+     */
+    private String apiUrl = "https://open.bigmodel.cn/api/paas/v4/chat/completions";
+
     /**
      * 触发条件配置
      */
@@ -56,6 +66,71 @@ public class LLMConfig {
      * 限流配置
      */
     private RateLimiter rateLimiter = new RateLimiter();
+
+    /**
+     * 上游HTTP客户端配置
+     */
+    private HttpClient httpClient = new HttpClient();
+
+    /**
+     * 异步推理任务配置
+     */
+    private AsyncJobs asyncJobs = new AsyncJobs();
+
+    /**
+     * 流式推理配置
+     */
+    private Streaming streaming = new Streaming();
+
+    /**
+     * 批量推理配置
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * 推理结果缓存配置
+     */
+    private Cache cache = new Cache();
+
+    /**
+     * 请求合并配置
+     */
+    private Coalescing coalescing = new Coalescing();
+
+    /**
+     * 动作目录配置
+     */
+    private ActionCatalog actionCatalog = new ActionCatalog();
+
+    /**
+     * 结果查询存储配置
+     */
+    private ResultStore resultStore = new ResultStore();
+
+    /**
+     * 检测事件合并配置
+     */
+    private EventCoalescing eventCoalescing = new EventCoalescing();
+
+    /**
+     * 请求截止时间配置
+     */
+    private RequestDeadline requestDeadline = new RequestDeadline();
+
+    /**
+     * 上游对冲请求配置
+     */
+    private Hedging hedging = new Hedging();
+
+    /**
+     * 上游重试配置
+     */
+    private Retry retry = new Retry();
+
+    /**
+     * 上游熔断配置
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
     
     @Data
     public static class TriggerConditions {
@@ -83,10 +158,53 @@ public class LLMConfig {
          * 仅对关键动作推理
          */
         private boolean criticalActionsOnly = false;
+
+        /**
+         * 目标动作ID列表，为空时动作目录中的全部动作均为目标动作
+         */
+        private List<Integer> targetActions = new ArrayList<>();
+
+        /**
+         * 日常活动（非紧急、非健康相关、非关键）事件的采样率，0~1
+         */
+        private double routineSampleRate = 1.0;
+
+        /**
+         * 紧急动作是否跳过目标动作、最大置信度和采样过滤
+         */
+        private boolean emergencyBypass = true;
+
+        /**
+         * 按动作ID覆盖的阈值和采样率
+         */
+        private Map<Integer, ActionThreshold> actionThresholds = new HashMap<>();
+    }
+
+    @Data
+    public static class ActionThreshold {
+        /**
+         * 最小置信度，为空时使用全局值
+         */
+        private Double minConfidence;
+
+        /**
+         * 最大置信度，为空时使用全局值
+         */
+        private Double maxConfidence;
+
+        /**
+         * 采样率，为空时按动作类别使用默认值
+         */
+        private Double sampleRate;
     }
     
     @Data
     public static class PromptConfig {
+        /**
+         * 推理使用的提示词模式：default（system-prompt模板）、simple、detailed
+         */
+        private String mode = "default";
+
         /**
          * 系统提示词
          */
@@ -114,6 +232,56 @@ public class LLMConfig {
          * 是否包含视频路径
          */
         private boolean includeVideoPath = true;
+
+        /**
+         * 是否同时输出未类型化的result字段（Map），供依赖旧格式的调用方使用；需要额外解析一次
+         */
+        private boolean untypedResult = false;
+
+        /**
+         * 是否在结果中保存模型的思考过程（reasoning_content），会显著增加结果日志和缓存的体积
+         */
+        private boolean includeReasoning = false;
+
+        /**
+         * 结果日志写入队列容量
+         */
+        private int journalQueueCapacity = 10000;
+
+        /**
+         * 队列已满时的最长等待时间（毫秒），超时后丢弃
+         */
+        private long offerTimeout = 50;
+
+        /**
+         * 单次组提交的最大条数
+         */
+        private int maxBatchSize = 256;
+
+        /**
+         * 单个分段文件的最大字节数
+         */
+        private long segmentMaxBytes = 64L * 1024 * 1024;
+
+        /**
+         * 单个分段文件的最长写入时间（秒）
+         */
+        private long segmentMaxAge = 3600;
+
+        /**
+         * fsync策略：none（交给操作系统）、batch（每次组提交后）、interval（按间隔）
+         */
+        private String fsyncPolicy = "interval";
+
+        /**
+         * interval策略下的fsync间隔（毫秒）
+         */
+        private long fsyncInterval = 1000;
+
+        /**
+         * 启动时是否将旧版本逐条保存的结果文件（llm_result_*.json）导入分段文件
+         */
+        private boolean importLegacyResults = true;
     }
     
     @Data
@@ -144,8 +312,382 @@ public class LLMConfig {
         private int queueTimeout = 30;
         
         /**
-         * 重试延迟时间（秒）
+         * 重试延迟时间（秒），频率受限时重新检查配额的最长间隔
          */
         private double retryDelay = 1.0;
+
+        /**
+         * 预计等待超过队列超时时是否提前拒绝低优先级请求
+         */
+        private boolean loadShedding = true;
+
+        /**
+         * 频率配额后端：memory（仅本进程）、mmap（同主机多进程共享文件）、remote（多实例共享网络存储）
+         */
+        private String backend = "memory";
+
+        /**
+         * mmap后端使用的共享文件路径
+         */
+        private String sharedFile = "llm_ratelimit.dat";
+
+        /**
+         * remote后端的配额存储地址
+         */
+        private String remoteUrl = "http://localhost:8081/api/ratelimit/store";
+
+        /**
+         * remote后端请求超时时间（毫秒）
+         */
+        private int remoteTimeout = 500;
+
+        /**
+         * remote后端的配额存储不可用后暂停访问的时间（毫秒），期间直接使用本地限流
+         */
+        private long remoteRetryInterval = 5000;
+
+        /**
+         * 是否将本实例作为共享配额存储对外提供服务
+         */
+        private boolean storeEnabled = false;
+
+        /**
+         * 每次从后端批量预留的配额数，大于1时在本地分批消耗
+         */
+        private int leaseBatchSize = 1;
+
+        /**
+         * 批量预留配额的本地有效期（毫秒），过期未用完的配额作废
+         */
+        private long leaseTtl = 1000;
+
+        /**
+         * 每分钟最大token数（输入+输出），0表示只统计不限制；仅在本实例内统计，不经过共享配额后端
+         */
+        private long maxTokensPerMinute = 0;
+
+        /**
+         * 估算提示词token数时每个token对应的字符数
+         */
+        private double charsPerToken = 1.5;
+
+        /**
+         * 视频等非文本输入的初始token估算值，之后按上游返回的实际用量自动修正
+         */
+        private int mediaTokens = 2000;
+
+        /**
+         * 输出token数的初始估算值，之后按上游返回的实际用量自动修正
+         */
+        private int completionTokens = 1000;
+    }
+
+    @Data
+    public static class HttpClient {
+        /**
+         * 建立连接及从连接池获取连接的超时时间（秒）
+         */
+        private int connectTimeout = 10;
+
+        /**
+         * 服务端未声明Keep-Alive时的默认长连接保持时间（秒）
+         */
+        private int keepAlive = 60;
+
+        /**
+         * 空闲连接最长保留时间（秒），超过后由后台线程回收
+         */
+        private int maxIdleTime = 30;
+
+        /**
+         * 连接空闲超过该时间后复用前先做有效性检查（秒）
+         */
+        private int validateAfterInactivity = 5;
+
+        /**
+         * 连接最长存活时间（秒）
+         */
+        private int connectionTimeToLive = 300;
+
+        /**
+         * 在最大并发请求数之外额外预留的连接数
+         */
+        private int extraConnections = 2;
+    }
+
+    @Data
+    public static class AsyncJobs {
+        /**
+         * 工作线程数
+         */
+        private int workerThreads = 4;
+
+        /**
+         * 等待队列容量，队列满时拒绝新任务
+         */
+        private int queueCapacity = 100;
+
+        /**
+         * 已结束任务的结果保留时间（秒）
+         */
+        private long jobTtl = 600;
+    }
+
+    @Data
+    public static class Streaming {
+        /**
+         * 流式推理工作线程数
+         */
+        private int workerThreads = 4;
+
+        /**
+         * 等待队列容量
+         */
+        private int queueCapacity = 20;
+    }
+
+    @Data
+    public static class Batch {
+        /**
+         * 单次批量请求的最大条数
+         */
+        private int maxBatchSize = 20;
+
+        /**
+         * 批量推理等待队列容量
+         */
+        private int queueCapacity = 200;
+
+        /**
+         * 默认整体截止时间（秒）
+         */
+        private int defaultDeadline = 120;
+    }
+
+    @Data
+    public static class Cache {
+        /**
+         * 是否启用结果缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 最大缓存条数，超过后按LRU淘汰
+         */
+        private int maxEntries = 1000;
+
+        /**
+         * 缓存有效期（秒）
+         */
+        private long ttl = 600;
+
+        /**
+         * 启动时是否从已保存的结果预热
+         */
+        private boolean warmOnStartup = false;
+    }
+
+    @Data
+    public static class Coalescing {
+        /**
+         * 是否合并相同的并发请求
+         */
+        private boolean enabled = true;
+
+        /**
+         * 幂等键保留时间（秒）
+         */
+        private long idempotencyTtl = 300;
+
+        /**
+         * 最大幂等键数量
+         */
+        private int maxIdempotencyKeys = 10000;
+    }
+
+    @Data
+    public static class ResultStore {
+        /**
+         * 内存中保留的最近结果条数（环形缓冲区）
+         */
+        private int recentCapacity = 1024;
+
+        /**
+         * 索引的最大结果条数，超过后淘汰最旧的索引项
+         */
+        private int maxIndexEntries = 100000;
+
+        /**
+         * 启动时是否为已有的结果日志建立索引
+         */
+        private boolean indexOnStartup = true;
+
+        /**
+         * 默认分页大小
+         */
+        private int defaultPageSize = 50;
+
+        /**
+         * 最大分页大小
+         */
+        private int maxPageSize = 500;
+    }
+
+    @Data
+    public static class ActionCatalog {
+        /**
+         * 外部动作目录文件路径，为空时使用内置的static/action-mappings.json
+         */
+        private String path = "";
+
+        /**
+         * 是否监听外部文件变化并自动重新加载
+         */
+        private boolean watch = false;
+
+        /**
+         * 检测到文件变化后等待多久再重新加载（毫秒），合并连续的写入
+         */
+        private long reloadDelay = 500;
+
+        /**
+         * 动作目录接口是否预压缩gzip响应
+         */
+        private boolean gzipResponses = true;
+
+        /**
+         * 响应体达到该大小（字节）才压缩
+         */
+        private int gzipMinSize = 1024;
+    }
+
+    @Data
+    public static class EventCoalescing {
+        /**
+         * 是否按来源合并连续的检测事件
+         */
+        private boolean enabled = true;
+
+        /**
+         * 合并窗口（毫秒），窗口内每来一个可合并的事件就顺延
+         */
+        private long window = 3000;
+
+        /**
+         * 单个窗口从首个事件起的最长持续时间（毫秒）
+         */
+        private long maxWindow = 15000;
+
+        /**
+         * 同一分类的不同动作是否视为可合并
+         */
+        private boolean mergeSameCategory = true;
+
+        /**
+         * 最多跟踪的来源数量，超过后新来源的事件不合并
+         */
+        private int maxSources = 10000;
+
+        /**
+         * 每个来源同时打开的最大窗口数
+         */
+        private int maxWindowsPerSource = 8;
+
+        /**
+         * 来源空闲多久后清理其状态（毫秒）
+         */
+        private long idleTimeout = 60000;
+    }
+
+    @Data
+    public static class RequestDeadline {
+        /**
+         * 未指定时每个请求的整体截止时间（秒），覆盖排队、所有上游尝试和解析
+         */
+        private double defaultTimeout = 90;
+
+        /**
+         * 客户端通过X-Request-Timeout请求头可设置的最大截止时间（秒）
+         */
+        private double maxTimeout = 300;
+
+        /**
+         * 剩余时间少于该值（秒）时不再发起新的上游尝试
+         */
+        private double minAttemptTime = 1.0;
+    }
+
+    @Data
+    public static class Hedging {
+        /**
+         * 是否启用对冲请求：首次尝试耗时超过观测到的延迟分位数时再发起一次，取先返回的结果
+         */
+        private boolean enabled = false;
+
+        /**
+         * 触发对冲的延迟分位数
+         */
+        private double percentile = 0.95;
+
+        /**
+         * 对冲前的最短等待时间（毫秒）
+         */
+        private long minDelay = 2000;
+
+        /**
+         * 延迟样本数达到该值后才启用对冲
+         */
+        private int minSamples = 20;
+
+        /**
+         * 保留的最近延迟样本数
+         */
+        private int sampleSize = 256;
+
+        /**
+         * 对冲请求占上游请求的最大比例，对冲请求同样消耗上游配额
+         */
+        private double maxRatio = 0.1;
+    }
+
+    @Data
+    public static class Retry {
+        /**
+         * 退避基础延迟（毫秒）
+         */
+        private long baseDelay = 500;
+
+        /**
+         * 退避最大延迟（毫秒）
+         */
+        private long maxDelay = 10000;
+
+        /**
+         * 上游Retry-After超过该值（毫秒）时不再重试
+         */
+        private long maxRetryAfter = 30000;
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        /**
+         * 是否启用熔断
+         */
+        private boolean enabled = true;
+
+        /**
+         * 连续失败多少次后打开
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 打开后多久进入半开状态（秒）
+         */
+        private int openDuration = 30;
+
+        /**
+         * 半开状态下同时放行的探测请求数
+         */
+        private int halfOpenMaxCalls = 1;
     }
 }
@@ -0,0 +1,32 @@
+package com.zq.eldermindllmserver.config;
+
+import com.zq.eldermindllmserver.service.InMemoryRateLimitBackend;
+import com.zq.eldermindllmserver.service.MappedFileRateLimitBackend;
+import com.zq.eldermindllmserver.service.RateLimitBackend;
+import com.zq.eldermindllmserver.service.RemoteRateLimitBackend;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * 频率配额后端配置类
+ * memory：仅本进程；mmap：同主机多进程共享文件；remote：多实例共享网络存储
+ */
+@Configuration
+public class RateLimitBackendConfig {
+
+    @Bean(destroyMethod = "close")
+    public RateLimitBackend rateLimitBackend(LLMConfig llmConfig) {
+        LLMConfig.RateLimiter config = llmConfig.getRateLimiter();
+        return switch (config.getBackend().toLowerCase()) {
+            case "mmap" -> new MappedFileRateLimitBackend(
+                    config, Paths.get(config.getSharedFile()), System::currentTimeMillis);
+            case "remote" -> new RemoteRateLimitBackend(
+                    config.getRemoteUrl(), config.getRemoteTimeout(), config.getRemoteRetryInterval(),
+                    new InMemoryRateLimitBackend(config, System::nanoTime));
+            case "memory" -> new InMemoryRateLimitBackend(config, System::nanoTime);
+            default -> throw new IllegalArgumentException("未知的限流后端: " + config.getBackend());
+        };
+    }
+}
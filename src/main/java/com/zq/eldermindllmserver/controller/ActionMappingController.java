@@ -1,220 +1,224 @@
 package com.zq.eldermindllmserver.controller;
 
 import com.zq.eldermindllmserver.service.ActionMappingService;
-import com.zq.eldermindllmserver.service.PromptGeneratorService;
+import com.zq.eldermindllmserver.service.CatalogResponseCache;
+import com.zq.eldermindllmserver.service.PromptTemplateRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * 动作映射管理控制器
+ * <p>
+ * 只读接口的响应按动作目录版本预先编码并缓存，携带强ETag；请求的If-None-Match命中时返回304。
  */
 @Slf4j
 @RestController
 @RequestMapping("/api/actions")
 @RequiredArgsConstructor
 public class ActionMappingController {
-    
+
     private final ActionMappingService actionMappingService;
-    private final PromptGeneratorService promptGeneratorService;
-    
+    private final PromptTemplateRegistry promptTemplateRegistry;
+    private final CatalogResponseCache catalogResponseCache;
+
     /**
      * 获取所有动作映射
      */
     @GetMapping("/mappings")
-    public ResponseEntity<Map<String, Object>> getAllMappings() {
+    public ResponseEntity<?> getAllMappings(@RequestHeader HttpHeaders headers) {
+        return cached("mappings", headers, "获取动作映射失败", () -> {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("actions", actionMappingService.getActionInfo(0) != null ? "loaded" : "not loaded");
+            response.put("categories", new TreeMap<>(actionMappingService.getCategories()));
+            response.put("critical_actions", actionMappingService.getCriticalActionNames());
+            response.put("emergency_actions", actionMappingService.getEmergencyActionNames());
+            response.put("health_related_actions", actionMappingService.getHealthRelatedActionNames());
+            return response;
+        });
+    }
+
+    /**
+     * 重新加载动作目录，加载失败时继续使用当前版本
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reload() {
         try {
-            Map<String, Object> response = Map.of(
-                "actions", actionMappingService.getActionInfo(0) != null ? "loaded" : "not loaded",
-                "categories", actionMappingService.getCategories(),
-                "critical_actions", actionMappingService.getCriticalActionNames(),
-                "emergency_actions", actionMappingService.getEmergencyActionNames(),
-                "health_related_actions", actionMappingService.getHealthRelatedActionNames()
-            );
-            return ResponseEntity.ok(response);
+            long version = actionMappingService.reload();
+            log.info("动作目录已通过管理接口重新加载: 版本={}", version);
+            return ResponseEntity.ok(actionMappingService.getStatus());
         } catch (Exception e) {
-            log.error("获取动作映射失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("error", "获取动作映射失败: " + e.getMessage())
-            );
+            log.error("重新加载动作目录失败: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                "error", "重新加载动作目录失败: " + e.getMessage(),
+                "version", actionMappingService.getVersion()
+            ));
         }
     }
-    
+
+    /**
+     * 获取动作目录状态
+     */
+    @GetMapping("/catalog")
+    public ResponseEntity<Map<String, Object>> getCatalogStatus() {
+        Map<String, Object> status = new LinkedHashMap<>(actionMappingService.getStatus());
+        status.put("responseCache", catalogResponseCache.getStatus());
+        return ResponseEntity.ok(status);
+    }
+
     /**
      * 根据动作ID获取动作信息
      */
     @GetMapping("/action/{actionId}")
-    public ResponseEntity<Object> getActionInfo(@PathVariable int actionId) {
-        try {
-            ActionMappingService.ActionInfo actionInfo = actionMappingService.getActionInfo(actionId);
-            if (actionInfo != null) {
-                return ResponseEntity.ok(actionInfo);
-            } else {
-                return ResponseEntity.notFound().build();
-            }
-        } catch (Exception e) {
-            log.error("获取动作信息失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("error", "获取动作信息失败: " + e.getMessage())
-            );
+    public ResponseEntity<?> getActionInfo(@PathVariable int actionId, @RequestHeader HttpHeaders headers) {
+        if (actionMappingService.getActionInfo(actionId) == null) {
+            return ResponseEntity.notFound().build();
         }
+        return cached("action/" + actionId, headers, "获取动作信息失败",
+            () -> actionMappingService.getActionInfo(actionId));
     }
-    
+
     /**
      * 获取关键动作列表
      */
     @GetMapping("/critical")
-    public ResponseEntity<List<String>> getCriticalActions() {
-        try {
-            List<String> criticalActions = actionMappingService.getCriticalActionNames();
-            return ResponseEntity.ok(criticalActions);
-        } catch (Exception e) {
-            log.error("获取关键动作列表失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> getCriticalActions(@RequestHeader HttpHeaders headers) {
+        return cached("critical", headers, "获取关键动作列表失败", actionMappingService::getCriticalActionNames);
     }
-    
+
     /**
      * 获取紧急动作列表
      */
     @GetMapping("/emergency")
-    public ResponseEntity<List<String>> getEmergencyActions() {
-        try {
-            List<String> emergencyActions = actionMappingService.getEmergencyActionNames();
-            return ResponseEntity.ok(emergencyActions);
-        } catch (Exception e) {
-            log.error("获取紧急动作列表失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> getEmergencyActions(@RequestHeader HttpHeaders headers) {
+        return cached("emergency", headers, "获取紧急动作列表失败", actionMappingService::getEmergencyActionNames);
     }
-    
+
     /**
      * 获取健康相关动作列表
      */
     @GetMapping("/health-related")
-    public ResponseEntity<List<String>> getHealthRelatedActions() {
-        try {
-            List<String> healthActions = actionMappingService.getHealthRelatedActionNames();
-            return ResponseEntity.ok(healthActions);
-        } catch (Exception e) {
-            log.error("获取健康相关动作列表失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> getHealthRelatedActions(@RequestHeader HttpHeaders headers) {
+        return cached("health-related", headers, "获取健康相关动作列表失败", actionMappingService::getHealthRelatedActionNames);
     }
-    
+
     /**
      * 根据分类获取动作列表
      */
     @GetMapping("/category/{category}")
-    public ResponseEntity<List<ActionMappingService.ActionInfo>> getActionsByCategory(@PathVariable String category) {
-        try {
-            List<ActionMappingService.ActionInfo> actions = actionMappingService.getActionsByCategory(category);
-            return ResponseEntity.ok(actions);
-        } catch (Exception e) {
-            log.error("根据分类获取动作列表失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().build();
-        }
+    public ResponseEntity<?> getActionsByCategory(@PathVariable String category, @RequestHeader HttpHeaders headers) {
+        return cached("category/" + category, headers, "根据分类获取动作列表失败",
+            () -> actionMappingService.getActionsByCategory(category));
     }
-    
+
     /**
-     * 获取动态生成的system-prompt
+     * 获取动态生成的system-prompt，simple返回简化版，其余模式返回详细版
      */
     @GetMapping("/prompt/system")
-    public ResponseEntity<Map<String, String>> getSystemPrompt(@RequestParam(defaultValue = "simple") String mode) {
-        try {
-            String prompt = promptGeneratorService.generatePromptByMode(mode);
-            return ResponseEntity.ok(Map.of(
-                "mode", mode,
-                "prompt", prompt
-            ));
-        } catch (Exception e) {
-            log.error("生成system-prompt失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("error", "生成system-prompt失败: " + e.getMessage())
-            );
-        }
+    public ResponseEntity<?> getSystemPrompt(@RequestParam(defaultValue = "simple") String mode,
+                                             @RequestHeader HttpHeaders headers) {
+        PromptTemplateRegistry.CompiledPrompt prompt = promptTemplateRegistry.getSystemPrompt(mode);
+        return cached("prompt/" + prompt.mode(), headers, "生成system-prompt失败", () -> promptBody(prompt));
     }
-    
+
     /**
      * 获取简化版system-prompt
      */
     @GetMapping("/prompt/simple")
-    public ResponseEntity<Map<String, String>> getSimpleSystemPrompt() {
-        try {
-            String prompt = promptGeneratorService.generateSimpleSystemPrompt();
-            return ResponseEntity.ok(Map.of(
-                "mode", "simple",
-                "prompt", prompt
-            ));
-        } catch (Exception e) {
-            log.error("生成简化版system-prompt失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("error", "生成简化版system-prompt失败: " + e.getMessage())
-            );
-        }
+    public ResponseEntity<?> getSimpleSystemPrompt(@RequestHeader HttpHeaders headers) {
+        return cached("prompt/" + PromptTemplateRegistry.MODE_SIMPLE, headers, "生成简化版system-prompt失败",
+            () -> promptBody(promptTemplateRegistry.get(PromptTemplateRegistry.MODE_SIMPLE)));
     }
-    
+
     /**
      * 获取详细版system-prompt
      */
     @GetMapping("/prompt/detailed")
-    public ResponseEntity<Map<String, String>> getDetailedSystemPrompt() {
-        try {
-            String prompt = promptGeneratorService.generateSystemPrompt();
-            return ResponseEntity.ok(Map.of(
-                "mode", "detailed",
-                "prompt", prompt
-            ));
-        } catch (Exception e) {
-            log.error("生成详细版system-prompt失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("error", "生成详细版system-prompt失败: " + e.getMessage())
-            );
-        }
+    public ResponseEntity<?> getDetailedSystemPrompt(@RequestHeader HttpHeaders headers) {
+        return cached("prompt/" + PromptTemplateRegistry.MODE_DETAILED, headers, "生成详细版system-prompt失败",
+            () -> promptBody(promptTemplateRegistry.get(PromptTemplateRegistry.MODE_DETAILED)));
     }
-    
+
     /**
      * 检查动作是否为关键动作
      */
     @GetMapping("/check/critical/{actionId}")
-    public ResponseEntity<Map<String, Object>> checkCriticalAction(@PathVariable int actionId) {
-        try {
-            boolean isCritical = actionMappingService.isCriticalAction(actionId);
-            boolean isEmergency = actionMappingService.isEmergencyAction(actionId);
-            boolean isHealthRelated = actionMappingService.isHealthRelatedAction(actionId);
-            
-            ActionMappingService.ActionInfo actionInfo = actionMappingService.getActionInfo(actionId);
-            
-            return ResponseEntity.ok(Map.of(
-                "action_id", actionId,
-                "action_name", actionInfo != null ? actionInfo.getChinese() : "未知动作",
-                "is_critical", isCritical,
-                "is_emergency", isEmergency,
-                "is_health_related", isHealthRelated
-            ));
-        } catch (Exception e) {
-            log.error("检查关键动作失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("error", "检查关键动作失败: " + e.getMessage())
-            );
-        }
+    public ResponseEntity<?> checkCriticalAction(@PathVariable int actionId, @RequestHeader HttpHeaders headers) {
+        return cached("check/" + actionId, headers, "检查关键动作失败", () -> {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("action_id", actionId);
+            response.put("action_name", actionMappingService.getChineseName(actionId));
+            response.put("is_critical", actionMappingService.isCriticalAction(actionId));
+            response.put("is_emergency", actionMappingService.isEmergencyAction(actionId));
+            response.put("is_health_related", actionMappingService.isHealthRelatedAction(actionId));
+            return response;
+        });
     }
-    
+
     /**
      * 获取所有分类信息
      */
     @GetMapping("/categories")
-    public ResponseEntity<Map<String, ActionMappingService.CategoryInfo>> getCategories() {
+    public ResponseEntity<?> getCategories(@RequestHeader HttpHeaders headers) {
+        return cached("categories", headers, "获取分类信息失败",
+            () -> new TreeMap<>(actionMappingService.getCategories()));
+    }
+
+    private static Map<String, Object> promptBody(PromptTemplateRegistry.CompiledPrompt prompt) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("mode", prompt.mode());
+        response.put("version", prompt.version());
+        response.put("prompt", prompt.text());
+        return response;
+    }
+
+    /**
+     * 返回预编码的响应：If-None-Match命中时返回304，客户端接受gzip时返回预压缩的响应体
+     */
+    private ResponseEntity<?> cached(String key, HttpHeaders headers, String errorMessage, Supplier<Object> body) {
         try {
-            Map<String, ActionMappingService.CategoryInfo> categories = actionMappingService.getCategories();
-            return ResponseEntity.ok(categories);
+            CatalogResponseCache.EncodedResponse encoded = catalogResponseCache.get(key, body);
+            boolean gzip = encoded.gzip() != null && acceptsGzip(headers);
+            String etag = gzip ? encoded.gzipEtag() : encoded.etag();
+
+            if (encoded.matches(headers.getFirst(HttpHeaders.IF_NONE_MATCH))) {
+                catalogResponseCache.recordNotModified();
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+            }
+
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(encoded.gzip());
+            }
+            return builder.body(encoded.identity());
         } catch (Exception e) {
-            log.error("获取分类信息失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().build();
+            log.error("{}: {}", errorMessage, e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", errorMessage + ": " + e.getMessage())
+            );
         }
     }
+
+    private static boolean acceptsGzip(HttpHeaders headers) {
+        String acceptEncoding = headers.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
 }
@@ -1,16 +1,35 @@
 package com.zq.eldermindllmserver.controller;
 
+import com.zq.eldermindllmserver.model.InferenceJob;
 import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import com.zq.eldermindllmserver.service.ActionMappingService;
+import com.zq.eldermindllmserver.service.BatchInferenceService;
+import com.zq.eldermindllmserver.service.EventCoalescerService;
+import com.zq.eldermindllmserver.service.InferenceJobService;
+import com.zq.eldermindllmserver.service.RequestCoalescingService;
+import com.zq.eldermindllmserver.service.ResultStoreService;
+import com.zq.eldermindllmserver.service.StreamingInferenceService;
+import com.zq.eldermindllmserver.service.TriggerConditionService;
 import com.zq.eldermindllmserver.service.ZhipuAiDirectService;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * LLM推理控制器
@@ -22,18 +41,31 @@ import java.util.Map;
 public class LLMController {
     
     private final ZhipuAiDirectService zhipuAiDirectService;
+    private final InferenceJobService inferenceJobService;
+    private final StreamingInferenceService streamingInferenceService;
+    private final BatchInferenceService batchInferenceService;
+    private final ResultStoreService resultStoreService;
+    private final TriggerConditionService triggerConditionService;
+    private final ActionMappingService actionMappingService;
+    private final EventCoalescerService eventCoalescerService;
     
     /**
      * 视频推理接口
+     * 可通过X-Request-Timeout请求头（秒）指定整体截止时间，超过后中止上游请求
      */
     @PostMapping("/inference")
-    public ResponseEntity<LLMInferenceResult> inference(@RequestBody InferenceRequest request) {
+    public ResponseEntity<LLMInferenceResult> inference(@RequestBody InferenceRequest request,
+                                                        @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                        @RequestHeader(value = "X-Request-Timeout", required = false) Double timeoutSeconds) {
         log.info("收到视频推理请求: {}", request.getVideoUrl());
         
         try {
             LLMInferenceResult result = zhipuAiDirectService.inference(
                 request.getVideoUrl(),
-                request.getCustomPrompt()
+                request.getCustomPrompt(),
+                idempotencyKey,
+                request.getActionId(),
+                zhipuAiDirectService.newDeadline(timeoutSeconds)
             );
             
             if (result.isSuccess()) {
@@ -44,6 +76,10 @@ public class LLMController {
                 return ResponseEntity.badRequest().body(result);
             }
             
+        } catch (RequestCoalescingService.IdempotencyConflictException e) {
+            log.warn("视频推理请求冲突: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                LLMInferenceResult.failure(e.getMessage(), request.getVideoUrl(), "api"));
         } catch (Exception e) {
             log.error("视频推理异常: {}", e.getMessage(), e);
             LLMInferenceResult errorResult = LLMInferenceResult.failure(
@@ -55,13 +91,212 @@ public class LLMController {
         }
     }
     
+    /**
+     * 异步视频推理接口，立即返回任务ID
+     * X-Request-Timeout请求头（秒）指定的截止时间从提交时开始计算
+     */
+    @PostMapping("/inference/async")
+    public ResponseEntity<Map<String, Object>> inferenceAsync(@RequestBody InferenceRequest request,
+                                                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                              @RequestHeader(value = "X-Request-Timeout", required = false) Double timeoutSeconds) {
+        log.info("收到异步视频推理请求: {}", request.getVideoUrl());
+
+        try {
+            InferenceJob job = inferenceJobService.submit(
+                request.getVideoUrl(), request.getCustomPrompt(), idempotencyKey, request.getActionId(),
+                zhipuAiDirectService.newDeadline(timeoutSeconds));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "jobId", job.getId(),
+                "status", job.getStatus()
+            ));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                Map.of("error", "推理任务队列已满，请稍后重试")
+            );
+        } catch (Exception e) {
+            log.error("提交异步推理任务异常: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "提交推理任务失败: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * 边缘端检测事件接入接口
+     * 按触发条件判定事件是否值得推理：未通过时返回200及命中的规则，通过时提交异步推理并返回202及任务ID。
+     * 同一来源在合并窗口内的连续事件共享同一个任务
+     */
+    @PostMapping("/events")
+    public ResponseEntity<Map<String, Object>> ingestEvent(@RequestBody EventRequest request) {
+        LLMInferenceResult.OriginalEvent event = request.getEvent();
+        if (event == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "检测事件不能为空"));
+        }
+        if (event.getActionName() == null && event.getActionId() != null) {
+            event.setActionName(actionMappingService.getChineseName(event.getActionId()));
+        }
+
+        TriggerConditionService.Decision decision = triggerConditionService.evaluate(event);
+        if (!decision.forward()) {
+            log.debug("检测事件未满足触发条件: 动作={}, 置信度={}, 规则={}",
+                event.getActionId(), event.getConfidence(), decision.rule().getCode());
+            return ResponseEntity.ok(Map.of(
+                "forwarded", false,
+                "rule", decision.rule().getCode()
+            ));
+        }
+
+        try {
+            EventCoalescerService.Admission admission = eventCoalescerService.submit(
+                request.getSourceId(), request.getVideoUrl(), request.getCustomPrompt(), event);
+            InferenceJob job = admission.job();
+            if (admission.joined()) {
+                log.debug("检测事件已合并: 来源={}, 动作={}, 任务={}, 事件数={}",
+                    request.getSourceId(), event.getActionId(), job.getId(), admission.events());
+            } else {
+                log.info("检测事件触发推理: 来源={}, 动作={}, 置信度={}, 视频={}",
+                    request.getSourceId(), event.getActionName(), event.getConfidence(), request.getVideoUrl());
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "forwarded", true,
+                "rule", decision.rule().getCode(),
+                "jobId", job.getId(),
+                "status", job.getStatus(),
+                "coalesced", admission.joined(),
+                "events", admission.events()
+            ));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                Map.of("error", "推理任务队列已满，请稍后重试")
+            );
+        } catch (Exception e) {
+            log.error("提交事件推理任务异常: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "提交推理任务失败: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * 流式视频推理接口（SSE）
+     * 事件类型：delta、reasoning、emergency、result、error
+     */
+    @PostMapping(value = "/inference/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> inferenceStream(@RequestBody InferenceRequest request) {
+        log.info("收到流式视频推理请求: {}", request.getVideoUrl());
+
+        try {
+            return ResponseEntity.ok(streamingInferenceService.stream(
+                request.getVideoUrl(), request.getCustomPrompt(), request.getActionId()));
+        } catch (RejectedExecutionException e) {
+            log.warn("流式推理队列已满，拒绝请求: {}", request.getVideoUrl());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * 批量视频推理接口，结果按请求顺序返回
+     */
+    @PostMapping("/inference/batch")
+    public ResponseEntity<Map<String, Object>> inferenceBatch(@RequestBody BatchInferenceRequest request) {
+        List<InferenceRequest> requests = request.getRequests() != null ? request.getRequests() : List.of();
+        log.info("收到批量视频推理请求: {}项", requests.size());
+
+        try {
+            long startTime = System.currentTimeMillis();
+            List<LLMInferenceResult> results = batchInferenceService.inference(
+                requests.stream()
+                    .map(r -> new BatchInferenceService.BatchItem(r.getVideoUrl(), r.getCustomPrompt(), r.getActionId()))
+                    .toList(),
+                request.getDeadlineSeconds()
+            );
+            long succeeded = results.stream().filter(LLMInferenceResult::isSuccess).count();
+
+            return ResponseEntity.ok(Map.of(
+                "total", results.size(),
+                "succeeded", succeeded,
+                "failed", results.size() - succeeded,
+                "elapsed", (System.currentTimeMillis() - startTime) / 1000.0,
+                "results", results
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("批量视频推理异常: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "服务器内部错误: " + e.getMessage())
+            );
+        }
+    }
+
+    /**
+     * 查询异步推理任务
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<InferenceJob> getJob(@PathVariable String jobId) {
+        InferenceJob job = inferenceJobService.getJob(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * 取消异步推理任务
+     */
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String jobId) {
+        InferenceJob job = inferenceJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean cancelled = inferenceJobService.cancel(jobId);
+        return ResponseEntity.ok(Map.of(
+            "jobId", jobId,
+            "cancelled", cancelled,
+            "status", job.getStatus()
+        ));
+    }
+    
+    /**
+     * 查询推理结果，按时间倒序分页，使用上一页返回的cursor获取下一页
+     */
+    @GetMapping("/results")
+    public ResponseEntity<Map<String, Object>> queryResults(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer actionId,
+            @RequestParam(required = false) String videoPath,
+            @RequestParam(required = false) Boolean success,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            ResultStoreService.ResultPage page = resultStoreService.query(new ResultStoreService.ResultQuery(
+                from, to, actionId, videoPath, success, cursor, limit));
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("count", page.items().size());
+            body.put("nextCursor", page.nextCursor());
+            body.put("items", page.items());
+            return ResponseEntity.ok(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     /**
      * 获取服务状态
      */
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> getStatus() {
         try {
-            Map<String, Object> status = zhipuAiDirectService.getStatus();
+            Map<String, Object> status = new LinkedHashMap<>(zhipuAiDirectService.getStatus());
+            status.put("asyncJobs", inferenceJobService.getStatus());
+            status.put("streaming", streamingInferenceService.getStatus());
+            status.put("batch", batchInferenceService.getStatus());
+            status.put("resultStore", resultStoreService.getStatus());
+            status.put("triggers", triggerConditionService.getStatus());
+            status.put("eventCoalescing", eventCoalescerService.getStatus());
             return ResponseEntity.ok(status);
         } catch (Exception e) {
             log.error("获取状态失败: {}", e.getMessage(), e);
@@ -94,5 +329,47 @@ public class LLMController {
         
         private String customPrompt;
 
+        /**
+         * 边缘端检测到的动作ID，用于确定排队优先级，可选
+         */
+        private Integer actionId;
+
+    }
+
+    /**
+     * 检测事件请求数据结构
+     */
+    @Setter
+    @Getter
+    public static class EventRequest {
+        /**
+         * 事件来源（摄像头ID或老人ID），用于合并连续事件，可选
+         */
+        private String sourceId;
+
+        @NotBlank(message = "视频URL不能为空")
+        private String videoUrl;
+
+        private String customPrompt;
+
+        @NotNull(message = "检测事件不能为空")
+        private LLMInferenceResult.OriginalEvent event;
+
+    }
+
+    /**
+     * 批量推理请求数据结构
+     */
+    @Setter
+    @Getter
+    public static class BatchInferenceRequest {
+        @NotEmpty(message = "批量请求不能为空")
+        private List<InferenceRequest> requests;
+
+        /**
+         * 整体截止时间（秒），可选
+         */
+        private Integer deadlineSeconds;
+
     }
 }
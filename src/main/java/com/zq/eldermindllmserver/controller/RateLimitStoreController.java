@@ -0,0 +1,78 @@
+package com.zq.eldermindllmserver.controller;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.service.RateLimitBackend;
+import com.zq.eldermindllmserver.service.RemoteRateLimitBackend;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 共享频率配额存储控制器
+ * 开启后本实例作为集群的配额存储，其他实例以remote后端向此处预留配额
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/ratelimit/store")
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "llm.inference.rate-limiter", name = "store-enabled", havingValue = "true")
+public class RateLimitStoreController {
+
+    private final RateLimitBackend rateLimitBackend;
+    private final LLMConfig llmConfig;
+
+    /**
+     * 预留配额，同时返回当前窗口计数供调用方展示状态
+     * <p>
+     * 单次预留数不超过lease-batch-size，避免一次请求耗尽所有实例共享的配额
+     */
+    @PostMapping("/acquire")
+    public ResponseEntity<Map<String, Object>> acquire(@RequestBody AcquireRequest request) {
+        if (rateLimitBackend instanceof RemoteRateLimitBackend) {
+            return ResponseEntity.internalServerError().body(
+                Map.of("error", "配额存储实例不能使用remote后端")
+            );
+        }
+        if (request.getPermits() < 1) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "permits必须大于0")
+            );
+        }
+        int permits = Math.min(request.getPermits(), Math.max(1, llmConfig.getRateLimiter().getLeaseBatchSize()));
+        int granted = rateLimitBackend.tryAcquire(permits);
+        return ResponseEntity.ok(Map.of(
+            "granted", granted,
+            "retryAfterNanos", granted == 0 ? rateLimitBackend.nanosUntilCapacity() : 0L,
+            "minute", rateLimitBackend.minuteCount(),
+            "hour", rateLimitBackend.hourCount()
+        ));
+    }
+
+    /**
+     * 获取配额使用情况
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(Map.of(
+            "backend", rateLimitBackend.getName(),
+            "minute", rateLimitBackend.minuteCount(),
+            "hour", rateLimitBackend.hourCount()
+        ));
+    }
+
+    /**
+     * 预留请求数据结构
+     */
+    @Setter
+    @Getter
+    public static class AcquireRequest {
+        private int permits = 1;
+
+    }
+}
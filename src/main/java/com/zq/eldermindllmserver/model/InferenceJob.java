@@ -0,0 +1,126 @@
+package com.zq.eldermindllmserver.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 异步推理任务
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InferenceJob {
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isTerminal() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    /**
+     * 任务ID
+     */
+    private final String id;
+
+    /**
+     * 视频URL
+     */
+    private final String videoUrl;
+
+    /**
+     * 提交时间
+     */
+    private final LocalDateTime createdAt = LocalDateTime.now();
+
+    /**
+     * 开始执行时间
+     */
+    private volatile LocalDateTime startedAt;
+
+    /**
+     * 结束时间
+     */
+    private volatile LocalDateTime finishedAt;
+
+    /**
+     * 推理结果
+     */
+    private volatile LLMInferenceResult result;
+
+    @JsonIgnore
+    private final AtomicReference<Status> state = new AtomicReference<>(Status.QUEUED);
+
+    @JsonIgnore
+    private volatile Future<?> future;
+
+    @JsonIgnore
+    private volatile long finishedAtNanos;
+
+    public InferenceJob(String id, String videoUrl) {
+        this.id = id;
+        this.videoUrl = videoUrl;
+    }
+
+    public Status getStatus() {
+        return state.get();
+    }
+
+    public void attach(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * 标记为执行中，已取消的任务返回false
+     */
+    public boolean markRunning() {
+        if (state.compareAndSet(Status.QUEUED, Status.RUNNING)) {
+            startedAt = LocalDateTime.now();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 记录执行结果，任务已被取消时忽略
+     */
+    public void complete(LLMInferenceResult result) {
+        Status terminal = result.isSuccess() ? Status.COMPLETED : Status.FAILED;
+        if (state.compareAndSet(Status.RUNNING, terminal)) {
+            this.result = result;
+            finish();
+        }
+    }
+
+    /**
+     * 取消任务，已结束的任务返回false
+     */
+    public boolean cancel() {
+        Status current = state.get();
+        while (!current.isTerminal()) {
+            if (state.compareAndSet(current, Status.CANCELLED)) {
+                Future<?> f = future;
+                if (f != null) {
+                    f.cancel(true);
+                }
+                finish();
+                return true;
+            }
+            current = state.get();
+        }
+        return false;
+    }
+
+    private void finish() {
+        finishedAt = LocalDateTime.now();
+        finishedAtNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,90 @@
+package com.zq.eldermindllmserver.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * 模型输出的结构化识别结果，字段与提示词中约定的JSON格式一致
+ * <p>
+ * 同时接受simple模式的扁平格式（action_id、action_name、confidence、description），
+ * 读取时映射到detected_action和analysis中，序列化时统一输出嵌套格式。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record InferenceOutput(
+        @JsonProperty("detected_action") DetectedAction detectedAction,
+        @JsonProperty("analysis") Analysis analysis,
+        @JsonProperty("recommendations") Recommendations recommendations) {
+
+    /**
+     * 按嵌套格式读取，嵌套字段缺失时使用扁平格式的同名字段
+     */
+    @JsonCreator
+    static InferenceOutput of(@JsonProperty("detected_action") DetectedAction detectedAction,
+                              @JsonProperty("analysis") Analysis analysis,
+                              @JsonProperty("recommendations") Recommendations recommendations,
+                              @JsonProperty("action_id") Integer actionId,
+                              @JsonProperty("action_name") String actionName,
+                              @JsonProperty("confidence") Double confidence,
+                              @JsonProperty("description") String description) {
+        if (detectedAction == null && (actionId != null || actionName != null)) {
+            detectedAction = new DetectedAction(actionId, actionName, null, null, null, null);
+        }
+        if (analysis == null && (confidence != null || description != null)) {
+            analysis = new Analysis(confidence, description, null, null, null, null);
+        }
+        return new InferenceOutput(detectedAction, analysis, recommendations);
+    }
+
+    /**
+     * 识别出的动作，不在动作目录中时action_id为-1
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DetectedAction(
+            @JsonProperty("action_id") Integer actionId,
+            @JsonProperty("chinese_name") String chineseName,
+            @JsonProperty("english_name") String englishName,
+            @JsonProperty("category") String category,
+            @JsonProperty("priority_level") String priorityLevel,
+            @JsonProperty("risk_level") String riskLevel) {
+    }
+
+    /**
+     * 分析结论
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Analysis(
+            @JsonProperty("confidence") Double confidence,
+            @JsonProperty("description") String description,
+            @JsonProperty("risk_assessment") String riskAssessment,
+            @JsonProperty("requires_immediate_attention") Boolean requiresImmediateAttention,
+            @JsonProperty("is_critical") Boolean critical,
+            @JsonProperty("is_emergency") Boolean emergency) {
+    }
+
+    /**
+     * 处置建议
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Recommendations(
+            @JsonProperty("alert_level") String alertLevel,
+            @JsonProperty("suggested_actions")
+            @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY) List<String> suggestedActions,
+            @JsonProperty("monitoring_priority") String monitoringPriority) {
+    }
+
+    /**
+     * 识别出的动作ID，没有时返回null
+     */
+    public Integer actionId() {
+        return detectedAction != null ? detectedAction.actionId() : null;
+    }
+}
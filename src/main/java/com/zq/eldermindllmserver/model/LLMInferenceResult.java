@@ -13,7 +13,7 @@ import java.util.Map;
  * LLM推理结果数据结构
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -25,15 +25,45 @@ public class LLMInferenceResult {
     private boolean success;
     
     /**
-     * 解析后的结构化结果
+     * 未类型化的解析结果，仅在开启untyped-result或输出结构不符合约定时提供
      */
     private Map<String, Object> result;
+
+    /**
+     * 结构化识别结果
+     */
+    private InferenceOutput output;
+
+    /**
+     * 模型输出解析或校验失败的原因（如action_id不在动作目录中），正常时为空
+     */
+    private String validationError;
     
     /**
      * 原始响应内容
      */
     private String rawResponse;
     
+    /**
+     * 模型的思考过程，仅在开启include-reasoning时保存
+     */
+    private String reasoningContent;
+
+    /**
+     * 上游返回的结束原因：stop、length（输出达到max_tokens被截断）、sensitive等
+     */
+    private String finishReason;
+
+    /**
+     * 输入token数
+     */
+    private Integer promptTokens;
+
+    /**
+     * 输出token数
+     */
+    private Integer completionTokens;
+    
     /**
      * 错误信息
      */
@@ -59,6 +89,31 @@ public class LLMInferenceResult {
      */
     private String mode;
     
+    /**
+     * 模型名称
+     */
+    private String model;
+    
+    /**
+     * 最终提示词的SHA-256哈希
+     */
+    private String promptHash;
+    
+    /**
+     * 提示词模板版本
+     */
+    private String promptVersion;
+    
+    /**
+     * 是否来自结果缓存
+     */
+    private Boolean cached;
+    
+    /**
+     * 是否复用了其他相同请求的推理结果
+     */
+    private Boolean coalesced;
+    
     /**
      * 原始事件信息（如果有）
      */
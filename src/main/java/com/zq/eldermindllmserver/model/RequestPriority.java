@@ -0,0 +1,27 @@
+package com.zq.eldermindllmserver.model;
+
+/**
+ * 推理请求优先级，排在前面的优先级更高
+ */
+public enum RequestPriority {
+
+    /**
+     * 紧急情况（如摔倒、呕吐）
+     */
+    EMERGENCY,
+
+    /**
+     * 健康相关动作
+     */
+    HEALTH,
+
+    /**
+     * 其他关键动作
+     */
+    CRITICAL,
+
+    /**
+     * 日常活动
+     */
+    ROUTINE
+}
@@ -2,199 +2,364 @@ package com.zq.eldermindllmserver.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Data;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.*;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 动作映射服务类
  * 负责读取和管理动作映射数据
+ * <p>
+ * 动作目录以不可变快照发布：重新加载时先完整构建新快照，再以一次volatile写替换，
+ * 读取方无需加锁，也不会看到加载到一半的目录。可从外部文件加载，并支持文件监听或管理接口触发重新加载。
  */
 @Slf4j
 @Service
 public class ActionMappingService {
-    
+
+    private static final String CLASSPATH_CATALOG = "static/action-mappings.json";
+
+    /**
+     * 动作ID上限，动作按ID存放在稠密数组中
+     */
+    private static final int MAX_ACTION_ID = 4095;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, ActionInfo> actionMappings = new HashMap<>();
-    private final Map<String, CategoryInfo> categories = new HashMap<>();
-    private final Set<Integer> criticalActions = new HashSet<>();
-    private final Set<Integer> emergencyActions = new HashSet<>();
-    private final Set<Integer> healthRelatedActions = new HashSet<>();
-    
+    private final LLMConfig.ActionCatalog config;
+    private volatile Catalog catalog = Catalog.EMPTY;
+    private volatile String lastReloadError;
+    private Thread watchThread;
+    private WatchService watchService;
+
+    public ActionMappingService(LLMConfig llmConfig) {
+        this.config = llmConfig.getActionCatalog();
+    }
+
     /**
      * 初始化动作映射数据
      */
     @PostConstruct
     public void init() {
         try {
-            loadActionMappings();
-            log.info("动作映射数据加载成功，共加载 {} 个动作", actionMappings.size());
+            reload();
+            log.info("动作映射数据加载成功，共加载 {} 个动作", catalog.actions().size());
         } catch (Exception e) {
             log.error("加载动作映射数据失败", e);
             throw new RuntimeException("初始化动作映射服务失败", e);
         }
+        if (config.isWatch() && StringUtils.hasText(config.getPath())) {
+            startWatching(Paths.get(config.getPath()).toAbsolutePath());
+        }
     }
-    
+
     /**
-     * 从静态文件加载动作映射数据
+     * 重新加载动作目录，加载失败时保留当前快照
+     *
+     * @return 新快照的版本
      */
-    private void loadActionMappings() throws IOException {
-        ClassPathResource resource = new ClassPathResource("static/action-mappings.json");
-        try (InputStream inputStream = resource.getInputStream()) {
-            JsonNode rootNode = objectMapper.readTree(inputStream);
-            
-            // 加载动作映射
-            JsonNode actionsNode = rootNode.get("actions");
-            if (actionsNode != null) {
-                actionsNode.fieldNames().forEachRemaining(actionId -> {
-                    JsonNode actionNode = actionsNode.get(actionId);
-
-                    ActionInfo actionInfo = new ActionInfo();
-                    actionInfo.setId(Integer.parseInt(actionId));
-                    actionInfo.setEnglish(actionNode.get("english").asText());
-                    actionInfo.setChinese(actionNode.get("chinese").asText());
-                    actionInfo.setCategory(actionNode.get("category").asText());
-                    actionInfo.setRiskLevel(actionNode.get("risk_level").asText());
-                    actionInfo.setCritical(actionNode.get("is_critical").asBoolean());
-
-                    actionMappings.put(actionId, actionInfo);
-                });
-            }
-            
-            // 加载分类信息
-            JsonNode categoriesNode = rootNode.get("categories");
-            if (categoriesNode != null) {
-                categoriesNode.fieldNames().forEachRemaining(categoryName -> {
-                    JsonNode categoryNode = categoriesNode.get(categoryName);
-
-                    CategoryInfo categoryInfo = new CategoryInfo();
-                    categoryInfo.setName(categoryName);
-                    categoryInfo.setDescription(categoryNode.get("description").asText());
-                    categoryInfo.setMonitoringLevel(categoryNode.get("monitoring_level").asText());
-
-                    categories.put(categoryName, categoryInfo);
-                });
+    public synchronized long reload() throws IOException {
+        try {
+            Catalog loaded = loadActionMappings(catalog.version() + 1);
+            catalog = loaded;
+            lastReloadError = null;
+            log.info("动作目录已发布: 版本={}, 来源={}, 动作={}个", loaded.version(), loaded.source(), loaded.actions().size());
+            return loaded.version();
+        } catch (IOException | RuntimeException e) {
+            lastReloadError = e.getMessage();
+            throw e;
+        }
+    }
+
+    /**
+     * 从外部文件或静态文件加载动作映射数据，构建新的不可变快照
+     */
+    private Catalog loadActionMappings(long version) throws IOException {
+        String source;
+        JsonNode rootNode;
+        if (StringUtils.hasText(config.getPath())) {
+            Path path = Paths.get(config.getPath());
+            source = path.toAbsolutePath().toString();
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                rootNode = objectMapper.readTree(inputStream);
             }
-            
-            // 加载关键动作列表
-            JsonNode criticalActionsNode = rootNode.get("critical_actions");
-            if (criticalActionsNode != null && criticalActionsNode.isArray()) {
-                criticalActionsNode.forEach(node -> criticalActions.add(node.asInt()));
+        } else {
+            source = "classpath:" + CLASSPATH_CATALOG;
+            try (InputStream inputStream = new ClassPathResource(CLASSPATH_CATALOG).getInputStream()) {
+                rootNode = objectMapper.readTree(inputStream);
             }
-            
-            // 加载紧急动作列表
-            JsonNode emergencyActionsNode = rootNode.get("emergency_actions");
-            if (emergencyActionsNode != null && emergencyActionsNode.isArray()) {
-                emergencyActionsNode.forEach(node -> emergencyActions.add(node.asInt()));
+        }
+
+        Map<String, ActionInfo> actionMappings = new HashMap<>();
+        Map<String, CategoryInfo> categories = new HashMap<>();
+        Set<Integer> criticalActions = new HashSet<>();
+        Set<Integer> emergencyActions = new HashSet<>();
+        Set<Integer> healthRelatedActions = new HashSet<>();
+
+        // 加载动作映射
+        JsonNode actionsNode = rootNode.get("actions");
+        if (actionsNode != null) {
+            actionsNode.fieldNames().forEachRemaining(actionId -> {
+                JsonNode actionNode = actionsNode.get(actionId);
+
+                ActionInfo actionInfo = new ActionInfo(
+                        Integer.parseInt(actionId),
+                        actionNode.get("english").asText(),
+                        actionNode.get("chinese").asText(),
+                        actionNode.get("category").asText(),
+                        actionNode.get("risk_level").asText(),
+                        actionNode.get("is_critical").asBoolean());
+
+                actionMappings.put(actionId, actionInfo);
+            });
+        }
+        if (actionMappings.isEmpty()) {
+            throw new IllegalStateException("动作目录中没有动作: " + source);
+        }
+
+        // 加载分类信息
+        JsonNode categoriesNode = rootNode.get("categories");
+        if (categoriesNode != null) {
+            categoriesNode.fieldNames().forEachRemaining(categoryName -> {
+                JsonNode categoryNode = categoriesNode.get(categoryName);
+
+                CategoryInfo categoryInfo = new CategoryInfo(
+                        categoryName,
+                        categoryNode.get("description").asText(),
+                        categoryNode.get("monitoring_level").asText());
+
+                categories.put(categoryName, categoryInfo);
+            });
+        }
+
+        // 加载关键动作列表
+        JsonNode criticalActionsNode = rootNode.get("critical_actions");
+        if (criticalActionsNode != null && criticalActionsNode.isArray()) {
+            criticalActionsNode.forEach(node -> criticalActions.add(node.asInt()));
+        }
+
+        // 加载紧急动作列表
+        JsonNode emergencyActionsNode = rootNode.get("emergency_actions");
+        if (emergencyActionsNode != null && emergencyActionsNode.isArray()) {
+            emergencyActionsNode.forEach(node -> emergencyActions.add(node.asInt()));
+        }
+
+        // 加载健康相关动作列表
+        JsonNode healthRelatedActionsNode = rootNode.get("health_related_actions");
+        if (healthRelatedActionsNode != null && healthRelatedActionsNode.isArray()) {
+            healthRelatedActionsNode.forEach(node -> healthRelatedActions.add(node.asInt()));
+        }
+
+        return Catalog.build(version, source, LocalDateTime.now(), actionMappings, categories,
+                criticalActions, emergencyActions, healthRelatedActions);
+    }
+
+    /**
+     * 监听外部动作目录文件，文件变化后在监听线程中重新加载
+     */
+    private void startWatching(Path file) {
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            log.warn("无法监听动作目录文件: {}, {}", file, e.getMessage());
+            return;
+        }
+        watchThread = new Thread(() -> watchLoop(file), "action-catalog-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("开始监听动作目录文件: {}", file);
+    }
+
+    private void watchLoop(Path file) {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                WatchKey key = watchService.take();
+                boolean changed = key.pollEvents().stream()
+                        .anyMatch(event -> file.getFileName().equals(event.context()));
+                key.reset();
+                if (changed) {
+                    // 等待文件写完，合并连续的修改事件
+                    TimeUnit.MILLISECONDS.sleep(config.getReloadDelay());
+                    drainPendingEvents();
+                    reload();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("重新加载动作目录失败，继续使用版本 {}: {}", catalog.version(), e.getMessage());
             }
-            
-            // 加载健康相关动作列表
-            JsonNode healthRelatedActionsNode = rootNode.get("health_related_actions");
-            if (healthRelatedActionsNode != null && healthRelatedActionsNode.isArray()) {
-                healthRelatedActionsNode.forEach(node -> healthRelatedActions.add(node.asInt()));
+        }
+    }
+
+    private void drainPendingEvents() {
+        WatchKey pending;
+        while ((pending = watchService.poll()) != null) {
+            pending.pollEvents();
+            pending.reset();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug("关闭动作目录监听失败: {}", e.getMessage());
             }
         }
     }
-    
+
+    /**
+     * 获取动作目录版本，每次加载后递增
+     */
+    public long getVersion() {
+        return catalog.version();
+    }
+
+    /**
+     * 获取动作目录状态
+     */
+    public Map<String, Object> getStatus() {
+        Catalog current = catalog;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("version", current.version());
+        status.put("source", current.source());
+        status.put("loadedAt", current.loadedAt());
+        status.put("actions", current.actions().size());
+        status.put("watching", watchThread != null && watchThread.isAlive());
+        status.put("lastReloadError", lastReloadError);
+        return status;
+    }
+
     /**
      * 根据动作ID获取动作信息
      */
     public ActionInfo getActionInfo(int actionId) {
-        return actionMappings.get(String.valueOf(actionId));
+        return catalog.action(actionId);
     }
-    
+
+    /**
+     * 获取所有动作，按ID升序
+     */
+    public List<ActionInfo> getActions() {
+        return catalog.actions();
+    }
+
     /**
      * 根据动作ID获取中文名称
      */
     public String getChineseName(int actionId) {
-        ActionInfo actionInfo = getActionInfo(actionId);
-        return actionInfo != null ? actionInfo.getChinese() : "未知动作";
+        return catalog.chineseName(actionId);
     }
-    
 
-    
     /**
      * 判断是否为关键动作
      */
     public boolean isCriticalAction(int actionId) {
-        return criticalActions.contains(actionId);
+        return Catalog.test(catalog.critical(), actionId);
     }
-    
+
     /**
      * 判断是否为紧急动作
      */
     public boolean isEmergencyAction(int actionId) {
-        return emergencyActions.contains(actionId);
+        return Catalog.test(catalog.emergency(), actionId);
     }
-    
+
     /**
      * 判断是否为健康相关动作
      */
     public boolean isHealthRelatedAction(int actionId) {
-        return healthRelatedActions.contains(actionId);
+        return Catalog.test(catalog.healthRelated(), actionId);
     }
-    
+
+    /**
+     * 根据边缘端检测到的动作确定推理优先级，未提供动作时按日常活动处理
+     */
+    public RequestPriority getPriority(Integer actionId) {
+        if (actionId == null) {
+            return RequestPriority.ROUTINE;
+        }
+        Catalog current = catalog;
+        int id = actionId;
+        if (Catalog.test(current.emergency(), id)) {
+            return RequestPriority.EMERGENCY;
+        }
+        if (Catalog.test(current.healthRelated(), id)) {
+            return RequestPriority.HEALTH;
+        }
+        if (Catalog.test(current.critical(), id)) {
+            return RequestPriority.CRITICAL;
+        }
+        return RequestPriority.ROUTINE;
+    }
+
     /**
      * 获取所有关键动作的中文名称列表
      */
     public List<String> getCriticalActionNames() {
-        return criticalActions.stream()
-                .map(this::getChineseName)
-                .collect(Collectors.toList());
+        return catalog.criticalNames();
     }
-    
+
     /**
      * 获取所有紧急动作的中文名称列表
      */
     public List<String> getEmergencyActionNames() {
-        return emergencyActions.stream()
-                .map(this::getChineseName)
-                .collect(Collectors.toList());
+        return catalog.emergencyNames();
     }
-    
+
     /**
      * 获取所有健康相关动作的中文名称列表
      */
     public List<String> getHealthRelatedActionNames() {
-        return healthRelatedActions.stream()
-                .map(this::getChineseName)
-                .collect(Collectors.toList());
+        return catalog.healthRelatedNames();
     }
-    
+
     /**
      * 根据分类获取动作列表
      */
     public List<ActionInfo> getActionsByCategory(String category) {
-        return actionMappings.values().stream()
-                .filter(action -> category.equals(action.getCategory()))
-                .collect(Collectors.toList());
+        return catalog.byCategory().getOrDefault(category, List.of());
     }
-    
+
     /**
      * 获取所有分类信息
      */
     public Map<String, CategoryInfo> getCategories() {
-        return new HashMap<>(categories);
+        return catalog.categories();
     }
-    
+
     /**
      * 生成用于system-prompt的关键事件描述
      */
     public String generateCriticalEventsDescription() {
+        Catalog current = catalog;
         StringBuilder sb = new StringBuilder();
         sb.append("请重点关注以下关键事件：\n");
 
         // 紧急情况
         sb.append("\n【紧急情况】（需要立即响应）：\n");
-        emergencyActions.forEach(actionId -> {
-            ActionInfo action = getActionInfo(actionId);
+        current.emergency().stream().forEach(actionId -> {
+            ActionInfo action = current.action(actionId);
             if (action != null) {
                 sb.append(String.format("- %s (%s)\n", action.getChinese(), action.getEnglish()));
             }
@@ -202,18 +367,18 @@ public class ActionMappingService {
 
         // 健康相关
         sb.append("\n【健康状况】（需要密切关注）：\n");
-        healthRelatedActions.forEach(actionId -> {
-            ActionInfo action = getActionInfo(actionId);
-            if (action != null && !emergencyActions.contains(actionId)) {
+        current.healthRelated().stream().forEach(actionId -> {
+            ActionInfo action = current.action(actionId);
+            if (action != null && !current.emergency().get(actionId)) {
                 sb.append(String.format("- %s (%s)\n", action.getChinese(), action.getEnglish()));
             }
         });
 
         // 其他关键动作
         sb.append("\n【其他关键动作】：\n");
-        criticalActions.forEach(actionId -> {
-            ActionInfo action = getActionInfo(actionId);
-            if (action != null && !emergencyActions.contains(actionId) && !healthRelatedActions.contains(actionId)) {
+        current.critical().stream().forEach(actionId -> {
+            ActionInfo action = current.action(actionId);
+            if (action != null && !current.emergency().get(actionId) && !current.healthRelated().get(actionId)) {
                 sb.append(String.format("- %s (%s)\n", action.getChinese(), action.getEnglish()));
             }
         });
@@ -221,6 +386,52 @@ public class ActionMappingService {
         return sb.toString();
     }
 
+    /**
+     * 生成按优先级分组的完整动作列表（用于system-prompt模板的{ACTION_LIST}）
+     */
+    public String generateActionListDescription() {
+        Catalog current = catalog;
+        List<ActionInfo> emergency = new ArrayList<>();
+        List<ActionInfo> health = new ArrayList<>();
+        List<ActionInfo> critical = new ArrayList<>();
+        List<ActionInfo> others = new ArrayList<>();
+        for (ActionInfo action : current.actions()) {
+            int id = action.getId();
+            if (current.emergency().get(id)) {
+                emergency.add(action);
+            } else if (current.healthRelated().get(id)) {
+                health.add(action);
+            } else if (current.critical().get(id)) {
+                critical.add(action);
+            } else {
+                others.add(action);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int[] index = {1};
+        appendActionGroup(sb, "【紧急情况】（最高优先级）：", emergency, index);
+        appendActionGroup(sb, "【健康状况】（高优先级）：", health, index);
+        appendActionGroup(sb, "【关键动作】（监控重点）：", critical, index);
+        appendActionGroup(sb, "【其他动作】（正常行为）：", others, index);
+        sb.append("\n注意：如果检测到的动作不在上述列表中，请在返回结果中使用action_id: -1，并详细描述具体动作。");
+        return sb.toString();
+    }
+
+    private static void appendActionGroup(StringBuilder sb, String title, List<ActionInfo> actions, int[] index) {
+        if (actions.isEmpty()) {
+            return;
+        }
+        if (sb.length() > 0) {
+            sb.append('\n');
+        }
+        sb.append(title).append('\n');
+        for (ActionInfo action : actions) {
+            sb.append(index[0]++).append(". ").append(action.getChinese())
+                    .append(" (").append(action.getEnglish()).append(") - ID:").append(action.getId()).append('\n');
+        }
+    }
+
     /**
      * 生成所有动作的简化描述（用于简化版prompt）
      */
@@ -228,19 +439,18 @@ public class ActionMappingService {
         StringBuilder sb = new StringBuilder();
         sb.append("可能的动作列表：\n");
 
-        actionMappings.values().stream()
-                .sorted((a, b) -> Integer.compare(a.getId(), b.getId()))
-                .forEach(action -> {
-                    sb.append(String.format("%d. %s\n", action.getId(), action.getChinese()));
-                });
+        catalog.actions().forEach(action -> {
+            sb.append(String.format("%d. %s\n", action.getId(), action.getChinese()));
+        });
 
         return sb.toString();
     }
-    
+
     /**
-     * 动作信息数据类
+     * 动作信息数据类，只在加载动作目录时创建，快照发布后不可修改
      */
-    @Data
+    @Value
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
     public static class ActionInfo {
         private int id;
         private String english;
@@ -249,14 +459,81 @@ public class ActionMappingService {
         private String riskLevel;
         private boolean critical;
     }
-    
+
     /**
-     * 分类信息数据类
+     * 分类信息数据类，只在加载动作目录时创建，快照发布后不可修改
      */
-    @Data
+    @Value
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
     public static class CategoryInfo {
         private String name;
         private String description;
         private String monitoringLevel;
     }
+
+    /**
+     * 动作目录不可变快照
+     * <p>
+     * 动作按ID存放在稠密数组中，关键/紧急/健康相关标志用BitSet表示，按分类的动作列表和名称列表预先生成，
+     * 查询和分类判断不产生装箱或临时对象。快照发布后不再修改。
+     */
+    private record Catalog(long version, String source, LocalDateTime loadedAt,
+                           ActionInfo[] byId, List<ActionInfo> actions, Map<String, CategoryInfo> categories,
+                           BitSet critical, BitSet emergency, BitSet healthRelated,
+                           Map<String, List<ActionInfo>> byCategory,
+                           List<String> criticalNames, List<String> emergencyNames, List<String> healthRelatedNames) {
+
+        static final Catalog EMPTY = build(0, "none", null, Map.of(), Map.of(), Set.of(), Set.of(), Set.of());
+
+        static Catalog build(long version, String source, LocalDateTime loadedAt,
+                             Map<String, ActionInfo> actionMappings, Map<String, CategoryInfo> categories,
+                             Set<Integer> criticalActions, Set<Integer> emergencyActions,
+                             Set<Integer> healthRelatedActions) {
+            List<ActionInfo> actions = actionMappings.values().stream()
+                    .sorted(Comparator.comparingInt(ActionInfo::getId))
+                    .toList();
+            int maxId = actions.isEmpty() ? -1 : actions.get(actions.size() - 1).getId();
+            if (!actions.isEmpty() && (actions.get(0).getId() < 0 || maxId > MAX_ACTION_ID)) {
+                throw new IllegalStateException("动作ID超出范围[0, " + MAX_ACTION_ID + "]");
+            }
+            ActionInfo[] byId = new ActionInfo[maxId + 1];
+            actions.forEach(action -> byId[action.getId()] = action);
+
+            BitSet critical = toBitSet(criticalActions);
+            BitSet emergency = toBitSet(emergencyActions);
+            BitSet healthRelated = toBitSet(healthRelatedActions);
+
+            Map<String, List<ActionInfo>> byCategory = actions.stream()
+                    .collect(Collectors.groupingBy(ActionInfo::getCategory, Collectors.toUnmodifiableList()));
+
+            return new Catalog(version, source, loadedAt, byId, actions, Map.copyOf(categories),
+                    critical, emergency, healthRelated, Map.copyOf(byCategory),
+                    names(critical, byId), names(emergency, byId), names(healthRelated, byId));
+        }
+
+        private static BitSet toBitSet(Set<Integer> ids) {
+            BitSet bits = new BitSet();
+            ids.stream().filter(id -> id >= 0 && id <= MAX_ACTION_ID).forEach(bits::set);
+            return bits;
+        }
+
+        private static List<String> names(BitSet ids, ActionInfo[] byId) {
+            return ids.stream()
+                    .mapToObj(id -> id < byId.length && byId[id] != null ? byId[id].getChinese() : "未知动作")
+                    .toList();
+        }
+
+        static boolean test(BitSet bits, int actionId) {
+            return actionId >= 0 && bits.get(actionId);
+        }
+
+        ActionInfo action(int actionId) {
+            return actionId >= 0 && actionId < byId.length ? byId[actionId] : null;
+        }
+
+        String chineseName(int actionId) {
+            ActionInfo actionInfo = action(actionId);
+            return actionInfo != null ? actionInfo.getChinese() : "未知动作";
+        }
+    }
 }
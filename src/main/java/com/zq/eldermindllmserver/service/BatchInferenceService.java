@@ -0,0 +1,118 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量推理服务
+ * 并行执行一组推理请求，并发度受限流器许可约束，结果按输入顺序返回
+ */
+@Slf4j
+@Service
+public class BatchInferenceService {
+
+    private final ZhipuAiDirectService zhipuAiDirectService;
+    private final LLMConfig llmConfig;
+    private final ThreadPoolExecutor executor;
+
+    public BatchInferenceService(ZhipuAiDirectService zhipuAiDirectService, LLMConfig llmConfig) {
+        this.zhipuAiDirectService = zhipuAiDirectService;
+        this.llmConfig = llmConfig;
+        // 并发数超过限流许可数没有意义，多余的任务会阻塞在许可等待上
+        int threads = Math.max(1, llmConfig.getRateLimiter().getMaxConcurrentRequests());
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(llmConfig.getBatch().getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "llm-batch-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 批量推理单项
+     */
+    public record BatchItem(String videoUrl, String customPrompt, Integer edgeActionId) {
+    }
+
+    /**
+     * 执行批量推理
+     *
+     * @param items           推理请求列表
+     * @param deadlineSeconds 整体截止时间（秒），为空或不大于0时使用配置的默认值
+     * @return 与输入顺序一致的推理结果
+     */
+    public List<LLMInferenceResult> inference(List<BatchItem> items, Integer deadlineSeconds) {
+        LLMConfig.Batch config = llmConfig.getBatch();
+        if (items.size() > config.getMaxBatchSize()) {
+            throw new IllegalArgumentException("批量请求数超过上限: " + config.getMaxBatchSize());
+        }
+
+        int seconds = deadlineSeconds != null && deadlineSeconds > 0 ? deadlineSeconds : config.getDefaultDeadline();
+        Deadline deadline = Deadline.after(seconds, TimeUnit.SECONDS);
+
+        List<Future<LLMInferenceResult>> futures = new ArrayList<>(items.size());
+        for (BatchItem item : items) {
+            try {
+                futures.add(executor.submit(() -> zhipuAiDirectService.inference(
+                    item.videoUrl(), item.customPrompt(), null, item.edgeActionId(), deadline)));
+            } catch (RejectedExecutionException e) {
+                futures.add(CompletableFuture.completedFuture(
+                    LLMInferenceResult.failure("批量推理队列已满", item.videoUrl(), llmConfig.getMode())));
+            }
+        }
+
+        List<LLMInferenceResult> results = new ArrayList<>(items.size());
+        for (int i = 0; i < futures.size(); i++) {
+            results.add(await(futures.get(i), items.get(i), deadline));
+        }
+
+        log.info("批量推理完成: 共{}项, 成功{}项", results.size(),
+                results.stream().filter(LLMInferenceResult::isSuccess).count());
+        return results;
+    }
+
+    private LLMInferenceResult await(Future<LLMInferenceResult> future, BatchItem item, Deadline deadline) {
+        try {
+            return future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return LLMInferenceResult.failure("批量推理超过截止时间", item.videoUrl(), llmConfig.getMode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return LLMInferenceResult.failure("批量推理被中断", item.videoUrl(), llmConfig.getMode());
+        } catch (ExecutionException e) {
+            return LLMInferenceResult.failure("推理失败: " + e.getCause().getMessage(), item.videoUrl(), llmConfig.getMode());
+        }
+    }
+
+    /**
+     * 获取批量推理状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "active", executor.getActiveCount(),
+            "queued", executor.getQueue().size(),
+            "maxBatchSize", llmConfig.getBatch().getMaxBatchSize()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,154 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 动作目录接口响应缓存
+ * <p>
+ * 响应体按动作目录版本序列化一次并缓存为字节数组（可选预压缩gzip），附带基于内容哈希的强ETag。
+ * 动作目录版本变化后整体丢弃旧的缓存。
+ */
+@Service
+public class CatalogResponseCache {
+
+    /**
+     * 每个版本最多缓存的响应数，防止按任意ID查询时无限增长
+     */
+    private static final int MAX_ENTRIES = 2048;
+
+    private final ActionMappingService actionMappingService;
+    private final ObjectMapper objectMapper;
+    private final LLMConfig.ActionCatalog config;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private volatile Generation generation = new Generation(-1, new ConcurrentHashMap<>());
+
+    public CatalogResponseCache(ActionMappingService actionMappingService, ObjectMapper objectMapper, LLMConfig llmConfig) {
+        this.actionMappingService = actionMappingService;
+        this.objectMapper = objectMapper;
+        this.config = llmConfig.getActionCatalog();
+    }
+
+    /**
+     * 获取当前动作目录版本下的已编码响应，未缓存时序列化并缓存
+     */
+    public EncodedResponse get(String key, Supplier<Object> body) {
+        long version = actionMappingService.getVersion();
+        Generation current = generation;
+        if (current.version() != version) {
+            current = new Generation(version, new ConcurrentHashMap<>());
+            generation = current;
+        }
+
+        EncodedResponse cached = current.responses().get(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        EncodedResponse encoded = encode(body.get());
+        if (current.responses().size() < MAX_ENTRIES) {
+            current.responses().putIfAbsent(key, encoded);
+        }
+        return encoded;
+    }
+
+    /**
+     * 记录一次304响应
+     */
+    public void recordNotModified() {
+        notModified.incrementAndGet();
+    }
+
+    private EncodedResponse encode(Object body) {
+        try {
+            byte[] identity = objectMapper.writeValueAsBytes(body);
+            byte[] gzip = null;
+            if (config.isGzipResponses() && identity.length >= config.getGzipMinSize()) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(identity.length / 2);
+                try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+                    out.write(identity);
+                }
+                gzip = buffer.toByteArray();
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(identity);
+            String etag = "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+            return new EncodedResponse(identity, gzip, etag);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化动作目录响应失败: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 获取缓存状态
+     */
+    public Map<String, Object> getStatus() {
+        Generation current = generation;
+        return Map.of(
+            "catalogVersion", current.version(),
+            "entries", current.responses().size(),
+            "hits", hits.get(),
+            "misses", misses.get(),
+            "notModified", notModified.get()
+        );
+    }
+
+    /**
+     * 预编码的响应体
+     *
+     * @param identity 未压缩的JSON
+     * @param gzip     gzip压缩后的JSON，未启用或响应过小时为null
+     * @param etag     未压缩表示的强ETag，gzip表示在引号内追加"-gzip"
+     */
+    public record EncodedResponse(byte[] identity, byte[] gzip, String etag) {
+
+        /**
+         * gzip表示的ETag
+         */
+        public String gzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+
+        /**
+         * 判断If-None-Match是否命中任一表示（弱比较）
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                String candidate = tag.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag) || (gzip != null && candidate.equals(gzipEtag()))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private record Generation(long version, Map<String, EncodedResponse> responses) {
+    }
+}
@@ -0,0 +1,188 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 智谱AI对话补全接口的请求编码与响应解码
+ * <p>
+ * 响应用流式解析器逐个读取字段，只取第一个choice的内容、思考过程、结束原因和usage，
+ * 其余字段直接跳过，不构建完整的JSON树。流式响应的每个分片使用同样的解码逻辑（message换成delta）。
+ */
+@Service
+@RequiredArgsConstructor
+public class ChatCompletionCodec {
+
+    private final LLMConfig llmConfig;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 解码后的响应或流式分片
+     *
+     * @param content          模型输出（流式分片中为增量），没有时为null
+     * @param reasoningContent 思考过程（流式分片中为增量），没有时为null
+     * @param finishReason     结束原因：stop、length（达到max_tokens被截断）、sensitive等，未结束的分片为null
+     * @param usage            token用量，流式响应只在最后一个分片中提供
+     */
+    public record Completion(String content, String reasoningContent, String finishReason, Usage usage) {
+
+        /**
+         * 输出是否因达到max_tokens被截断
+         */
+        public boolean isTruncated() {
+            return "length".equals(finishReason);
+        }
+    }
+
+    /**
+     * token用量
+     */
+    public record Usage(int promptTokens, int completionTokens, int totalTokens) {
+    }
+
+    /**
+     * 构建并序列化请求体
+     */
+    public byte[] encodeRequest(String videoUrl, String prompt, boolean stream) throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(buildRequestBody(videoUrl, prompt, stream));
+    }
+
+    /**
+     * 解码非流式响应
+     *
+     * @throws UpstreamException 响应中没有choices
+     */
+    public Completion decodeResponse(InputStream body) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            Completion completion = decode(parser, "message");
+            if (completion == null) {
+                throw new UpstreamException("响应中没有找到choices字段", 200, false, 0, null);
+            }
+            return completion;
+        }
+    }
+
+    /**
+     * 解码流式响应的一个分片（data:之后的内容）
+     */
+    public Completion decodeChunk(String data) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(data)) {
+            Completion completion = decode(parser, "delta");
+            return completion != null ? completion : new Completion(null, null, null, null);
+        }
+    }
+
+    /**
+     * 读取顶层对象，没有choice时返回null（只有usage时返回仅含usage的结果）
+     *
+     * @param messageField 第一个choice中消息所在的字段：message或delta
+     */
+    private static Completion decode(JsonParser parser, String messageField) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "响应不是JSON对象");
+        }
+        String content = null;
+        String reasoning = null;
+        String finishReason = null;
+        Usage usage = null;
+        boolean hasChoice = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (hasChoice || parser.currentToken() != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    hasChoice = true;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String choiceField = parser.currentName();
+                        JsonToken choiceValue = parser.nextToken();
+                        if ("finish_reason".equals(choiceField)) {
+                            finishReason = parser.getValueAsString();
+                        } else if (messageField.equals(choiceField) && choiceValue == JsonToken.START_OBJECT) {
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String messageKey = parser.currentName();
+                                parser.nextToken();
+                                if ("content".equals(messageKey)) {
+                                    content = parser.getValueAsString();
+                                } else if ("reasoning_content".equals(messageKey)) {
+                                    reasoning = parser.getValueAsString();
+                                } else {
+                                    parser.skipChildren();
+                                }
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else if ("usage".equals(field) && value == JsonToken.START_OBJECT) {
+                usage = readUsage(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (!hasChoice && usage == null) {
+            return null;
+        }
+        return new Completion(content, reasoning, finishReason, usage);
+    }
+
+    private static Usage readUsage(JsonParser parser) throws IOException {
+        int prompt = 0;
+        int completion = 0;
+        int total = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "prompt_tokens" -> prompt = parser.getValueAsInt();
+                case "completion_tokens" -> completion = parser.getValueAsInt();
+                case "total_tokens" -> total = parser.getValueAsInt();
+                default -> parser.skipChildren();
+            }
+        }
+        return new Usage(prompt, completion, total > 0 ? total : prompt + completion);
+    }
+
+    /**
+     * 构建请求体，按照智谱AI API文档格式
+     */
+    private Map<String, Object> buildRequestBody(String videoUrl, String prompt, boolean stream) {
+        return Map.of(
+            "model", llmConfig.getModel(),
+            "messages", List.of(
+                Map.of(
+                    "role", "user",
+                    "content", List.of(
+                        Map.of(
+                            "type", "video_url",
+                            "video_url", Map.of("url", videoUrl)
+                        ),
+                        Map.of(
+                            "type", "text",
+                            "text", prompt
+                        )
+                    )
+                )
+            ),
+            "temperature", 0.7,
+            "max_tokens", 8192,
+            "stream", stream
+        );
+    }
+}
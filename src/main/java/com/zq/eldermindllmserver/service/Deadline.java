@@ -0,0 +1,73 @@
+package com.zq.eldermindllmserver.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求截止时间
+ * <p>
+ * 在请求入口处创建，随请求传递到许可获取、每次上游尝试和响应解析，各环节只使用剩余的时间。
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+    private final long timeoutNanos;
+
+    private Deadline(long deadlineNanos, long timeoutNanos) {
+        this.deadlineNanos = deadlineNanos;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * 从当前时刻起经过指定时长后到期
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        long nanos = unit.toNanos(timeout);
+        return new Deadline(System.nanoTime() + nanos, nanos);
+    }
+
+    /**
+     * 剩余时间（纳秒），已到期时返回0
+     */
+    public long remainingNanos() {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * 剩余时间（毫秒），已到期时返回0
+     */
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * 创建时设置的总时长（毫秒）
+     */
+    public long timeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+    }
+
+    /**
+     * 已到期时抛出{@link ExceededException}
+     *
+     * @param stage 当前所处的环节，用于错误信息
+     */
+    public void check(String stage) {
+        if (isExpired()) {
+            throw new ExceededException(stage, timeoutMillis());
+        }
+    }
+
+    /**
+     * 超过请求截止时间
+     */
+    public static class ExceededException extends RuntimeException {
+
+        public ExceededException(String stage, long timeoutMillis) {
+            super("超过请求截止时间(" + timeoutMillis + "ms): " + stage);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.InferenceJob;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 检测事件合并服务
+ * <p>
+ * 边缘端在连续帧上重复上报同一动作，一次摔倒会产生几十个相近的事件。按来源（摄像头/老人）维护合并窗口：
+ * 窗口内的首个事件立即提交推理，之后同一动作或同一分类的事件加入该窗口、共享同一个任务及其结果，
+ * 推理结果附带窗口内置信度最高的事件。窗口随新事件顺延，但不超过最长持续时间；空闲的来源定期清理。
+ */
+@Slf4j
+@Service
+public class EventCoalescerService {
+
+    private final LLMConfig.EventCoalescing config;
+    private final ActionMappingService actionMappingService;
+    private final Dispatcher dispatcher;
+    private final LongSupplier nanoClock;
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private final AtomicLong windowsOpened = new AtomicLong();
+    private final AtomicLong eventsMerged = new AtomicLong();
+    private final AtomicLong uncoalesced = new AtomicLong();
+    private final AtomicLong evictedSources = new AtomicLong();
+
+    @Autowired
+    public EventCoalescerService(LLMConfig llmConfig, ActionMappingService actionMappingService,
+                                 InferenceJobService inferenceJobService) {
+        this(llmConfig, actionMappingService, inferenceJobService::submit, System::nanoTime);
+    }
+
+    EventCoalescerService(LLMConfig llmConfig, ActionMappingService actionMappingService,
+                          Dispatcher dispatcher, LongSupplier nanoClock) {
+        this.config = llmConfig.getEventCoalescing();
+        this.actionMappingService = actionMappingService;
+        this.dispatcher = dispatcher;
+        this.nanoClock = nanoClock;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-coalescer-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, config.getIdleTimeout() / 4);
+        this.evictor.scheduleWithFixedDelay(this::evictIdleSources, interval, interval, TimeUnit.MILLISECONDS);
+
+        log.info("检测事件合并服务初始化: 启用={}, 窗口={}ms, 最长窗口={}ms, 最大来源数={}",
+                config.isEnabled(), config.getWindow(), config.getMaxWindow(), config.getMaxSources());
+    }
+
+    /**
+     * 提交检测事件：加入来源下可合并的窗口，或打开新窗口并提交推理
+     *
+     * @param sourceId 事件来源（摄像头ID或老人ID），为空时不合并
+     * @throws RejectedExecutionException 推理任务队列已满
+     */
+    public Admission submit(String sourceId, String videoUrl, String customPrompt,
+                            LLMInferenceResult.OriginalEvent event) {
+        if (!config.isEnabled() || sourceId == null || sourceId.isBlank()) {
+            return dispatchAlone(videoUrl, customPrompt, event);
+        }
+
+        long now = nanoClock.getAsLong();
+        Admission[] admission = new Admission[1];
+        sources.compute(sourceId, (key, source) -> {
+            if (source == null) {
+                if (sources.size() >= config.getMaxSources()) {
+                    return null;
+                }
+                source = new Source();
+            }
+            admission[0] = source.offer(now, videoUrl, customPrompt, event);
+            return source;
+        });
+
+        if (admission[0] == null) {
+            log.debug("合并来源数量已达上限，事件单独推理: {}", sourceId);
+            return dispatchAlone(videoUrl, customPrompt, event);
+        }
+        return admission[0];
+    }
+
+    private Admission dispatchAlone(String videoUrl, String customPrompt, LLMInferenceResult.OriginalEvent event) {
+        uncoalesced.incrementAndGet();
+        return new Admission(dispatcher.dispatch(videoUrl, customPrompt, event.getActionId(), () -> event), false, 1);
+    }
+
+    /**
+     * 清理所有窗口已关闭且空闲超时的来源
+     */
+    void evictIdleSources() {
+        long now = nanoClock.getAsLong();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeout());
+        for (String sourceId : sources.keySet()) {
+            sources.computeIfPresent(sourceId, (key, source) -> {
+                source.windows.removeIf(window -> window.isClosed(now));
+                if (source.windows.isEmpty() && now - source.lastSeenNanos > idleNanos) {
+                    evictedSources.incrementAndGet();
+                    return null;
+                }
+                return source;
+            });
+        }
+    }
+
+    /**
+     * 获取合并服务状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "enabled", config.isEnabled(),
+            "sources", sources.size(),
+            "windowsOpened", windowsOpened.get(),
+            "eventsMerged", eventsMerged.get(),
+            "uncoalesced", uncoalesced.get(),
+            "evictedSources", evictedSources.get()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+    }
+
+    /**
+     * 推理任务提交方式
+     */
+    @FunctionalInterface
+    interface Dispatcher {
+        InferenceJob dispatch(String videoUrl, String customPrompt, Integer edgeActionId,
+                              Supplier<LLMInferenceResult.OriginalEvent> event);
+    }
+
+    /**
+     * 事件的接纳结果
+     *
+     * @param job    负责该事件的推理任务
+     * @param joined 是否加入了已有窗口
+     * @param events 窗口内已合并的事件数
+     */
+    public record Admission(InferenceJob job, boolean joined, int events) {
+    }
+
+    /**
+     * 单个来源的合并状态，只在ConcurrentHashMap.compute内访问
+     */
+    private final class Source {
+
+        private final List<Window> windows = new ArrayList<>(2);
+        private long lastSeenNanos;
+
+        Admission offer(long now, String videoUrl, String customPrompt, LLMInferenceResult.OriginalEvent event) {
+            lastSeenNanos = now;
+            windows.removeIf(window -> window.isClosed(now));
+
+            for (Window window : windows) {
+                if (window.accepts(event)) {
+                    window.merge(now, event);
+                    eventsMerged.incrementAndGet();
+                    return new Admission(window.job, true, window.events);
+                }
+            }
+
+            if (windows.size() >= config.getMaxWindowsPerSource()) {
+                uncoalesced.incrementAndGet();
+                return new Admission(dispatcher.dispatch(videoUrl, customPrompt, event.getActionId(), () -> event),
+                        false, 1);
+            }
+
+            Window window = new Window(now, event);
+            window.job = dispatcher.dispatch(videoUrl, customPrompt, event.getActionId(), window::best);
+            windows.add(window);
+            windowsOpened.incrementAndGet();
+            return new Admission(window.job, false, 1);
+        }
+    }
+
+    /**
+     * 合并窗口
+     */
+    private final class Window {
+
+        private final Integer actionId;
+        private final String category;
+        private final long openedNanos;
+        private long lastEventNanos;
+        private int events = 1;
+        private volatile LLMInferenceResult.OriginalEvent best;
+        private InferenceJob job;
+
+        Window(long now, LLMInferenceResult.OriginalEvent event) {
+            this.actionId = event.getActionId();
+            this.category = categoryOf(event.getActionId());
+            this.openedNanos = now;
+            this.lastEventNanos = now;
+            this.best = event;
+        }
+
+        boolean accepts(LLMInferenceResult.OriginalEvent event) {
+            if (Objects.equals(actionId, event.getActionId())) {
+                return true;
+            }
+            return config.isMergeSameCategory() && category != null
+                    && category.equals(categoryOf(event.getActionId()));
+        }
+
+        void merge(long now, LLMInferenceResult.OriginalEvent event) {
+            lastEventNanos = now;
+            events++;
+            if (confidence(event) > confidence(best)) {
+                best = event;
+            }
+        }
+
+        LLMInferenceResult.OriginalEvent best() {
+            return best;
+        }
+
+        /**
+         * 超过顺延窗口或最长持续时间，或共享任务失败/取消后窗口关闭，后续事件重新提交推理
+         */
+        boolean isClosed(long now) {
+            long deadline = Math.min(lastEventNanos + TimeUnit.MILLISECONDS.toNanos(config.getWindow()),
+                    openedNanos + TimeUnit.MILLISECONDS.toNanos(config.getMaxWindow()));
+            if (now - deadline > 0) {
+                return true;
+            }
+            InferenceJob.Status status = job.getStatus();
+            return status == InferenceJob.Status.FAILED || status == InferenceJob.Status.CANCELLED;
+        }
+    }
+
+    private String categoryOf(Integer actionId) {
+        if (actionId == null) {
+            return null;
+        }
+        ActionMappingService.ActionInfo action = actionMappingService.getActionInfo(actionId);
+        return action != null ? action.getCategory() : null;
+    }
+
+    private static double confidence(LLMInferenceResult.OriginalEvent event) {
+        return event.getConfidence() != null ? event.getConfidence() : 0.0;
+    }
+}
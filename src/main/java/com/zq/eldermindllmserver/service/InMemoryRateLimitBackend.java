@@ -0,0 +1,68 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内频率配额后端，仅统计本实例的请求
+ */
+public class InMemoryRateLimitBackend implements RateLimitBackend {
+
+    private static final int WINDOW_BUCKETS = 60;
+
+    private final SlidingWindowCounter minuteWindow;
+    private final SlidingWindowCounter hourWindow;
+
+    public InMemoryRateLimitBackend(LLMConfig.RateLimiter config, LongSupplier nanoClock) {
+        this.minuteWindow = new SlidingWindowCounter(
+                config.getMaxRequestsPerMinute(), TimeUnit.MINUTES.toNanos(1), WINDOW_BUCKETS, nanoClock);
+        this.hourWindow = new SlidingWindowCounter(
+                config.getMaxRequestsPerHour(), TimeUnit.HOURS.toNanos(1), WINDOW_BUCKETS, nanoClock);
+    }
+
+    @Override
+    public int tryAcquire(int permits) {
+        int granted = 0;
+        while (granted < permits) {
+            long minuteEpoch = minuteWindow.tryAcquire();
+            if (minuteEpoch < 0) {
+                break;
+            }
+            if (hourWindow.tryAcquire() < 0) {
+                minuteWindow.release(minuteEpoch);
+                break;
+            }
+            granted++;
+        }
+        return granted;
+    }
+
+    @Override
+    public long nanosUntilCapacity() {
+        long wait = 0;
+        if (minuteWindow.current() >= minuteWindow.getLimit()) {
+            wait = minuteWindow.nanosUntilNextExpiry();
+        }
+        if (hourWindow.current() >= hourWindow.getLimit()) {
+            wait = Math.max(wait, hourWindow.nanosUntilNextExpiry());
+        }
+        return wait;
+    }
+
+    @Override
+    public int minuteCount() {
+        return minuteWindow.current();
+    }
+
+    @Override
+    public int hourCount() {
+        return hourWindow.current();
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+}
@@ -0,0 +1,212 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.InferenceJob;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 异步推理任务服务
+ * 使用独立的有界线程池执行推理，请求线程提交后立即返回任务ID
+ */
+@Slf4j
+@Service
+public class InferenceJobService implements MeterBinder {
+
+    private final ZhipuAiDirectService zhipuAiDirectService;
+    private final LLMConfig llmConfig;
+    private final LLMConfig.AsyncJobs config;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService evictor;
+    private final Map<String, InferenceJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public InferenceJobService(ZhipuAiDirectService zhipuAiDirectService, LLMConfig llmConfig) {
+        this.zhipuAiDirectService = zhipuAiDirectService;
+        this.llmConfig = llmConfig;
+        this.config = llmConfig.getAsyncJobs();
+        this.executor = new ThreadPoolExecutor(
+                config.getWorkerThreads(), config.getWorkerThreads(),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                namedThreadFactory("llm-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.evictor = Executors.newSingleThreadScheduledExecutor(namedThreadFactory("llm-job-evictor-"));
+        long interval = Math.max(1, config.getJobTtl() / 4);
+        this.evictor.scheduleWithFixedDelay(this::evictExpiredJobs, interval, interval, TimeUnit.SECONDS);
+
+        log.info("异步推理任务服务初始化: 工作线程={}, 队列容量={}, 结果保留={}秒",
+                config.getWorkerThreads(), config.getQueueCapacity(), config.getJobTtl());
+    }
+
+    /**
+     * 提交异步推理任务
+     *
+     * @throws RejectedExecutionException 任务队列已满
+     */
+    public InferenceJob submit(String videoUrl, String customPrompt, String idempotencyKey, Integer edgeActionId) {
+        return submit(videoUrl, customPrompt, idempotencyKey, edgeActionId, null, null);
+    }
+
+    /**
+     * 提交带截止时间的异步推理任务，排队时间计入截止时间
+     *
+     * @throws RejectedExecutionException 任务队列已满
+     */
+    public InferenceJob submit(String videoUrl, String customPrompt, String idempotencyKey, Integer edgeActionId,
+                               Deadline deadline) {
+        return submit(videoUrl, customPrompt, idempotencyKey, edgeActionId, deadline, null);
+    }
+
+    /**
+     * 提交由边缘端检测事件触发的异步推理任务，事件随结果一并返回
+     *
+     * @throws RejectedExecutionException 任务队列已满
+     */
+    public InferenceJob submit(String videoUrl, String customPrompt, LLMInferenceResult.OriginalEvent event) {
+        return submit(videoUrl, customPrompt, event.getActionId(), () -> event);
+    }
+
+    /**
+     * 提交由一组合并后的检测事件触发的异步推理任务，任务结束时取当时的代表事件附加到结果上
+     *
+     * @throws RejectedExecutionException 任务队列已满
+     */
+    public InferenceJob submit(String videoUrl, String customPrompt, Integer edgeActionId,
+                               Supplier<LLMInferenceResult.OriginalEvent> event) {
+        return submit(videoUrl, customPrompt, null, edgeActionId, null, event);
+    }
+
+    private InferenceJob submit(String videoUrl, String customPrompt, String idempotencyKey, Integer edgeActionId,
+                                Deadline deadline, Supplier<LLMInferenceResult.OriginalEvent> event) {
+        InferenceJob job = new InferenceJob(UUID.randomUUID().toString(), videoUrl);
+        jobs.put(job.getId(), job);
+        try {
+            job.attach(executor.submit(() -> run(job, customPrompt, idempotencyKey, edgeActionId, deadline, event)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            rejectedCount.incrementAndGet();
+            log.warn("异步推理队列已满，拒绝任务: {}", videoUrl);
+            throw e;
+        }
+        log.debug("异步推理任务已提交: {}", job.getId());
+        return job;
+    }
+
+    /**
+     * 查询任务
+     */
+    public InferenceJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 取消任务
+     */
+    public boolean cancel(String jobId) {
+        InferenceJob job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        boolean cancelled = job.cancel();
+        if (cancelled) {
+            executor.remove((Runnable) job.getFuture());
+            log.info("异步推理任务已取消: {}", jobId);
+        }
+        return cancelled;
+    }
+
+    private void run(InferenceJob job, String customPrompt, String idempotencyKey, Integer edgeActionId,
+                     Deadline deadline, Supplier<LLMInferenceResult.OriginalEvent> event) {
+        if (!job.markRunning()) {
+            return;
+        }
+        LLMInferenceResult result;
+        try {
+            result = zhipuAiDirectService.inference(job.getVideoUrl(), customPrompt, idempotencyKey, edgeActionId,
+                    deadline);
+        } catch (Exception e) {
+            log.error("异步推理任务执行失败: {}", e.getMessage(), e);
+            result = LLMInferenceResult.failure("推理失败: " + e.getMessage(), job.getVideoUrl(), llmConfig.getMode());
+        }
+        if (event != null) {
+            result = result.toBuilder().originalEvent(event.get()).build();
+        }
+        job.complete(result);
+    }
+
+    /**
+     * 清理超过保留时间的已结束任务
+     */
+    private void evictExpiredJobs() {
+        long ttlNanos = TimeUnit.SECONDS.toNanos(config.getJobTtl());
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> {
+            boolean expired = job.getStatus().isTerminal() && now - job.getFinishedAtNanos() > ttlNanos;
+            if (expired) {
+                evictedCount.incrementAndGet();
+            }
+            return expired;
+        });
+    }
+
+    /**
+     * 注册任务队列深度、执行中任务数和拒绝计数
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("llm.jobs.queued", executor, pool -> pool.getQueue().size())
+                .description("排队中的异步推理任务数")
+                .register(registry);
+        Gauge.builder("llm.jobs.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("执行中的异步推理任务数")
+                .register(registry);
+        FunctionCounter.builder("llm.jobs.rejected", rejectedCount, AtomicLong::get)
+                .description("队列已满被拒绝的异步推理任务数")
+                .register(registry);
+    }
+
+    /**
+     * 获取任务服务状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "active", executor.getActiveCount(),
+            "queued", executor.getQueue().size(),
+            "queueCapacity", config.getQueueCapacity(),
+            "workerThreads", config.getWorkerThreads(),
+            "tracked", jobs.size(),
+            "rejected", rejectedCount.get(),
+            "evicted", evictedCount.get()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package com.zq.eldermindllmserver.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 推理链路的监控指标
+ * <p>
+ * 计时器和计数器在启动时注册并保存引用，请求路径上只做一次记录调用，不再按名称和标签查找指标；
+ * 上游状态码的取值有限，按状态码缓存对应的计时器。分位数由Prometheus根据直方图桶计算。
+ */
+@Service
+public class InferenceMetrics {
+
+    /**
+     * 推理结果分类
+     */
+    public enum Outcome {
+        SUCCESS, FAILURE, CACHED
+    }
+
+    /**
+     * 模型输出的解析方式
+     */
+    public enum ParseResult {
+        /**
+         * 直接解析为JSON
+         */
+        DIRECT,
+        /**
+         * JSON对象前有说明文字或代码块标记
+         */
+        FALLBACK,
+        /**
+         * 合法的JSON但结构与约定不符，只有未类型化的结果
+         */
+        UNTYPED,
+        /**
+         * 无法解析，返回原始文本
+         */
+        FAILED
+    }
+
+    public static final String STATUS_IO_ERROR = "IO_ERROR";
+    public static final String STATUS_TIMEOUT = "TIMEOUT";
+    public static final String STATUS_CANCELLED = "CANCELLED";
+
+    private final MeterRegistry registry;
+    private final Timer[] inferenceTimers;
+    private final Timer[] parseTimers;
+    private final Counter retryCounter;
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Timer> upstreamTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> finishCounters = new ConcurrentHashMap<>();
+
+    public InferenceMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.inferenceTimers = new Timer[Outcome.values().length];
+        for (Outcome outcome : Outcome.values()) {
+            inferenceTimers[outcome.ordinal()] = Timer.builder("llm.inference")
+                    .description("推理请求总耗时")
+                    .tag("outcome", outcome.name())
+                    .register(registry);
+        }
+        this.parseTimers = new Timer[ParseResult.values().length];
+        for (ParseResult result : ParseResult.values()) {
+            parseTimers[result.ordinal()] = Timer.builder("llm.response.parse")
+                    .description("模型输出JSON解析耗时，result区分直接解析、跳过说明文字后解析、结构不符和解析失败")
+                    .tag("result", result.name())
+                    .register(registry);
+        }
+        this.retryCounter = Counter.builder("llm.upstream.retries")
+                .description("上游调用重试次数")
+                .register(registry);
+        this.promptTokens = Counter.builder("llm.upstream.tokens")
+                .description("上游返回的token用量")
+                .tag("type", "prompt")
+                .register(registry);
+        this.completionTokens = Counter.builder("llm.upstream.tokens")
+                .description("上游返回的token用量")
+                .tag("type", "completion")
+                .register(registry);
+        Gauge.builder("llm.inference.in.flight", inFlight, AtomicInteger::get)
+                .description("进行中的推理请求数（含排队等待许可）")
+                .register(registry);
+    }
+
+    /**
+     * 推理请求开始，返回开始时间（纳秒），结束时必须调用{@link #inferenceFinished}
+     */
+    public long inferenceStarted() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void inferenceFinished(long startNanos, Outcome outcome) {
+        inFlight.decrementAndGet();
+        inferenceTimers[outcome.ordinal()].record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次上游调用（含对冲）的耗时
+     *
+     * @param status HTTP状态码，或{@link #STATUS_IO_ERROR}等未收到响应时的分类
+     */
+    public void recordUpstream(String status, long nanos) {
+        Timer timer = upstreamTimers.get(status);
+        if (timer == null) {
+            timer = upstreamTimers.computeIfAbsent(status, key -> Timer.builder("llm.upstream.requests")
+                    .description("上游调用耗时，按响应状态区分")
+                    .tag("status", key)
+                    .register(registry));
+        }
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRetry() {
+        retryCounter.increment();
+    }
+
+    public void recordParse(ParseResult result, long nanos) {
+        parseTimers[result.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次上游响应的结束原因和token用量
+     *
+     * @param finishReason 结束原因，没有时记为unknown
+     * @param usage        token用量，流式响应提前结束时为null
+     */
+    public void recordCompletion(String finishReason, ChatCompletionCodec.Usage usage) {
+        String reason = finishReason != null ? finishReason : "unknown";
+        Counter counter = finishCounters.get(reason);
+        if (counter == null) {
+            counter = finishCounters.computeIfAbsent(reason, key -> Counter.builder("llm.upstream.completions")
+                    .description("上游响应数，按结束原因区分，length表示输出被max_tokens截断")
+                    .tag("finish_reason", key)
+                    .register(registry));
+        }
+        counter.increment();
+        if (usage != null) {
+            promptTokens.increment(usage.promptTokens());
+            completionTokens.increment(usage.completionTokens());
+        }
+    }
+}
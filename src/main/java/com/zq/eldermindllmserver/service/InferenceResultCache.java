@@ -0,0 +1,222 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 推理结果缓存
+ * 以（视频URL、最终提示词哈希、模型）为键，按容量LRU淘汰并按TTL过期
+ */
+@Slf4j
+@Service
+public class InferenceResultCache {
+
+    private final LLMConfig llmConfig;
+    private final LLMConfig.Cache config;
+    private final ObjectMapper objectMapper;
+    private final ResultJournalWriter resultJournalWriter;
+    private final LinkedHashMap<CacheKey, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public InferenceResultCache(LLMConfig llmConfig, ObjectMapper objectMapper, ResultJournalWriter resultJournalWriter) {
+        this.llmConfig = llmConfig;
+        this.config = llmConfig.getCache();
+        this.objectMapper = objectMapper;
+        this.resultJournalWriter = resultJournalWriter;
+        int maxEntries = config.getMaxEntries();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 缓存键
+     */
+    public record CacheKey(String videoUrl, String promptHash, String model) {
+    }
+
+    private record Entry(LLMInferenceResult result, long expireAtNanos) {
+    }
+
+    /**
+     * 根据最终提示词构建缓存键
+     */
+    public CacheKey keyOf(String videoUrl, String prompt) {
+        return new CacheKey(videoUrl, hashPrompt(prompt), llmConfig.getModel());
+    }
+
+    /**
+     * 查询缓存，未命中或已过期时返回null
+     */
+    public LLMInferenceResult get(CacheKey key) {
+        if (!config.isEnabled()) {
+            return null;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && System.nanoTime() - entry.expireAtNanos() > 0) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.result().toBuilder().cached(true).build();
+    }
+
+    /**
+     * 写入缓存，仅缓存可复用的成功结果
+     */
+    public void put(CacheKey key, LLMInferenceResult result) {
+        if (config.isEnabled() && isCacheable(result)) {
+            put(key, result, TimeUnit.SECONDS.toNanos(config.getTtl()));
+        }
+    }
+
+    private void put(CacheKey key, LLMInferenceResult result, long ttlNanos) {
+        synchronized (entries) {
+            entries.put(key, new Entry(result, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * 启动后从结果日志分段预热缓存
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!config.isEnabled() || !config.isWarmOnStartup()) {
+            return;
+        }
+        Thread thread = new Thread(this::loadSavedResults, "llm-cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void loadSavedResults() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(config.getTtl());
+        List<LLMInferenceResult> recent = new ArrayList<>();
+        try {
+            // 分段文件按时间倒序，读到超过有效期的分段即停止
+            for (Path segment : resultJournalWriter.listSegments()) {
+                List<LLMInferenceResult> segmentResults = new ArrayList<>();
+                try (Stream<String> lines = Files.lines(segment)) {
+                    lines.filter(line -> !line.isBlank()).forEach(line -> {
+                        try {
+                            segmentResults.add(objectMapper.readValue(line, LLMInferenceResult.class));
+                        } catch (IOException e) {
+                            log.debug("跳过无法解析的结果记录: {}", segment);
+                        }
+                    });
+                }
+                Collections.reverse(segmentResults);
+                recent.addAll(segmentResults);
+                boolean segmentExpired = segmentResults.stream().allMatch(r ->
+                        r.getTimestamp() == null || !r.getTimestamp().isAfter(cutoff));
+                if (segmentExpired || recent.size() >= config.getMaxEntries()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("预热推理结果缓存失败: {}", e.getMessage());
+        }
+
+        // 先放入较旧的结果，使最新结果处于LRU的最近使用端
+        int loaded = 0;
+        for (int i = Math.min(recent.size(), config.getMaxEntries()) - 1; i >= 0; i--) {
+            if (warm(recent.get(i), cutoff)) {
+                loaded++;
+            }
+        }
+        log.info("推理结果缓存预热完成，加载 {} 条", loaded);
+    }
+
+    /**
+     * 以已保存的结果预热缓存，剩余有效期按结果时间戳计算
+     */
+    boolean warm(LLMInferenceResult result, LocalDateTime cutoff) {
+        if (!isCacheable(result) || result.getVideoPath() == null || result.getPromptHash() == null || result.getModel() == null
+                || result.getTimestamp() == null || !result.getTimestamp().isAfter(cutoff)) {
+            return false;
+        }
+        long remainingNanos = Duration.between(cutoff, result.getTimestamp()).toNanos();
+        put(new CacheKey(result.getVideoPath(), result.getPromptHash(), result.getModel()), result, remainingNanos);
+        return true;
+    }
+
+    /**
+     * 输出因max_tokens被截断、无法解析或未通过动作目录校验的结果不缓存，重试同一视频时重新调用模型
+     */
+    static boolean isCacheable(LLMInferenceResult result) {
+        return result.isSuccess() && result.getValidationError() == null && !"length".equals(result.getFinishReason());
+    }
+
+    /**
+     * 计算提示词哈希
+     */
+    public static String hashPrompt(String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(prompt.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    /**
+     * 获取缓存状态
+     */
+    public Map<String, Object> getStatus() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return Map.of(
+            "enabled", config.isEnabled(),
+            "size", size,
+            "maxEntries", config.getMaxEntries(),
+            "ttl", config.getTtl(),
+            "hits", hits.get(),
+            "misses", misses.get(),
+            "evictions", evictions.get(),
+            "expirations", expirations.get()
+        );
+    }
+}
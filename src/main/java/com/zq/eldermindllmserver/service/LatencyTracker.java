@@ -0,0 +1,64 @@
+package com.zq.eldermindllmserver.service;
+
+import java.util.Arrays;
+
+/**
+ * 最近请求延迟的分位数统计
+ * <p>
+ * 固定大小的环形缓冲区保存最近的延迟样本；分位数按需排序一次样本副本计算，
+ * 新增样本较少时复用上次排序的快照，不同分位数的查询共用同一快照，避免每次查询都排序。
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private final int recomputeEvery;
+    private int next;
+    private int count;
+    private int sinceComputed;
+    private long[] sorted;
+
+    /**
+     * @param capacity 保留的样本数
+     */
+    public LatencyTracker(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+        this.recomputeEvery = Math.max(1, samples.length / 16);
+    }
+
+    /**
+     * 记录一次延迟（纳秒）
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        sinceComputed++;
+    }
+
+    /**
+     * 当前样本数
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * 计算延迟分位数（纳秒），没有样本时返回0
+     *
+     * @param percentile 0~1之间的分位数
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (sorted == null || sinceComputed >= recomputeEvery) {
+            sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            sinceComputed = 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.min(sorted.length - 1, Math.max(0, index))];
+    }
+}
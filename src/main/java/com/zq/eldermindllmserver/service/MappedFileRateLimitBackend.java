@@ -0,0 +1,175 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 基于内存映射文件的频率配额后端
+ * <p>
+ * 同一主机上的多个进程映射同一个文件，以文件锁互斥更新。每个窗口由60个桶组成，
+ * 桶内以（时间片编号, 计数）打包存放，时间片按墙上时钟划分，因此跨进程一致，且重启后小时窗口不会丢失。
+ */
+@Slf4j
+public class MappedFileRateLimitBackend implements RateLimitBackend {
+
+    private static final long MAGIC = 0x454C444D524C0001L;
+    private static final int BUCKETS = 60;
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final int MINUTE_OFFSET = Long.BYTES;
+    private static final int HOUR_OFFSET = MINUTE_OFFSET + BUCKETS * Long.BYTES;
+    private static final int FILE_SIZE = HOUR_OFFSET + BUCKETS * Long.BYTES;
+    private static final long MINUTE_BUCKET_MILLIS = TimeUnit.MINUTES.toMillis(1) / BUCKETS;
+    private static final long HOUR_BUCKET_MILLIS = TimeUnit.HOURS.toMillis(1) / BUCKETS;
+
+    private final int minuteLimit;
+    private final int hourLimit;
+    private final LongSupplier millisClock;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ReentrantLock processLock = new ReentrantLock();
+
+    public MappedFileRateLimitBackend(LLMConfig.RateLimiter config, Path path, LongSupplier millisClock) {
+        this.minuteLimit = config.getMaxRequestsPerMinute();
+        this.hourLimit = config.getMaxRequestsPerHour();
+        this.millisClock = millisClock;
+        this.path = path;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            this.channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            try (FileLock ignored = channel.lock()) {
+                if (buffer.getLong(0) != MAGIC) {
+                    for (int offset = 0; offset < FILE_SIZE; offset += Long.BYTES) {
+                        buffer.putLong(offset, 0);
+                    }
+                    buffer.putLong(0, MAGIC);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法映射限流共享文件: " + path, e);
+        }
+        log.info("共享内存映射限流后端已启用: {}", path.toAbsolutePath());
+    }
+
+    @Override
+    public int tryAcquire(int permits) {
+        return (int) locked(() -> {
+            long now = millisClock.getAsLong();
+            long minuteEpoch = now / MINUTE_BUCKET_MILLIS;
+            long hourEpoch = now / HOUR_BUCKET_MILLIS;
+            int granted = Math.min(permits, Math.min(
+                    minuteLimit - count(MINUTE_OFFSET, minuteEpoch),
+                    hourLimit - count(HOUR_OFFSET, hourEpoch)));
+            if (granted <= 0) {
+                return 0;
+            }
+            add(MINUTE_OFFSET, minuteEpoch, granted);
+            add(HOUR_OFFSET, hourEpoch, granted);
+            return granted;
+        });
+    }
+
+    @Override
+    public long nanosUntilCapacity() {
+        return locked(() -> {
+            long now = millisClock.getAsLong();
+            long wait = 0;
+            if (count(MINUTE_OFFSET, now / MINUTE_BUCKET_MILLIS) >= minuteLimit) {
+                wait = millisUntilExpiry(MINUTE_OFFSET, MINUTE_BUCKET_MILLIS, now);
+            }
+            if (count(HOUR_OFFSET, now / HOUR_BUCKET_MILLIS) >= hourLimit) {
+                wait = Math.max(wait, millisUntilExpiry(HOUR_OFFSET, HOUR_BUCKET_MILLIS, now));
+            }
+            return TimeUnit.MILLISECONDS.toNanos(wait);
+        });
+    }
+
+    @Override
+    public int minuteCount() {
+        return (int) locked(() -> count(MINUTE_OFFSET, millisClock.getAsLong() / MINUTE_BUCKET_MILLIS));
+    }
+
+    @Override
+    public int hourCount() {
+        return (int) locked(() -> count(HOUR_OFFSET, millisClock.getAsLong() / HOUR_BUCKET_MILLIS));
+    }
+
+    @Override
+    public String getName() {
+        return "mmap:" + path;
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭限流共享文件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 统计窗口内（最近60个时间片）的请求数
+     */
+    private int count(int offset, long epoch) {
+        int total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = buffer.getLong(offset + i * Long.BYTES);
+            if (epoch - (value >>> COUNT_BITS) < BUCKETS) {
+                total += (int) (value & COUNT_MASK);
+            }
+        }
+        return total;
+    }
+
+    private void add(int offset, long epoch, int permits) {
+        int index = offset + (int) (epoch % BUCKETS) * Long.BYTES;
+        long value = buffer.getLong(index);
+        long current = (value >>> COUNT_BITS) == epoch ? value & COUNT_MASK : 0;
+        buffer.putLong(index, (epoch << COUNT_BITS) | Math.min(COUNT_MASK, current + permits));
+    }
+
+    private long millisUntilExpiry(int offset, long bucketMillis, long now) {
+        long epoch = now / bucketMillis;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = buffer.getLong(offset + i * Long.BYTES);
+            long slotEpoch = value >>> COUNT_BITS;
+            if ((value & COUNT_MASK) > 0 && epoch - slotEpoch < BUCKETS) {
+                oldest = Math.min(oldest, slotEpoch);
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, (oldest + BUCKETS) * bucketMillis - now);
+    }
+
+    private long locked(LongSupplier action) {
+        // 文件锁只在进程间互斥，进程内的线程另需一把锁
+        processLock.lock();
+        try (FileLock ignored = channel.lock(0, FILE_SIZE, false)) {
+            return action.getAsLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException("锁定限流共享文件失败", e);
+        } finally {
+            processLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.InferenceOutput;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+/**
+ * 模型输出解析
+ * <p>
+ * 从第一个'{'开始用流式解析器直接绑定到{@link InferenceOutput}，解析器读完第一个完整的JSON对象即停止，
+ * 前面的说明文字和后面的代码块标记都不会被复制或再次解析；该位置不是合法JSON时从下一个'{'重试。
+ * 没有识别结果（既无detected_action也无simple模式的扁平action_id）的对象视为说明文字中的示例，继续查找；
+ * 找不到有识别结果的对象时保留第一个这样的对象作为未类型化的结果。
+ * 解析后按动作目录校验action_id。未类型化的Map只在配置开启或无法类型化时生成。
+ */
+@Slf4j
+@Service
+public class ModelOutputParser {
+
+    /**
+     * 动作不在目录中时模型返回的action_id
+     */
+    public static final int UNKNOWN_ACTION_ID = -1;
+
+    /**
+     * 最多尝试的起始位置数，避免在大段不含JSON的文本上反复解析
+     */
+    private static final int MAX_CANDIDATES = 8;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader outputReader;
+    private final ObjectReader mapReader;
+    private final InferenceMetrics metrics;
+    private final ActionMappingService actionMappingService;
+    private final LLMConfig llmConfig;
+
+    @Autowired
+    public ModelOutputParser(ObjectMapper objectMapper, InferenceMetrics metrics,
+                             ActionMappingService actionMappingService, LLMConfig llmConfig) {
+        this.objectMapper = objectMapper;
+        this.outputReader = objectMapper.readerFor(InferenceOutput.class);
+        this.mapReader = objectMapper.readerFor(Map.class);
+        this.metrics = metrics;
+        this.actionMappingService = actionMappingService;
+        this.llmConfig = llmConfig;
+    }
+
+    /**
+     * 解析结果
+     *
+     * @param output          结构化识别结果，无法解析或结构不符时为null
+     * @param result          未类型化的结果，仅在配置开启或无法类型化时提供
+     * @param validationError 解析或校验失败的原因，正常时为null
+     */
+    public record Parsed(InferenceOutput output, Map<String, Object> result, String validationError) {
+    }
+
+    /**
+     * 解析模型输出
+     */
+    public Parsed parse(String response) {
+        long start = System.nanoTime();
+        int from = response.indexOf('{');
+        int withoutAction = -1;
+        for (int attempt = 0; from >= 0 && attempt < MAX_CANDIDATES; attempt++) {
+            try {
+                InferenceOutput output = read(outputReader, response, from);
+                if (output.detectedAction() == null) {
+                    // 合法的JSON但没有识别结果，可能是说明文字中的示例，继续查找后面的对象
+                    if (withoutAction < 0) {
+                        withoutAction = from;
+                    }
+                } else {
+                    Map<String, Object> result = llmConfig.getResultProcessing().isUntypedResult()
+                            ? read(mapReader, response, from) : null;
+                    metrics.recordParse(isLeading(response, from)
+                            ? InferenceMetrics.ParseResult.DIRECT : InferenceMetrics.ParseResult.FALLBACK,
+                            System.nanoTime() - start);
+                    return new Parsed(output, result, validate(output));
+                }
+            } catch (MismatchedInputException e) {
+                // 合法的JSON但结构与约定不符，保留未类型化的结果
+                Map<String, Object> result = readQuietly(response, from);
+                if (result != null) {
+                    metrics.recordParse(InferenceMetrics.ParseResult.UNTYPED, System.nanoTime() - start);
+                    return new Parsed(null, result, "模型输出结构不符合约定: " + e.getOriginalMessage());
+                }
+            } catch (IOException e) {
+                log.debug("位置{}不是合法的JSON对象: {}", from, e.getMessage());
+            }
+            from = response.indexOf('{', from + 1);
+        }
+
+        if (withoutAction >= 0) {
+            Map<String, Object> result = readQuietly(response, withoutAction);
+            if (result != null) {
+                metrics.recordParse(InferenceMetrics.ParseResult.UNTYPED, System.nanoTime() - start);
+                return new Parsed(null, result, "模型输出缺少detected_action.action_id");
+            }
+        }
+
+        log.warn("无法解析JSON响应，返回原始文本");
+        metrics.recordParse(InferenceMetrics.ParseResult.FAILED, System.nanoTime() - start);
+        return new Parsed(null, llmConfig.getResultProcessing().isUntypedResult()
+                ? Map.of("raw_response", response, "parsed", false) : null,
+                "无法从模型输出中解析出JSON对象");
+    }
+
+    /**
+     * 从指定位置读取第一个JSON值，忽略其后的内容
+     */
+    private <T> T read(ObjectReader reader, String response, int from) throws IOException {
+        StringReader source = new StringReader(response);
+        source.skip(from);
+        try (JsonParser parser = objectMapper.createParser(source)) {
+            return reader.readValue(parser);
+        }
+    }
+
+    private Map<String, Object> readQuietly(String response, int from) {
+        try {
+            return read(mapReader, response, from);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * JSON对象之前是否只有空白
+     */
+    private static boolean isLeading(String response, int from) {
+        for (int i = 0; i < from; i++) {
+            if (!Character.isWhitespace(response.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按动作目录校验识别结果
+     */
+    private String validate(InferenceOutput output) {
+        Integer actionId = output.actionId();
+        if (actionId == null) {
+            return "模型输出缺少detected_action.action_id";
+        }
+        if (actionId != UNKNOWN_ACTION_ID && actionMappingService.getActionInfo(actionId) == null) {
+            return "action_id不在动作目录中: " + actionId;
+        }
+        Double confidence = output.analysis() != null ? output.analysis().confidence() : null;
+        if (confidence != null && (confidence < 0 || confidence > 1)) {
+            return "confidence超出0~1范围: " + confidence;
+        }
+        return null;
+    }
+}
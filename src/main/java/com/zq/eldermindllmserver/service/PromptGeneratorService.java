@@ -1,10 +1,10 @@
 package com.zq.eldermindllmserver.service;
 
+import com.zq.eldermindllmserver.config.LLMConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-
-import java.util.List;
+import org.springframework.util.StringUtils;
 
 /**
  * 提示词生成服务
@@ -16,6 +16,21 @@ import java.util.List;
 public class PromptGeneratorService {
     
     private final ActionMappingService actionMappingService;
+    private final LLMConfig llmConfig;
+    
+    /**
+     * 根据配置的system-prompt模板生成推理提示词，{ACTION_LIST}替换为动作目录中的动作列表
+     */
+    public String generateDefaultPrompt() {
+        String systemPrompt = llmConfig.getPromptConfig().getSystemPrompt();
+        String userPrompt = llmConfig.getPromptConfig().getUserPrompt();
+
+        if (StringUtils.hasText(systemPrompt)) {
+            String enhancedPrompt = systemPrompt.replace("{ACTION_LIST}", actionMappingService.generateActionListDescription());
+            return enhancedPrompt + "\n\n" + userPrompt;
+        }
+        return userPrompt;
+    }
     
     /**
      * 生成智能视频监测系统的system-prompt
@@ -91,18 +106,4 @@ public class PromptGeneratorService {
 
         return prompt.toString();
     }
-    
-    /**
-     * 根据配置生成适合的system-prompt
-     */
-    public String generatePromptByMode(String mode) {
-        return switch (mode.toLowerCase()) {
-            case "simple" -> generateSimpleSystemPrompt();
-            case "detailed", "full" -> generateSystemPrompt();
-            default -> {
-                log.warn("未知的prompt模式: {}，使用默认模式", mode);
-                yield generateSystemPrompt();
-            }
-        };
-    }
 }
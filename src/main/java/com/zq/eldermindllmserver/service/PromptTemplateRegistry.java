@@ -0,0 +1,147 @@
+package com.zq.eldermindllmserver.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 提示词模板注册表
+ * <p>
+ * 每种模式的提示词只根据动作目录编译一次并缓存为不可变对象，请求时只拼接边缘检测结果。
+ * 动作目录版本变化后，下一次获取时重新编译全部模式。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PromptTemplateRegistry {
+
+    public static final String MODE_DEFAULT = "default";
+    public static final String MODE_SIMPLE = "simple";
+    public static final String MODE_DETAILED = "detailed";
+
+    private final PromptGeneratorService promptGeneratorService;
+    private final ActionMappingService actionMappingService;
+    private final AtomicLong compilations = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    /**
+     * 获取推理使用的已编译提示词，未知模式使用default
+     */
+    public CompiledPrompt get(String mode) {
+        return current().prompts().get(resolveMode(mode));
+    }
+
+    /**
+     * 获取对外提供的system-prompt：simple返回简化版，其余模式（包括default和未知模式）返回详细版
+     */
+    public CompiledPrompt getSystemPrompt(String mode) {
+        String resolved = MODE_SIMPLE.equalsIgnoreCase(mode) ? MODE_SIMPLE : MODE_DETAILED;
+        return current().prompts().get(resolved);
+    }
+
+    /**
+     * 是否为推理支持的提示词模式
+     */
+    public static boolean isKnownMode(String mode) {
+        return !StringUtils.hasText(mode) || switch (mode.toLowerCase()) {
+            case MODE_DEFAULT, MODE_SIMPLE, MODE_DETAILED -> true;
+            default -> false;
+        };
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null || current.catalogVersion() != actionMappingService.getVersion()) {
+            current = compile();
+        }
+        return current;
+    }
+
+    private synchronized Snapshot compile() {
+        long catalogVersion = actionMappingService.getVersion();
+        Snapshot current = snapshot;
+        if (current != null && current.catalogVersion() == catalogVersion) {
+            return current;
+        }
+
+        Map<String, CompiledPrompt> prompts = new LinkedHashMap<>();
+        do {
+            // 编译期间动作目录被替换时重新编译，保证版本与内容一致
+            catalogVersion = actionMappingService.getVersion();
+            prompts.put(MODE_DEFAULT, compiled(MODE_DEFAULT, promptGeneratorService.generateDefaultPrompt(), catalogVersion));
+            prompts.put(MODE_SIMPLE, compiled(MODE_SIMPLE, promptGeneratorService.generateSimpleSystemPrompt(), catalogVersion));
+            prompts.put(MODE_DETAILED, compiled(MODE_DETAILED, promptGeneratorService.generateSystemPrompt(), catalogVersion));
+        } while (catalogVersion != actionMappingService.getVersion());
+
+        current = new Snapshot(catalogVersion, Map.copyOf(prompts));
+        snapshot = current;
+        compilations.incrementAndGet();
+        log.info("提示词模板已编译: 动作目录版本={}, {}", catalogVersion,
+                prompts.values().stream().map(p -> p.mode() + "=" + p.version()).toList());
+        return current;
+    }
+
+    private static CompiledPrompt compiled(String mode, String text, long catalogVersion) {
+        String version = "v" + catalogVersion + "-" + InferenceResultCache.hashPrompt(text).substring(0, 12);
+        return new CompiledPrompt(mode, text, version);
+    }
+
+    private static String resolveMode(String mode) {
+        if (!StringUtils.hasText(mode)) {
+            return MODE_DEFAULT;
+        }
+        return switch (mode.toLowerCase()) {
+            case MODE_DEFAULT -> MODE_DEFAULT;
+            case MODE_SIMPLE -> MODE_SIMPLE;
+            case MODE_DETAILED -> MODE_DETAILED;
+            default -> {
+                log.debug("未知的prompt模式: {}，使用默认模式", mode);
+                yield MODE_DEFAULT;
+            }
+        };
+    }
+
+    /**
+     * 获取注册表状态
+     */
+    public Map<String, Object> getStatus() {
+        Snapshot current = snapshot;
+        Map<String, Object> versions = new LinkedHashMap<>();
+        if (current != null) {
+            current.prompts().forEach((mode, prompt) -> versions.put(mode, prompt.version()));
+        }
+        return Map.of(
+            "catalogVersion", current != null ? current.catalogVersion() : 0,
+            "compilations", compilations.get(),
+            "versions", versions
+        );
+    }
+
+    /**
+     * 已编译的提示词
+     */
+    public record CompiledPrompt(String mode, String text, String version) {
+
+        /**
+         * 在提示词前拼接本次请求的边缘检测结果
+         */
+        public String render(String edgeDetectionResult) {
+            if (!StringUtils.hasText(edgeDetectionResult)) {
+                return text;
+            }
+            return new StringBuilder(edgeDetectionResult.length() + 2 + text.length())
+                    .append(edgeDetectionResult)
+                    .append("\n\n")
+                    .append(text)
+                    .toString();
+        }
+    }
+
+    private record Snapshot(long catalogVersion, Map<String, CompiledPrompt> prompts) {
+    }
+}
@@ -0,0 +1,42 @@
+package com.zq.eldermindllmserver.service;
+
+/**
+ * 频率配额存储后端
+ * <p>
+ * 同时维护每分钟与每小时两个滑动窗口。实现需保证一次调用内对两个窗口的检查与记录是原子的，
+ * 可以一次预留多个配额，由调用方在本地分批消耗，减少与共享存储之间的协调次数。
+ */
+public interface RateLimitBackend extends AutoCloseable {
+
+    /**
+     * 尝试预留配额
+     *
+     * @param permits 期望预留的数量
+     * @return 实际预留的数量，0表示已达上限
+     */
+    int tryAcquire(int permits);
+
+    /**
+     * 距离配额恢复的预计等待时间（纳秒），未达上限时返回0
+     */
+    long nanosUntilCapacity();
+
+    /**
+     * 当前分钟窗口内的请求数
+     */
+    int minuteCount();
+
+    /**
+     * 当前小时窗口内的请求数
+     */
+    int hourCount();
+
+    /**
+     * 后端名称
+     */
+    String getName();
+
+    @Override
+    default void close() {
+    }
+}
@@ -1,86 +1,268 @@
 package com.zq.eldermindllmserver.service;
 
 import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
 /**
  * LLM推理限流服务
+ * <p>
+ * 等待者按优先级排队（紧急 &gt; 健康 &gt; 关键 &gt; 日常），同优先级先到先得。
+ * 许可释放时直接唤醒队首等待者；频率受限时队首按最早记录的过期时间定时等待，不做轮询。
+ * 预计等待会超过队列超时时，从低优先级开始提前拒绝，紧急请求不会被拒绝。
+ * 许可等待耗时按优先级和是否获得许可记录到计时器，绑定到指标注册表之前不记录。
+ * <p>
+ * 除请求次数外还按每分钟token预算限流：发出前按提示词长度和最近的实际用量估算并预留token，
+ * 收到上游usage后调用{@link #reconcileTokens}按实际用量修正；未修正的预留（如请求失败）按估算值保留。
+ * <p>
+ * 频率配额从本地租约中扣除，租约用完时由一个线程在锁外向后端预留下一批，共享存储的网络请求
+ * 不会阻塞许可释放、等待者唤醒和状态查询。
  */
 @Slf4j
 @Service
-public class RateLimiterService {
+public class RateLimiterService implements MeterBinder {
+    
+    private static final double HOLD_TIME_ALPHA = 0.2;
+    private static final double TOKEN_ESTIMATE_ALPHA = 0.2;
     
     private final LLMConfig.RateLimiter config;
-    private final Semaphore concurrentSemaphore;
     private final AtomicInteger currentConcurrent = new AtomicInteger(0);
-    private final ConcurrentLinkedQueue<LocalDateTime> minuteRequests = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<LocalDateTime> hourRequests = new ConcurrentLinkedQueue<>();
+    private final LongSupplier clock;
+    private final RateLimitBackend backend;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeSet<Waiter> waiters = new TreeSet<>(
+            Comparator.comparing((Waiter w) -> w.priority).thenComparingLong(w -> w.sequence));
+    private final ThreadLocal<Long> acquiredAt = new ThreadLocal<>();
+    private final ThreadLocal<TokenReservation> tokenReservation = new ThreadLocal<>();
+    private final TokenBudget tokenBudget;
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private int availablePermits;
+    private int leasedPermits;
+    private long leaseExpiresAt;
+    private long deniedUntil;
+    private boolean reserving;
+    private long nextSequence;
+    private volatile long avgHoldNanos;
+    private volatile double mediaTokens;
+    private volatile double completionTokens;
+    private long pendingTokens;
+    private volatile Timer[] permitWaitTimers;
+    
+    @Autowired
+    public RateLimiterService(LLMConfig llmConfig, RateLimitBackend backend) {
+        this(llmConfig, backend, System::nanoTime);
+    }
+    
+    RateLimiterService(LLMConfig llmConfig) {
+        this(llmConfig, System::nanoTime);
+    }
+    
+    RateLimiterService(LLMConfig llmConfig, LongSupplier clock) {
+        this(llmConfig, new InMemoryRateLimitBackend(llmConfig.getRateLimiter(), clock), clock);
+    }
     
-    public RateLimiterService(LLMConfig llmConfig) {
+    RateLimiterService(LLMConfig llmConfig, RateLimitBackend backend, LongSupplier clock) {
         this.config = llmConfig.getRateLimiter();
-        this.concurrentSemaphore = new Semaphore(config.getMaxConcurrentRequests());
+        this.availablePermits = config.getMaxConcurrentRequests();
+        this.clock = clock;
+        this.backend = backend;
+        this.tokenBudget = new TokenBudget(config.getMaxTokensPerMinute(), clock);
+        this.mediaTokens = config.getMediaTokens();
+        this.completionTokens = config.getCompletionTokens();
         
-        log.info("LLM限流器初始化: 并发={}, 分钟限制={}, 小时限制={}", 
+        log.info("LLM限流器初始化: 并发={}, 分钟限制={}, 小时限制={}, 每分钟token={}, 后端={}", 
                 config.getMaxConcurrentRequests(), 
                 config.getMaxRequestsPerMinute(), 
-                config.getMaxRequestsPerHour());
+                config.getMaxRequestsPerHour(),
+                config.getMaxTokensPerMinute(),
+                backend.getName());
+    }
+    
+    /**
+     * 单次请求的token估算
+     *
+     * @param promptTokens     输入token数（提示词+视频）
+     * @param completionTokens 输出token数
+     */
+    public record TokenEstimate(int promptTokens, int completionTokens) {
+        
+        public int total() {
+            return promptTokens + completionTokens;
+        }
+    }
+    
+    /**
+     * 当前线程持有的token预留
+     */
+    private record TokenReservation(long epoch, TokenEstimate estimate) {
+    }
+
+    /**
+     * 不绑定线程的许可（如对冲请求），由持有者通过{@link #releasePermit(Permit)}释放
+     *
+     * @param tokens 预留的token数，按估算值保留不做修正
+     */
+    public record Permit(int tokens) {
+    }
+    
+    /**
+     * 排队等待者
+     */
+    private static final class Waiter {
+        private final RequestPriority priority;
+        private final long sequence;
+        private final long deadline;
+        private final Condition condition;
+        private boolean shed;
+        
+        private Waiter(RequestPriority priority, long sequence, long deadline, Condition condition) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.deadline = deadline;
+            this.condition = condition;
+        }
     }
     
     /**
-     * 获取请求许可
+     * 获取请求许可（日常优先级）
      */
     public boolean acquirePermit() throws InterruptedException {
+        return acquirePermit(RequestPriority.ROUTINE);
+    }
+    
+    /**
+     * 按优先级获取请求许可
+     */
+    public boolean acquirePermit(RequestPriority priority) throws InterruptedException {
+        return acquirePermit(priority, Long.MAX_VALUE);
+    }
+    
+    /**
+     * 按优先级获取请求许可，最多等待到队列超时和调用方剩余时间中较早的一个
+     *
+     * @param timeoutNanos 调用方剩余的等待时间（纳秒）
+     */
+    public boolean acquirePermit(RequestPriority priority, long timeoutNanos) throws InterruptedException {
+        return acquirePermit(priority, timeoutNanos, null);
+    }
+    
+    /**
+     * 按优先级获取请求许可并预留token
+     *
+     * @param timeoutNanos 调用方剩余的等待时间（纳秒）
+     * @param estimate     token估算，为null时不预留token
+     */
+    public boolean acquirePermit(RequestPriority priority, long timeoutNanos, TokenEstimate estimate)
+            throws InterruptedException {
         if (!config.isEnabled()) {
             return true;
         }
         
-        // 尝试获取并发许可
-        if (!concurrentSemaphore.tryAcquire(config.getQueueTimeout(), TimeUnit.SECONDS)) {
-            log.warn("等待并发许可超时 ({}秒)", config.getQueueTimeout());
-            return false;
+        long start = clock.getAsLong();
+        boolean acquired = false;
+        try {
+            acquired = awaitPermit(priority, timeoutNanos, estimate, start);
+            return acquired;
+        } finally {
+            Timer[] timers = permitWaitTimers;
+            if (timers != null) {
+                timers[priority.ordinal() * 2 + (acquired ? 0 : 1)]
+                        .record(clock.getAsLong() - start, TimeUnit.NANOSECONDS);
+            }
         }
-        
+    }
+    
+    private boolean awaitPermit(RequestPriority priority, long timeoutNanos, TokenEstimate estimate, long now)
+            throws InterruptedException {
+        int tokens = estimate != null ? estimate.total() : 0;
+        lock.lock();
         try {
-            // 检查频率限制
-            long startTime = System.currentTimeMillis();
-            while (!canMakeRequest()) {
-                long elapsed = System.currentTimeMillis() - startTime;
-                if (elapsed >= (long) config.getQueueTimeout() * 1000L) {
-                    log.warn("等待频率限制解除超时");
-                    return false;
+            long waitLimit = Math.min(TimeUnit.SECONDS.toNanos(config.getQueueTimeout()), Math.max(0, timeoutNanos));
+            Waiter waiter = new Waiter(priority, nextSequence++, now + waitLimit, lock.newCondition());
+            waiters.add(waiter);
+            shedHopelessWaiters(now);
+            
+            try {
+                while (true) {
+                    if (waiter.shed) {
+                        log.warn("预计等待超过队列超时，提前拒绝{}请求", priority);
+                        return false;
+                    }
+                    
+                    long waitNanos = waiter.deadline - clock.getAsLong();
+                    if (waiters.first() == waiter && availablePermits > 0) {
+                        // 先确认token预算足够，再从本地租约扣除频率配额；租约用完时在锁外向后端预留后重新检查
+                        long tokenWaitNanos = tokenBudget.nanosUntilAvailable(tokens);
+                        boolean reserved = tokenWaitNanos == 0 && takeLeased();
+                        if (!reserved && tokenWaitNanos == 0 && !reserving && refillLease() > 0) {
+                            continue;
+                        }
+                        if (reserved) {
+                            waiters.remove(waiter);
+                            availablePermits--;
+                            currentConcurrent.incrementAndGet();
+                            acquiredAt.set(clock.getAsLong());
+                            if (estimate != null) {
+                                tokenReservation.set(new TokenReservation(tokenBudget.reserve(tokens), estimate));
+                                pendingTokens += tokens;
+                            }
+                            signalHead();
+                            log.debug("获取LLM请求许可成功，优先级: {}，当前并发: {}/{}，预留token: {}",
+                                    priority, currentConcurrent.get(), config.getMaxConcurrentRequests(), tokens);
+                            return true;
+                        }
+                        if (tokenWaitNanos > 0 || !reserving) {
+                            // 频率或token预算受限，定时等待到最早的记录过期；其他线程正在预留时等待其唤醒
+                            long retryNanos = (long) (config.getRetryDelay() * TimeUnit.SECONDS.toNanos(1));
+                            long capacityNanos = Math.max(tokenWaitNanos > 0 ? tokenWaitNanos : nanosUntilCapacity(),
+                                    TimeUnit.MILLISECONDS.toNanos(1));
+                            waitNanos = Math.min(waitNanos, retryNanos > 0 ? Math.min(retryNanos, capacityNanos) : capacityNanos);
+                            log.debug("频率限制中，等待 {}毫秒", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                        }
+                    }
+                    
+                    if (waiter.shed) {
+                        // 向后端预留期间被提前拒绝
+                        continue;
+                    }
+                    if (clock.getAsLong() - waiter.deadline >= 0) {
+                        waiters.remove(waiter);
+                        signalHead();
+                        timeoutCount.incrementAndGet();
+                        log.warn("等待LLM请求许可超时 ({}毫秒)", TimeUnit.NANOSECONDS.toMillis(waitLimit));
+                        return false;
+                    }
+                    waiter.condition.awaitNanos(waitNanos);
                 }
-
-                log.debug("频率限制中，等待 {}秒", config.getRetryDelay());
-                try {
-                    TimeUnit.MILLISECONDS.sleep((long) (config.getRetryDelay() * 1000));
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new InterruptedException("等待被中断");
+            } catch (InterruptedException | RuntimeException e) {
+                if (waiters.remove(waiter)) {
+                    signalHead();
                 }
+                throw e;
             }
-            
-            // 记录请求
-            recordRequest();
-            currentConcurrent.incrementAndGet();
-            
-            log.debug("获取LLM请求许可成功，当前并发: {}/{}", 
-                    currentConcurrent.get(), config.getMaxConcurrentRequests());
-            
-            return true;
-            
-        } catch (Exception e) {
-            // 如果出现异常，释放并发许可
-            concurrentSemaphore.release();
-            throw e;
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -92,65 +274,342 @@ public class RateLimiterService {
             return;
         }
         
-        concurrentSemaphore.release();
-        currentConcurrent.decrementAndGet();
+        Long startedAt = acquiredAt.get();
+        if (startedAt != null) {
+            acquiredAt.remove();
+            long held = clock.getAsLong() - startedAt;
+            long previous = avgHoldNanos;
+            avgHoldNanos = previous == 0 ? held : (long) (previous + HOLD_TIME_ALPHA * (held - previous));
+        }
+        
+        TokenReservation reservation = tokenReservation.get();
+        lock.lock();
+        try {
+            if (reservation != null) {
+                // 未按实际用量修正的预留保留估算值
+                tokenReservation.remove();
+                pendingTokens -= reservation.estimate().total();
+            }
+            availablePermits++;
+            currentConcurrent.decrementAndGet();
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
         
-        log.debug("释放LLM请求许可，当前并发: {}/{}", 
+        log.debug("释放LLM请求许可，当前并发: {}/{}",
                 currentConcurrent.get(), config.getMaxConcurrentRequests());
     }
+
+    /**
+     * 不等待地获取一个许可并预留频率配额和token，用于对冲等可放弃的额外请求
+     * <p>
+     * 有请求在排队、没有空闲并发、频率配额或token预算不足时直接返回null，不与排队的请求争抢许可
+     *
+     * @param estimate token估算，为null时不预留token
+     * @return 获得的许可，失败时返回null
+     */
+    public Permit tryAcquirePermit(TokenEstimate estimate) {
+        int tokens = estimate != null ? estimate.total() : 0;
+        if (!config.isEnabled()) {
+            return new Permit(0);
+        }
+        lock.lock();
+        try {
+            if (!canTakeWithoutWaiting(tokens)) {
+                return null;
+            }
+            // 向后端预留期间释放过锁，需重新检查
+            if (!takeLeased() && (refillLease() <= 0 || !canTakeWithoutWaiting(tokens) || !takeLeased())) {
+                return null;
+            }
+            availablePermits--;
+            currentConcurrent.incrementAndGet();
+            if (tokens > 0) {
+                tokenBudget.reserve(tokens);
+                pendingTokens += tokens;
+            }
+            return new Permit(tokens);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 没有排队的请求且并发和token预算都有空余，调用方需持有锁
+     */
+    private boolean canTakeWithoutWaiting(int tokens) {
+        return waiters.isEmpty() && availablePermits > 0 && tokenBudget.nanosUntilAvailable(tokens) == 0;
+    }
+
+    /**
+     * 释放{@link #tryAcquirePermit}获得的许可
+     */
+    public void releasePermit(Permit permit) {
+        if (!config.isEnabled() || permit == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            pendingTokens -= permit.tokens();
+            availablePermits++;
+            currentConcurrent.decrementAndGet();
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 估算一次请求的token数：提示词按字符数换算，视频和输出按最近的实际用量
+     */
+    public TokenEstimate estimateTokens(String prompt) {
+        int textTokens = (int) Math.ceil(prompt.length() / Math.max(0.1, config.getCharsPerToken()));
+        return new TokenEstimate(textTokens + (int) Math.round(mediaTokens), (int) Math.round(completionTokens));
+    }
     
     /**
-     * 检查是否可以发起请求
+     * 按上游返回的实际用量修正当前线程持有的token预留，并更新估算值
+     * <p>
+     * 需在{@link #releasePermit}之前由获取许可的线程调用
      */
-    private boolean canMakeRequest() {
-        cleanupOldRequests();
-        
-        // 检查每分钟限制
-        if (minuteRequests.size() >= config.getMaxRequestsPerMinute()) {
-            log.debug("每分钟请求数已达上限 ({})", config.getMaxRequestsPerMinute());
-            return false;
+    public void reconcileTokens(int promptTokens, int completionTokens) {
+        if (!config.isEnabled()) {
+            return;
         }
-        
-        // 检查每小时限制
-        if (hourRequests.size() >= config.getMaxRequestsPerHour()) {
-            log.debug("每小时请求数已达上限 ({})", config.getMaxRequestsPerHour());
-            return false;
+        TokenReservation reservation = tokenReservation.get();
+        if (reservation == null) {
+            return;
         }
+        tokenReservation.remove();
+        TokenEstimate estimate = reservation.estimate();
+        mediaTokens = Math.max(0, mediaTokens + TOKEN_ESTIMATE_ALPHA * (promptTokens - estimate.promptTokens()));
+        this.completionTokens = this.completionTokens
+                + TOKEN_ESTIMATE_ALPHA * (completionTokens - this.completionTokens);
         
-        return true;
+        lock.lock();
+        try {
+            tokenBudget.adjust(reservation.epoch(), promptTokens + completionTokens - estimate.total());
+            pendingTokens -= estimate.total();
+            signalHead();
+        } finally {
+            lock.unlock();
+        }
+        log.debug("token用量修正: 估算={}, 实际={}", estimate.total(), promptTokens + completionTokens);
     }
     
     /**
-     * 记录一次请求
+     * 最近一分钟内的token用量
      */
-    private void recordRequest() {
-        LocalDateTime now = LocalDateTime.now();
-        minuteRequests.offer(now);
-        hourRequests.offer(now);
-        cleanupOldRequests();
+    private long tokensUsed() {
+        lock.lock();
+        try {
+            return tokenBudget.used();
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
-     * 清理过期的请求记录
+     * 唤醒队首等待者，调用方需持有锁
      */
-    private void cleanupOldRequests() {
-        LocalDateTime now = LocalDateTime.now();
-        
-        // 清理一分钟前的记录
-        minuteRequests.removeIf(time -> ChronoUnit.SECONDS.between(time, now) > 60);
+    private void signalHead() {
+        if (!waiters.isEmpty()) {
+            waiters.first().condition.signal();
+        }
+    }
+    
+    /**
+     * 按优先级顺序估算每个等待者的开始时间，超过其截止时间的非紧急等待者直接拒绝。
+     * 低优先级排在队尾，因此总是先被拒绝。调用方需持有锁。
+     */
+    private void shedHopelessWaiters(long now) {
+        long holdNanos = avgHoldNanos;
+        if (!config.isLoadShedding() || holdNanos == 0) {
+            return;
+        }
+        int maxConcurrent = Math.max(1, config.getMaxConcurrentRequests());
+        int position = 0;
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            int slotsAhead = position - availablePermits;
+            long estimatedWait = slotsAhead < 0 ? 0 : (slotsAhead / maxConcurrent + 1) * holdNanos;
+            if (waiter.priority != RequestPriority.EMERGENCY && now + estimatedWait - waiter.deadline > 0) {
+                iterator.remove();
+                waiter.shed = true;
+                waiter.condition.signal();
+                shedCount.incrementAndGet();
+            } else {
+                position++;
+            }
+        }
+    }
+    
+    /**
+     * 预留一次频率配额
+     * <p>
+     * 先消耗本地已预留的配额，用完或过期后再向后端预留（批量预留大于1时一次预留多个），
+     * 使共享后端的协调开销分摊到多个请求上。
+     */
+    boolean tryReserve() {
+        lock.lock();
+        try {
+            return takeLeased() || (refillLease() > 0 && takeLeased());
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 从本地租约中扣除一次频率配额，调用方需持有锁
+     */
+    private boolean takeLeased() {
+        if (leasedPermits > 0 && clock.getAsLong() - leaseExpiresAt < 0) {
+            leasedPermits--;
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 向后端预留一批频率配额放入本地租约
+     * <p>
+     * 调用方需持有锁（只持有一层）。访问后端期间释放锁，同一时刻只有一个线程访问后端；
+     * 返回后锁已重新持有，但状态可能已变化，调用方需重新检查。
+     *
+     * @return 预留到的数量；其他线程正在预留或后端刚拒绝过而未访问后端时返回-1
+     */
+    private int refillLease() {
+        int batchSize = Math.max(1, config.getLeaseBatchSize());
+        if (reserving || (batchSize > 1 && clock.getAsLong() - deniedUntil < 0)) {
+            // 批量预留时后端刚拒绝过，在配额预计恢复前不再重复请求
+            return -1;
+        }
+        reserving = true;
+        int granted = 0;
+        lock.unlock();
+        try {
+            granted = backend.tryAcquire(batchSize);
+        } finally {
+            lock.lock();
+            reserving = false;
+            signalHead();
+        }
+        long now = clock.getAsLong();
+        if (granted == 0) {
+            leasedPermits = 0;
+            if (batchSize > 1) {
+                deniedUntil = now + backend.nanosUntilCapacity();
+            }
+            log.debug("频率配额已达上限 (分钟={}, 小时={})",
+                    config.getMaxRequestsPerMinute(), config.getMaxRequestsPerHour());
+            return 0;
+        }
+        leasedPermits += granted;
+        leaseExpiresAt = now + Math.max(1, TimeUnit.MILLISECONDS.toNanos(config.getLeaseTtl()));
+        return granted;
+    }
+    
+    /**
+     * 距离频率配额恢复的预计等待时间（纳秒）
+     */
+    private long nanosUntilCapacity() {
+        return backend.nanosUntilCapacity();
+    }
+    
+    /**
+     * 指定优先级的排队数量
+     */
+    private int waitingCount(RequestPriority priority) {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Waiter waiter : waiters) {
+                if (waiter.priority == priority) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * 注册许可等待计时器、并发和排队数量，以及提前拒绝、超时计数
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Timer[] timers = new Timer[RequestPriority.values().length * 2];
+        for (RequestPriority priority : RequestPriority.values()) {
+            for (boolean acquired : new boolean[] {true, false}) {
+                timers[priority.ordinal() * 2 + (acquired ? 0 : 1)] = Timer.builder("llm.ratelimiter.permit.wait")
+                        .description("获取推理许可的等待耗时")
+                        .tag("priority", priority.name())
+                        .tag("result", acquired ? "acquired" : "rejected")
+                        .register(registry);
+            }
+            Gauge.builder("llm.ratelimiter.waiting", this, limiter -> limiter.waitingCount(priority))
+                    .description("排队等待许可的请求数")
+                    .tag("priority", priority.name())
+                    .register(registry);
+        }
+        permitWaitTimers = timers;
         
-        // 清理一小时前的记录
-        hourRequests.removeIf(time -> ChronoUnit.SECONDS.between(time, now) > 3600);
+        Gauge.builder("llm.ratelimiter.in.flight", currentConcurrent, AtomicInteger::get)
+                .description("持有许可的上游请求数")
+                .register(registry);
+        Gauge.builder("llm.ratelimiter.tokens", this, RateLimiterService::tokensUsed)
+                .description("最近一分钟内预留和消耗的token数")
+                .register(registry);
+        FunctionCounter.builder("llm.ratelimiter.rejections", shedCount, AtomicLong::get)
+                .description("未获得许可的请求数")
+                .tag("reason", "shed")
+                .register(registry);
+        FunctionCounter.builder("llm.ratelimiter.rejections", timeoutCount, AtomicLong::get)
+                .description("未获得许可的请求数")
+                .tag("reason", "timeout")
+                .register(registry);
+    }
+    
+    /**
+     * 获取各优先级的排队数量
+     */
+    private Map<RequestPriority, Integer> waitingByPriority() {
+        Map<RequestPriority, Integer> waiting = new EnumMap<>(RequestPriority.class);
+        for (RequestPriority priority : RequestPriority.values()) {
+            waiting.put(priority, 0);
+        }
+        lock.lock();
+        try {
+            waiters.forEach(w -> waiting.merge(w.priority, 1, Integer::sum));
+        } finally {
+            lock.unlock();
+        }
+        return waiting;
     }
     
     /**
      * 获取限流器状态
      */
     public Map<String, Object> getStatus() {
-        cleanupOldRequests();
+        int minuteCount = backend.minuteCount();
+        int hourCount = backend.hourCount();
+        long tokenLimit = tokenBudget.limit();
+        long tokensUsed;
+        long tokensPending;
+        lock.lock();
+        try {
+            tokensUsed = tokenBudget.used();
+            tokensPending = pendingTokens;
+        } finally {
+            lock.unlock();
+        }
         
         return Map.of(
             "enabled", config.isEnabled(),
+            "backend", backend.getName(),
             "concurrent", Map.of(
                 "current", currentConcurrent.get(),
                 "max", config.getMaxConcurrentRequests(),
@@ -158,22 +617,35 @@ public class RateLimiterService {
             ),
             "rateLimits", Map.of(
                 "perMinute", Map.of(
-                    "current", minuteRequests.size(),
+                    "current", minuteCount,
                     "max", config.getMaxRequestsPerMinute(),
-                    "remaining", Math.max(0, config.getMaxRequestsPerMinute() - minuteRequests.size())
+                    "remaining", Math.max(0, config.getMaxRequestsPerMinute() - minuteCount)
                 ),
                 "perHour", Map.of(
-                    "current", hourRequests.size(),
+                    "current", hourCount,
                     "max", config.getMaxRequestsPerHour(),
-                    "remaining", Math.max(0, config.getMaxRequestsPerHour() - hourRequests.size())
+                    "remaining", Math.max(0, config.getMaxRequestsPerHour() - hourCount)
+                ),
+                "tokensPerMinute", Map.of(
+                    "current", tokensUsed,
+                    "pending", tokensPending,
+                    "max", tokenLimit,
+                    "remaining", tokenLimit > 0 ? Math.max(0, tokenLimit - tokensUsed) : -1,
+                    "estimatedMediaTokens", Math.round(mediaTokens),
+                    "estimatedCompletionTokens", Math.round(completionTokens)
                 )
             ),
+            "queue", Map.of(
+                "waiting", waitingByPriority(),
+                "shed", shedCount.get(),
+                "timedOut", timeoutCount.get(),
+                "avgHoldMs", TimeUnit.NANOSECONDS.toMillis(avgHoldNanos)
+            ),
             "config", Map.of(
                 "queueTimeout", config.getQueueTimeout(),
-                "retryDelay", config.getRetryDelay()
+                "retryDelay", config.getRetryDelay(),
+                "loadShedding", config.isLoadShedding()
             )
         );
     }
-    
-
 }
@@ -0,0 +1,122 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于网络共享存储的频率配额后端
+ * <p>
+ * 所有实例向同一个配额存储（开启了store-enabled的实例，见RateLimitStoreController）预留配额。
+ * 存储不可达或返回无效响应时退回本地内存后端，保证单实例仍受限流保护，并在重试间隔内不再访问存储，
+ * 避免每次预留都等待请求超时。窗口计数取自最近一次预留响应，查询状态不访问存储。
+ */
+@Slf4j
+public class RemoteRateLimitBackend implements RateLimitBackend {
+
+    private final String baseUrl;
+    private final RestTemplate restTemplate;
+    private final RateLimitBackend fallback;
+    private final long retryIntervalNanos;
+    private final AtomicLong retryAfterNanos = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicInteger remoteMinuteCount = new AtomicInteger(-1);
+    private final AtomicInteger remoteHourCount = new AtomicInteger(-1);
+    private volatile long unavailableUntil;
+    private volatile boolean unavailable;
+
+    public RemoteRateLimitBackend(String baseUrl, int timeoutMillis, RateLimitBackend fallback) {
+        this(baseUrl, timeoutMillis, 0, fallback);
+    }
+
+    /**
+     * @param retryIntervalMillis 存储不可用后暂停访问的时间（毫秒），期间直接使用本地限流
+     */
+    public RemoteRateLimitBackend(String baseUrl, int timeoutMillis, long retryIntervalMillis,
+                                  RateLimitBackend fallback) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeoutMillis);
+        requestFactory.setReadTimeout(timeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, retryIntervalMillis));
+        this.fallback = fallback;
+        log.info("网络共享限流后端已启用: {}", this.baseUrl);
+    }
+
+    @Override
+    public int tryAcquire(int permits) {
+        if (unavailable && System.nanoTime() - unavailableUntil < 0) {
+            fallbackCount.incrementAndGet();
+            return fallback.tryAcquire(permits);
+        }
+        try {
+            Map<?, ?> response = restTemplate.postForObject(
+                    baseUrl + "/acquire", Map.of("permits", permits), Map.class);
+            if (response == null || !(response.get("granted") instanceof Number granted)
+                    || granted.intValue() < 0 || granted.intValue() > permits) {
+                throw new RestClientException("配额存储返回无效响应: " + response);
+            }
+            retryAfterNanos.set(response.get("retryAfterNanos") instanceof Number n ? n.longValue() : 0);
+            if (response.get("minute") instanceof Number minute) {
+                remoteMinuteCount.set(minute.intValue());
+            }
+            if (response.get("hour") instanceof Number hour) {
+                remoteHourCount.set(hour.intValue());
+            }
+            if (unavailable) {
+                unavailable = false;
+                log.info("配额存储已恢复: {}", baseUrl);
+            }
+            return granted.intValue();
+        } catch (RestClientException e) {
+            fallbackCount.incrementAndGet();
+            unavailableUntil = System.nanoTime() + retryIntervalNanos;
+            unavailable = true;
+            log.warn("配额存储不可用，{}毫秒内使用本地限流: {}",
+                    TimeUnit.NANOSECONDS.toMillis(retryIntervalNanos), e.getMessage());
+            return fallback.tryAcquire(permits);
+        }
+    }
+
+    @Override
+    public long nanosUntilCapacity() {
+        return Math.max(unavailable ? 0 : retryAfterNanos.get(), fallback.nanosUntilCapacity());
+    }
+
+    @Override
+    public int minuteCount() {
+        int count = remoteMinuteCount.get();
+        return unavailable || count < 0 ? fallback.minuteCount() : count;
+    }
+
+    @Override
+    public int hourCount() {
+        int count = remoteHourCount.get();
+        return unavailable || count < 0 ? fallback.hourCount() : count;
+    }
+
+    /**
+     * 因存储不可用而退回本地限流的次数
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    @Override
+    public String getName() {
+        return "remote:" + baseUrl;
+    }
+
+    @Override
+    public void close() {
+        fallback.close();
+    }
+}
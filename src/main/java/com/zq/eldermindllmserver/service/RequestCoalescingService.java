@@ -0,0 +1,181 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并服务
+ * 相同键的并发请求共享同一次上游调用；携带Idempotency-Key的重试请求复用进行中或刚完成的结果，
+ * 同一幂等键用于内容不同的请求时拒绝而不是返回其他请求的结果。
+ * 跟随者只等待到自己的截止时间，超时只影响该调用方，共享的调用继续进行。
+ */
+@Slf4j
+@Service
+public class RequestCoalescingService {
+
+    private final LLMConfig.Coalescing config;
+    private final Map<Object, CompletableFuture<LLMInferenceResult>> inflight = new ConcurrentHashMap<>();
+    private final Map<String, IdempotencyEntry> idempotencyKeys = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong idempotentHits = new AtomicLong();
+
+    public RequestCoalescingService(LLMConfig llmConfig) {
+        this.config = llmConfig.getCoalescing();
+    }
+
+    private record IdempotencyEntry(Object key, CompletableFuture<LLMInferenceResult> future, long createdAtNanos) {
+    }
+
+    /**
+     * 幂等键已用于内容不同的请求
+     */
+    public static class IdempotencyConflictException extends RuntimeException {
+
+        public IdempotencyConflictException(String idempotencyKey) {
+            super("幂等键已用于其他请求: " + idempotencyKey);
+        }
+    }
+
+    /**
+     * 合并执行
+     *
+     * @param key            请求内容键，相同键的并发请求只调用一次
+     * @param idempotencyKey 客户端提供的幂等键，可为空
+     * @param call           实际执行推理的调用
+     */
+    public LLMInferenceResult execute(Object key, String idempotencyKey, Supplier<LLMInferenceResult> call)
+            throws InterruptedException {
+        return execute(key, idempotencyKey, null, call);
+    }
+
+    /**
+     * 在调用方的截止时间内合并执行
+     *
+     * @param deadline 调用方的截止时间，复用其他请求的结果时最多等待到此时，为空时一直等待
+     * @throws Deadline.ExceededException     等待复用的结果超过截止时间
+     * @throws IdempotencyConflictException 幂等键已用于请求内容键不同的请求
+     */
+    public LLMInferenceResult execute(Object key, String idempotencyKey, Deadline deadline,
+                                      Supplier<LLMInferenceResult> call) throws InterruptedException {
+        if (!config.isEnabled()) {
+            return call.get();
+        }
+
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return singleFlight(key, deadline, call);
+        }
+
+        CompletableFuture<LLMInferenceResult> mine = new CompletableFuture<>();
+        IdempotencyEntry entry = idempotencyKeys.compute(idempotencyKey, (k, existing) ->
+            existing != null && !isExpired(existing, System.nanoTime()) ? existing : new IdempotencyEntry(key, mine, System.nanoTime()));
+        if (entry.future() != mine) {
+            if (!entry.key().equals(key)) {
+                log.warn("幂等键已用于其他视频或提示词，拒绝请求: {}", idempotencyKey);
+                throw new IdempotencyConflictException(idempotencyKey);
+            }
+            idempotentHits.incrementAndGet();
+            log.info("幂等键命中，复用已有推理: {}", idempotencyKey);
+            return markCoalesced(await(entry.future(), deadline));
+        }
+
+        cleanupIdempotencyKeys();
+        try {
+            LLMInferenceResult result = singleFlight(key, deadline, call);
+            mine.complete(result);
+            if (!result.isSuccess()) {
+                // 失败结果不保留，后续重试重新发起推理
+                idempotencyKeys.remove(idempotencyKey, entry);
+            }
+            return result;
+        } catch (RuntimeException | InterruptedException e) {
+            mine.completeExceptionally(e);
+            idempotencyKeys.remove(idempotencyKey, entry);
+            throw e;
+        }
+    }
+
+    private LLMInferenceResult singleFlight(Object key, Deadline deadline, Supplier<LLMInferenceResult> call)
+            throws InterruptedException {
+        CompletableFuture<LLMInferenceResult> mine = new CompletableFuture<>();
+        CompletableFuture<LLMInferenceResult> existing = inflight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedCount.incrementAndGet();
+            log.debug("合并相同的进行中推理请求");
+            return markCoalesced(await(existing, deadline));
+        }
+
+        try {
+            LLMInferenceResult result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 等待其他请求的结果，超时不取消共享的调用
+     */
+    private LLMInferenceResult await(CompletableFuture<LLMInferenceResult> future, Deadline deadline)
+            throws InterruptedException {
+        try {
+            return deadline == null ? future.get() : future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new Deadline.ExceededException("等待合并的推理结果", deadline.timeoutMillis());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+        }
+    }
+
+    private static LLMInferenceResult markCoalesced(LLMInferenceResult result) {
+        return result.toBuilder().coalesced(true).build();
+    }
+
+    private boolean isExpired(IdempotencyEntry entry, long now) {
+        return entry.future().isDone()
+                && now - entry.createdAtNanos() > TimeUnit.SECONDS.toNanos(config.getIdempotencyTtl());
+    }
+
+    /**
+     * 幂等键数量超过上限时清理过期项
+     */
+    private void cleanupIdempotencyKeys() {
+        if (idempotencyKeys.size() <= config.getMaxIdempotencyKeys()) {
+            return;
+        }
+        long now = System.nanoTime();
+        idempotencyKeys.values().removeIf(entry -> isExpired(entry, now));
+        if (idempotencyKeys.size() > config.getMaxIdempotencyKeys()) {
+            // 仍超出上限时丢弃已完成的项，进行中的请求保留
+            idempotencyKeys.values().removeIf(entry -> entry.future().isDone());
+        }
+    }
+
+    /**
+     * 获取请求合并状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "enabled", config.isEnabled(),
+            "inflight", inflight.size(),
+            "idempotencyKeys", idempotencyKeys.size(),
+            "coalesced", coalescedCount.get(),
+            "idempotentHits", idempotentHits.get()
+        );
+    }
+}
@@ -0,0 +1,500 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 推理结果日志写入服务
+ * <p>
+ * 请求线程只把结果放入有界队列，后台线程批量取出后以NDJSON格式一次性追加到分段文件（组提交）。
+ * 分段文件按日期分目录存放（yyyy/MM/dd），按大小或时间轮转，fsync策略可配置，停机时写完队列中的剩余结果。
+ * 批量写入和fsync耗时只在写入线程中记录，不影响请求线程。
+ */
+@Slf4j
+@Service
+public class ResultJournalWriter implements MeterBinder {
+
+    public static final String SEGMENT_SUFFIX = ".ndjson";
+
+    private static final DateTimeFormatter DATE_DIR_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+    private static final DateTimeFormatter SEGMENT_FORMAT = DateTimeFormatter.ofPattern("HHmmss_SSS");
+    private static final byte NEWLINE = '\n';
+    private static final String LEGACY_PREFIX = "llm_result_";
+    private static final Pattern LEGACY_FILE = Pattern.compile("llm_result_(\\d{8})_.*\\.json");
+    private static final String LEGACY_SEGMENT = "results_000000_000_legacy";
+    private static final String LEGACY_DIR = "legacy";
+
+    /**
+     * 停机标记，放入队列以唤醒等待中的写入线程
+     */
+    private static final LLMInferenceResult SHUTDOWN = new LLMInferenceResult();
+
+    private final LLMConfig.ResultProcessing config;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<LLMInferenceResult> queue;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final List<AppendListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<SegmentListener> segmentListeners = new CopyOnWriteArrayList<>();
+    private volatile int lastBatchSize;
+    private volatile boolean running;
+    private volatile Timer writeTimer;
+    private volatile Timer fsyncTimer;
+    private Thread writerThread;
+
+    // 以下字段仅由写入线程访问
+    private FileChannel channel;
+    private Path segmentPath;
+    private String segmentDate;
+    private long segmentBytes;
+    private long segmentOpenedAt;
+    private long lastSyncAt;
+    private boolean dirty;
+
+    public ResultJournalWriter(LLMConfig llmConfig, ObjectMapper objectMapper) {
+        this.config = llmConfig.getResultProcessing();
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(config.getJournalQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::runLoop, "llm-result-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("结果日志写入线程已启动: 目录={}, fsync策略={}", config.getResultsDir(), config.getFsyncPolicy());
+    }
+
+    /**
+     * 提交一条结果，队列已满且等待超时时丢弃并计数
+     */
+    public boolean append(LLMInferenceResult result) {
+        try {
+            if (queue.offer(result, config.getOfferTimeout(), TimeUnit.MILLISECONDS)) {
+                enqueued.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.incrementAndGet();
+        log.warn("结果日志队列已满，丢弃结果: {}", result.getVideoPath());
+        return false;
+    }
+
+    /**
+     * 注册写入回调，结果写入分段文件后在写入线程中调用
+     */
+    public void addListener(AppendListener listener) {
+        listeners.add(listener);
+    }
+
+    private void runLoop() {
+        List<LLMInferenceResult> batch = new ArrayList<>(config.getMaxBatchSize());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        while (running || !queue.isEmpty()) {
+            try {
+                LLMInferenceResult first = queue.poll(config.getFsyncInterval(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, config.getMaxBatchSize() - 1);
+                    batch.removeIf(result -> result == SHUTDOWN);
+                    if (!batch.isEmpty()) {
+                        writeBatch(batch, buffer);
+                    }
+                    batch.clear();
+                }
+                syncIfDue();
+            } catch (InterruptedException e) {
+                // 写入线程不会被中断，继续写完队列
+                Thread.interrupted();
+            } catch (Exception e) {
+                failed.addAndGet(batch.size());
+                batch.clear();
+                log.error("写入结果日志失败: {}", e.getMessage(), e);
+                closeSegment();
+            }
+        }
+        closeSegment();
+    }
+
+    private void writeBatch(List<LLMInferenceResult> batch, ByteArrayOutputStream buffer) throws IOException {
+        long start = System.nanoTime();
+        buffer.reset();
+        int[] offsets = new int[batch.size() + 1];
+        for (int i = 0; i < batch.size(); i++) {
+            offsets[i] = buffer.size();
+            objectMapper.writeValue(buffer, batch.get(i));
+            buffer.write(NEWLINE);
+        }
+        offsets[batch.size()] = buffer.size();
+        rotateIfNeeded(buffer.size());
+
+        long base = segmentBytes;
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        segmentBytes += buffer.size();
+        bytesWritten.addAndGet(buffer.size());
+        written.addAndGet(batch.size());
+        batches.incrementAndGet();
+        lastBatchSize = batch.size();
+        dirty = true;
+
+        if ("batch".equalsIgnoreCase(config.getFsyncPolicy())) {
+            sync();
+        }
+        Timer timer = writeTimer;
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        notifyListeners(batch, offsets, base);
+    }
+
+    private void notifyListeners(List<LLMInferenceResult> batch, int[] offsets, long base) {
+        for (AppendListener listener : listeners) {
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    // 长度不含换行符
+                    listener.onAppended(batch.get(i), segmentPath, base + offsets[i], offsets[i + 1] - offsets[i] - 1);
+                } catch (Exception e) {
+                    log.warn("结果日志写入回调失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void syncIfDue() throws IOException {
+        if (dirty && "interval".equalsIgnoreCase(config.getFsyncPolicy())
+                && System.nanoTime() - lastSyncAt >= TimeUnit.MILLISECONDS.toNanos(config.getFsyncInterval())) {
+            sync();
+        }
+        if (channel != null && System.nanoTime() - segmentOpenedAt >= TimeUnit.SECONDS.toNanos(config.getSegmentMaxAge())) {
+            closeSegment();
+        }
+    }
+
+    private void sync() throws IOException {
+        if (channel != null && dirty) {
+            long start = System.nanoTime();
+            channel.force(false);
+            fsyncs.incrementAndGet();
+            Timer timer = fsyncTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        dirty = false;
+        lastSyncAt = System.nanoTime();
+    }
+
+    /**
+     * 按日期、大小和时间轮转分段文件
+     */
+    private void rotateIfNeeded(int incomingBytes) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        String date = now.format(DATE_DIR_FORMAT);
+        if (channel != null && (!date.equals(segmentDate)
+                || segmentBytes + incomingBytes > config.getSegmentMaxBytes()
+                || System.nanoTime() - segmentOpenedAt >= TimeUnit.SECONDS.toNanos(config.getSegmentMaxAge()))) {
+            closeSegment();
+        }
+        if (channel == null) {
+            Path dir = Paths.get(config.getResultsDir()).resolve(date);
+            Files.createDirectories(dir);
+            Path path = dir.resolve("results_" + now.format(SEGMENT_FORMAT) + SEGMENT_SUFFIX);
+            for (int i = 1; Files.exists(path); i++) {
+                path = dir.resolve("results_" + now.format(SEGMENT_FORMAT) + "_" + i + SEGMENT_SUFFIX);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            segmentPath = path;
+            segmentDate = date;
+            segmentBytes = 0;
+            segmentOpenedAt = System.nanoTime();
+            log.debug("打开结果日志分段: {}", path);
+        }
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (!"none".equalsIgnoreCase(config.getFsyncPolicy())) {
+                sync();
+            }
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭结果日志分段失败: {}", e.getMessage());
+        }
+        log.debug("关闭结果日志分段: {}", segmentPath);
+        channel = null;
+        segmentPath = null;
+        dirty = false;
+    }
+
+    /**
+     * 列出所有分段文件，按文件路径倒序（即最新在前）
+     */
+    public List<Path> listSegments() throws IOException {
+        Path root = Paths.get(config.getResultsDir());
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(root, 4)) {
+            return files
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparing(Path::toString).reversed())
+                    .toList();
+        }
+    }
+
+    /**
+     * 注册旧版结果导入回调，导入的分段文件提交后在导入线程中调用
+     */
+    public void addSegmentListener(SegmentListener listener) {
+        segmentListeners.add(listener);
+    }
+
+    /**
+     * 启动后在后台线程中导入旧版结果文件，此时索引等回调均已注册
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startLegacyImport() {
+        if (!config.isImportLegacyResults()) {
+            return;
+        }
+        Thread thread = new Thread(this::importLegacyResults, "llm-result-legacy-import");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 将旧版本逐条保存的结果文件（results-dir/llm_result_yyyyMMdd_*.json）按文件名中的日期逐日导入分段文件，
+     * 导入后移入legacy子目录。每次只处理一天的文件，逐个读取写入，不在内存中保留结果。
+     */
+    void importLegacyResults() {
+        Path root = Paths.get(config.getResultsDir());
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        Set<String> dates = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, LEGACY_PREFIX + "*.json")) {
+            for (Path file : files) {
+                Matcher matcher = LEGACY_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    dates.add(matcher.group(1));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("列出旧版结果文件失败: {}", e.getMessage());
+            return;
+        }
+        if (dates.isEmpty()) {
+            return;
+        }
+
+        int count = 0;
+        for (String date : dates) {
+            try {
+                count += importLegacyDate(root, date);
+            } catch (IOException e) {
+                log.error("导入{}的旧版结果文件失败，下次启动时重试: {}", date, e.getMessage(), e);
+            }
+        }
+        log.info("已导入旧版结果文件: {}条，原文件移至 {}", count, root.resolve(LEGACY_DIR));
+    }
+
+    /**
+     * 导入一天的旧版结果：先写入临时文件并落盘，再原子重命名为分段文件（提交点），最后移走原文件。
+     * 分段文件已存在说明上次导入已提交但未移完原文件，此时只移走原文件，不重复导入。
+     *
+     * @return 导入的条数
+     */
+    private int importLegacyDate(Path root, String date) throws IOException {
+        Path dir = root.resolve(date.substring(0, 4)).resolve(date.substring(4, 6)).resolve(date.substring(6));
+        Path segment = dir.resolve(LEGACY_SEGMENT + SEGMENT_SUFFIX);
+        String glob = LEGACY_PREFIX + date + "_*.json";
+        int count = 0;
+        if (!Files.exists(segment)) {
+            Files.createDirectories(dir);
+            Path temp = dir.resolve(LEGACY_SEGMENT + SEGMENT_SUFFIX + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 DirectoryStream<Path> files = Files.newDirectoryStream(root, glob)) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+                for (Path file : files) {
+                    try {
+                        LLMInferenceResult result = objectMapper.readValue(file.toFile(), LLMInferenceResult.class);
+                        buffer.reset();
+                        objectMapper.writeValue(buffer, result);
+                        buffer.write(NEWLINE);
+                    } catch (JsonProcessingException e) {
+                        log.warn("跳过无法解析的旧版结果文件: {}, {}", file, e.getOriginalMessage());
+                        continue;
+                    }
+                    ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                    while (bytes.hasRemaining()) {
+                        out.write(bytes);
+                    }
+                    count++;
+                }
+                out.force(true);
+            }
+            Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+            for (SegmentListener listener : segmentListeners) {
+                try {
+                    listener.onSegmentImported(segment);
+                } catch (Exception e) {
+                    log.warn("结果日志导入回调失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        Path legacyDir = root.resolve(LEGACY_DIR);
+        Files.createDirectories(legacyDir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, glob)) {
+            for (Path file : files) {
+                Files.move(file, legacyDir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 停机时写完队列中的剩余结果
+     * <p>
+     * 不中断写入线程：中断正在写入或fsync的FileChannel会关闭通道并丢失整批结果。
+     * 只清除运行标志并放入停机标记唤醒等待，队列已满时写入线程在下一次poll超时后退出。
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            queue.offer(SHUTDOWN);
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("结果日志写入线程已停止: 已写入={}, 丢弃={}", written.get(), dropped.get());
+    }
+
+    /**
+     * 注册写入耗时计时器、队列深度和写入计数
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        writeTimer = Timer.builder("llm.journal.write")
+                .description("一批结果序列化并写入分段文件的耗时（含batch策略下的fsync）")
+                .register(registry);
+        fsyncTimer = Timer.builder("llm.journal.fsync")
+                .description("分段文件fsync耗时")
+                .register(registry);
+        Gauge.builder("llm.journal.queue.depth", queue, BlockingQueue::size)
+                .description("等待写入的结果数")
+                .register(registry);
+        registerCounter(registry, "written", written);
+        registerCounter(registry, "dropped", dropped);
+        registerCounter(registry, "failed", failed);
+        FunctionCounter.builder("llm.journal.bytes", bytesWritten, AtomicLong::get)
+                .description("写入分段文件的字节数")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private static void registerCounter(MeterRegistry registry, String result, AtomicLong counter) {
+        FunctionCounter.builder("llm.journal.results", counter, AtomicLong::get)
+                .description("结果日志的写入结果")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    /**
+     * 获取写入状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "queueDepth", queue.size(),
+            "queueCapacity", config.getJournalQueueCapacity(),
+            "enqueued", enqueued.get(),
+            "written", written.get(),
+            "dropped", dropped.get(),
+            "failed", failed.get(),
+            "batches", batches.get(),
+            "lastBatchSize", lastBatchSize,
+            "fsyncs", fsyncs.get(),
+            "bytesWritten", bytesWritten.get()
+        );
+    }
+
+    /**
+     * 结果写入回调
+     */
+    public interface AppendListener {
+
+        /**
+         * 一条结果已写入分段文件的指定位置
+         */
+        void onAppended(LLMInferenceResult result, Path segment, long offset, int length);
+    }
+
+    /**
+     * 旧版结果导入回调
+     */
+    public interface SegmentListener {
+
+        /**
+         * 导入的分段文件已提交
+         */
+        void onSegmentImported(Path segment);
+    }
+}
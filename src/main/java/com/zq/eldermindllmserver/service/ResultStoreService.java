@@ -0,0 +1,384 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 推理结果查询存储
+ * <p>
+ * 为结果日志建立按时间、action_id、视频路径和成功标志的二级索引，索引项只记录结果所在分段文件及偏移量。
+ * 最近的结果保存在固定大小的内存环形缓冲区中，查询只遍历索引并按偏移量读取命中的记录，不扫描结果目录。
+ */
+@Slf4j
+@Service
+public class ResultStoreService {
+
+    /**
+     * 索引项排序：时间戳、序号
+     */
+    private static final Comparator<IndexEntry> ORDER =
+            Comparator.comparingLong(IndexEntry::timestamp).thenComparingLong(IndexEntry::seq);
+
+    private final LLMConfig.ResultStore config;
+    private final ObjectMapper objectMapper;
+    private final ResultJournalWriter journalWriter;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicReferenceArray<Slot> recent;
+    private final NavigableSet<IndexEntry> byTime = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<Integer, NavigableSet<IndexEntry>> byAction = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<IndexEntry>> byVideo = new ConcurrentHashMap<>();
+    private final Map<Boolean, NavigableSet<IndexEntry>> bySuccess = new ConcurrentHashMap<>();
+    private final AtomicInteger indexed = new AtomicInteger();
+    private final AtomicLong recentHits = new AtomicLong();
+    private final AtomicLong diskReads = new AtomicLong();
+    private final Object indexLock = new Object();
+
+    public ResultStoreService(LLMConfig llmConfig, ObjectMapper objectMapper, ResultJournalWriter journalWriter) {
+        this.config = llmConfig.getResultStore();
+        this.objectMapper = objectMapper;
+        this.journalWriter = journalWriter;
+        this.recent = new AtomicReferenceArray<>(Math.max(1, config.getRecentCapacity()));
+    }
+
+    @PostConstruct
+    public void init() {
+        // 启动时尚无新结果写入，先索引已有分段再注册回调，避免重复
+        if (config.isIndexOnStartup()) {
+            indexExistingSegments();
+        }
+        journalWriter.addListener((result, segment, offset, length) -> index(result, segment, offset, length, true));
+        journalWriter.addSegmentListener(this::indexSegment);
+    }
+
+    /**
+     * 按条件分页查询结果，按时间倒序返回
+     */
+    public ResultPage query(ResultQuery query) {
+        int limit = query.limit() != null && query.limit() > 0
+                ? Math.min(query.limit(), config.getMaxPageSize())
+                : config.getDefaultPageSize();
+
+        long from = query.from() != null ? toMillis(query.from()) : Long.MIN_VALUE;
+        IndexEntry lower = new IndexEntry(Long.MIN_VALUE, from, null, null, false, null, 0, 0);
+        IndexEntry upper;
+        boolean upperInclusive;
+        if (query.cursor() != null && !query.cursor().isBlank()) {
+            upper = decodeCursor(query.cursor());
+            upperInclusive = false;
+        } else {
+            long to = query.to() != null ? toMillis(query.to()) : Long.MAX_VALUE;
+            upper = new IndexEntry(Long.MAX_VALUE, to, null, null, false, null, 0, 0);
+            upperInclusive = true;
+        }
+        if (query.to() != null && toMillis(query.to()) < upper.timestamp()) {
+            upper = new IndexEntry(Long.MAX_VALUE, toMillis(query.to()), null, null, false, null, 0, 0);
+            upperInclusive = true;
+        }
+        if (ORDER.compare(lower, upper) > 0) {
+            return new ResultPage(List.of(), null);
+        }
+
+        // 从最有选择性的索引出发，其余条件只在索引项上过滤
+        NavigableSet<IndexEntry> candidates;
+        if (query.videoPath() != null) {
+            candidates = byVideo.get(query.videoPath());
+        } else if (query.actionId() != null) {
+            candidates = byAction.get(query.actionId());
+        } else if (query.success() != null) {
+            candidates = bySuccess.get(query.success());
+        } else {
+            candidates = byTime;
+        }
+        if (candidates == null) {
+            return new ResultPage(List.of(), null);
+        }
+
+        List<IndexEntry> matched = new ArrayList<>(limit);
+        boolean hasMore = false;
+        Iterator<IndexEntry> iterator = candidates.subSet(lower, true, upper, upperInclusive).descendingIterator();
+        while (iterator.hasNext()) {
+            IndexEntry entry = iterator.next();
+            if (!matches(entry, query)) {
+                continue;
+            }
+            if (matched.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            matched.add(entry);
+        }
+
+        List<LLMInferenceResult> items = load(matched);
+        String nextCursor = hasMore ? encodeCursor(matched.get(matched.size() - 1)) : null;
+        return new ResultPage(items, nextCursor);
+    }
+
+    private boolean matches(IndexEntry entry, ResultQuery query) {
+        return (query.videoPath() == null || query.videoPath().equals(entry.videoPath()))
+                && (query.actionId() == null || query.actionId().equals(entry.actionId()))
+                && (query.success() == null || query.success() == entry.success());
+    }
+
+    /**
+     * 读取索引项对应的结果，优先从环形缓冲区取，其余按偏移量从分段文件读取
+     */
+    private List<LLMInferenceResult> load(List<IndexEntry> entries) {
+        List<LLMInferenceResult> results = new ArrayList<>(entries.size());
+        Map<Path, FileChannel> channels = new HashMap<>();
+        try {
+            for (IndexEntry entry : entries) {
+                Slot slot = recent.get(slotOf(entry.seq()));
+                if (slot != null && slot.seq() == entry.seq()) {
+                    recentHits.incrementAndGet();
+                    results.add(slot.result());
+                    continue;
+                }
+                try {
+                    FileChannel channel = channels.get(entry.segment());
+                    if (channel == null) {
+                        channel = FileChannel.open(entry.segment(), StandardOpenOption.READ);
+                        channels.put(entry.segment(), channel);
+                    }
+                    ByteBuffer buffer = ByteBuffer.allocate(entry.length());
+                    long position = entry.offset();
+                    while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                        // 读满记录长度
+                    }
+                    diskReads.incrementAndGet();
+                    results.add(objectMapper.readValue(buffer.array(), 0, buffer.position(), LLMInferenceResult.class));
+                } catch (IOException e) {
+                    log.warn("读取结果记录失败: {}@{}, {}", entry.segment(), entry.offset(), e.getMessage());
+                }
+            }
+        } finally {
+            for (FileChannel channel : channels.values()) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 只读通道关闭失败可忽略
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 为结果建立索引，超过上限时淘汰最旧的索引项
+     */
+    private void index(LLMInferenceResult result, Path segment, long offset, int length, boolean keepRecent) {
+        long seq = sequence.incrementAndGet();
+        long timestamp = result.getTimestamp() != null ? toMillis(result.getTimestamp()) : System.currentTimeMillis();
+        IndexEntry entry = new IndexEntry(seq, timestamp, actionIdOf(result), result.getVideoPath(),
+                result.isSuccess(), segment, offset, length);
+        if (keepRecent) {
+            recent.set(slotOf(seq), new Slot(seq, result));
+        }
+
+        synchronized (indexLock) {
+            byTime.add(entry);
+            if (entry.actionId() != null) {
+                byAction.computeIfAbsent(entry.actionId(), k -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+            }
+            if (entry.videoPath() != null) {
+                byVideo.computeIfAbsent(entry.videoPath(), k -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+            }
+            bySuccess.computeIfAbsent(entry.success(), k -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+
+            if (indexed.incrementAndGet() > config.getMaxIndexEntries()) {
+                IndexEntry eldest = byTime.pollFirst();
+                if (eldest != null) {
+                    unindex(eldest);
+                    indexed.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void unindex(IndexEntry entry) {
+        if (entry.actionId() != null) {
+            removeFrom(byAction, entry.actionId(), entry);
+        }
+        if (entry.videoPath() != null) {
+            removeFrom(byVideo, entry.videoPath(), entry);
+        }
+        removeFrom(bySuccess, entry.success(), entry);
+    }
+
+    private static <K> void removeFrom(Map<K, NavigableSet<IndexEntry>> index, K key, IndexEntry entry) {
+        NavigableSet<IndexEntry> entries = index.get(key);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 扫描已有分段文件建立索引（最新分段优先），达到索引上限后停止
+     */
+    private void indexExistingSegments() {
+        long startTime = System.currentTimeMillis();
+        int count = 0;
+        try {
+            for (Path segment : journalWriter.listSegments()) {
+                count += indexSegment(segment);
+                if (indexed.get() >= config.getMaxIndexEntries()) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("为结果日志建立索引失败: {}", e.getMessage());
+        }
+        log.info("结果索引建立完成: {}条，耗时{}ms", count, System.currentTimeMillis() - startTime);
+    }
+
+    private int indexSegment(Path segment) {
+        int count = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(segment), 64 * 1024)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(4096);
+            long offset = 0;
+            long lineStart = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                if (line.size() > 0) {
+                    try {
+                        LLMInferenceResult result = objectMapper.readValue(line.toByteArray(), LLMInferenceResult.class);
+                        index(result, segment, lineStart, line.size(), false);
+                        count++;
+                    } catch (IOException e) {
+                        log.debug("跳过无法解析的结果记录: {}@{}", segment, lineStart);
+                    }
+                }
+                line.reset();
+                lineStart = offset;
+            }
+        } catch (IOException e) {
+            log.warn("读取结果日志分段失败: {}, {}", segment, e.getMessage());
+        }
+        return count;
+    }
+
+    /**
+     * 从解析结果中取action_id，优先使用结构化结果，旧的结果日志从未类型化的结果中读取
+     */
+    private static Integer actionIdOf(LLMInferenceResult result) {
+        if (result.getOutput() != null) {
+            return result.getOutput().actionId();
+        }
+        if (result.getResult() == null) {
+            return null;
+        }
+        Object value = result.getResult().get("action_id");
+        if (value == null && result.getResult().get("detected_action") instanceof Map<?, ?> detected) {
+            value = detected.get("action_id");
+        }
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Integer.parseInt(text.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private int slotOf(long seq) {
+        return (int) (seq % recent.length());
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String encodeCursor(IndexEntry entry) {
+        return entry.timestamp() + "_" + entry.seq();
+    }
+
+    private static IndexEntry decodeCursor(String cursor) {
+        int separator = cursor.indexOf('_');
+        try {
+            if (separator > 0) {
+                return new IndexEntry(Long.parseLong(cursor.substring(separator + 1)),
+                        Long.parseLong(cursor.substring(0, separator)), null, null, false, null, 0, 0);
+            }
+        } catch (NumberFormatException ignored) {
+            // 交由下方统一报错
+        }
+        throw new IllegalArgumentException("无效的分页游标: " + cursor);
+    }
+
+    /**
+     * 获取存储状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "indexed", indexed.get(),
+            "maxIndexEntries", config.getMaxIndexEntries(),
+            "recentCapacity", recent.length(),
+            "actions", byAction.size(),
+            "videos", byVideo.size(),
+            "recentHits", recentHits.get(),
+            "diskReads", diskReads.get()
+        );
+    }
+
+    /**
+     * 查询条件，为null的条件不参与过滤
+     */
+    public record ResultQuery(LocalDateTime from, LocalDateTime to, Integer actionId, String videoPath,
+                              Boolean success, String cursor, Integer limit) {
+    }
+
+    /**
+     * 查询结果页，nextCursor为null表示没有更多结果
+     */
+    public record ResultPage(List<LLMInferenceResult> items, String nextCursor) {
+    }
+
+    /**
+     * 索引项：结果的索引字段及其在分段文件中的位置
+     */
+    record IndexEntry(long seq, long timestamp, Integer actionId, String videoPath, boolean success,
+                      Path segment, long offset, int length) {
+    }
+
+    private record Slot(long seq, LLMInferenceResult result) {
+    }
+}
@@ -0,0 +1,39 @@
+package com.zq.eldermindllmserver.service;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * 去相关抖动的指数退避
+ * <p>
+ * 每次的等待时间在[基础延迟, 上次延迟×3]之间随机取值并以最大延迟封顶，
+ * 既随失败次数指数增长，又避免多个请求在同一时刻集中重试。每个请求使用独立的实例。
+ */
+public class RetryBackoff {
+
+    private final long baseMillis;
+    private final long maxMillis;
+    private final DoubleSupplier random;
+    private long previousMillis;
+
+    /**
+     * @param baseMillis 基础延迟（毫秒）
+     * @param maxMillis  最大延迟（毫秒）
+     * @param random     [0, 1)之间的随机数
+     */
+    public RetryBackoff(long baseMillis, long maxMillis, DoubleSupplier random) {
+        this.baseMillis = Math.max(1, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+        this.random = random;
+        this.previousMillis = this.baseMillis;
+    }
+
+    /**
+     * 下一次重试前的等待时间（毫秒）
+     */
+    public long nextDelayMillis() {
+        long upper = Math.max(baseMillis, previousMillis * 3);
+        long delay = Math.min(maxMillis, baseMillis + (long) (random.getAsDouble() * (upper - baseMillis)));
+        previousMillis = delay;
+        return delay;
+    }
+}
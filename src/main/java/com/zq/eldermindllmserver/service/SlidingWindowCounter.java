@@ -0,0 +1,175 @@
+package com.zq.eldermindllmserver.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 无锁分桶滑动窗口计数器
+ * <p>
+ * 窗口被划分为固定数量的时间桶，每个桶以（时间片编号, 计数）打包存放在一个long中，
+ * 通过CAS更新，保证过期清理与并发计数互不丢失。窗口内总数单独维护，预留许可时先对总数做CAS，
+ * 因此检查与记录是原子的，并发调用不会超出上限。所有操作不分配对象，耗时与请求量无关。
+ */
+public class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final int limit;
+    private final int buckets;
+    private final long bucketNanos;
+    private final LongSupplier clock;
+    private final long origin;
+    private final AtomicLongArray slots;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicInteger total = new AtomicInteger();
+
+    /**
+     * @param limit       窗口内最大次数
+     * @param windowNanos 窗口长度（纳秒）
+     * @param buckets     桶数量，决定过期精度
+     * @param clock       纳秒时钟
+     */
+    public SlidingWindowCounter(int limit, long windowNanos, int buckets, LongSupplier clock) {
+        if (limit > COUNT_MASK) {
+            throw new IllegalArgumentException("窗口上限过大: " + limit);
+        }
+        this.limit = limit;
+        this.buckets = buckets;
+        this.bucketNanos = Math.max(1, windowNanos / buckets);
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+        this.slots = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * 尝试预留一次
+     *
+     * @return 成功时返回记录所在的时间片编号（用于回滚），超出上限返回-1
+     */
+    public long tryAcquire() {
+        long epoch = advance();
+        int current;
+        do {
+            current = total.get();
+            if (current >= limit) {
+                return -1;
+            }
+        } while (!total.compareAndSet(current, current + 1));
+        record(epoch);
+        return epoch;
+    }
+
+    /**
+     * 回滚一次预留，记录已过期时忽略
+     */
+    public void release(long epoch) {
+        int index = slot(epoch);
+        long value;
+        do {
+            value = slots.get(index);
+            if (epochOf(value) != epoch || countOf(value) == 0) {
+                return;
+            }
+        } while (!slots.compareAndSet(index, value, value - 1));
+        total.decrementAndGet();
+    }
+
+    /**
+     * 当前窗口内的次数
+     */
+    public int current() {
+        advance();
+        return total.get();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 距离最早一个非空桶过期的剩余时间（纳秒），窗口为空时返回0
+     */
+    public long nanosUntilNextExpiry() {
+        advance();
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < buckets; i++) {
+            long value = slots.get(i);
+            if (countOf(value) > 0) {
+                oldest = Math.min(oldest, epochOf(value));
+            }
+        }
+        if (oldest == Long.MAX_VALUE) {
+            return 0;
+        }
+        long expireAt = origin + (oldest + buckets) * bucketNanos;
+        return Math.max(0, expireAt - clock.getAsLong());
+    }
+
+    private void record(long epoch) {
+        int index = slot(epoch);
+        while (true) {
+            long value = slots.get(index);
+            long slotEpoch = epochOf(value);
+            if (slotEpoch >= epoch) {
+                // 同一时间片，或本线程读取时钟后已被更新的时间片（计入更新的桶，只会更保守）
+                if (slots.compareAndSet(index, value, value + 1)) {
+                    return;
+                }
+            } else if (slots.compareAndSet(index, value, pack(epoch, 1))) {
+                expire(countOf(value));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 推进到当前时间片，由推进成功的线程负责清理已滑出窗口的桶
+     */
+    private long advance() {
+        long epoch = (clock.getAsLong() - origin) / bucketNanos;
+        long previous = head.get();
+        while (epoch > previous) {
+            if (head.compareAndSet(previous, epoch)) {
+                long stale = epoch - buckets;
+                for (int i = 0; i < buckets; i++) {
+                    long value;
+                    do {
+                        value = slots.get(i);
+                    } while (countOf(value) > 0 && epochOf(value) <= stale
+                            && !slots.compareAndSet(i, value, pack(epochOf(value), 0)));
+                    if (countOf(value) > 0 && epochOf(value) <= stale) {
+                        expire(countOf(value));
+                    }
+                }
+                break;
+            }
+            previous = head.get();
+        }
+        return epoch;
+    }
+
+    private void expire(long count) {
+        if (count > 0) {
+            total.addAndGet((int) -count);
+        }
+    }
+
+    private int slot(long epoch) {
+        return (int) (epoch % buckets);
+    }
+
+    private static long pack(long epoch, long count) {
+        return (epoch << COUNT_BITS) | count;
+    }
+
+    private static long epochOf(long value) {
+        return value >>> COUNT_BITS;
+    }
+
+    private static long countOf(long value) {
+        return value & COUNT_MASK;
+    }
+}
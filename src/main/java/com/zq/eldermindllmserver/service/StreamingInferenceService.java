@@ -0,0 +1,138 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式推理服务
+ * 将上游流式输出以SSE事件转发给客户端，识别到紧急动作时立即推送emergency事件
+ */
+@Slf4j
+@Service
+public class StreamingInferenceService {
+
+    private final ZhipuAiDirectService zhipuAiDirectService;
+    private final ActionMappingService actionMappingService;
+    private final LLMConfig llmConfig;
+    private final ThreadPoolExecutor executor;
+
+    public StreamingInferenceService(ZhipuAiDirectService zhipuAiDirectService,
+                                     ActionMappingService actionMappingService,
+                                     LLMConfig llmConfig) {
+        this.zhipuAiDirectService = zhipuAiDirectService;
+        this.actionMappingService = actionMappingService;
+        this.llmConfig = llmConfig;
+        LLMConfig.Streaming config = llmConfig.getStreaming();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                config.getWorkerThreads(), config.getWorkerThreads(),
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "llm-stream-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 开始流式推理
+     *
+     * @throws java.util.concurrent.RejectedExecutionException 流式推理队列已满
+     */
+    public SseEmitter stream(String videoUrl, String customPrompt, Integer edgeActionId) {
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(
+                (long) llmConfig.getTimeout() + llmConfig.getRateLimiter().getQueueTimeout());
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        emitter.onCompletion(() -> cancelled.set(true));
+        emitter.onTimeout(() -> cancelled.set(true));
+        emitter.onError(e -> cancelled.set(true));
+
+        executor.execute(() -> run(emitter, cancelled, videoUrl, customPrompt, edgeActionId));
+        return emitter;
+    }
+
+    private void run(SseEmitter emitter, AtomicBoolean cancelled, String videoUrl, String customPrompt,
+                     Integer edgeActionId) {
+        try {
+            LLMInferenceResult result = zhipuAiDirectService.streamInference(videoUrl, customPrompt, edgeActionId,
+                new ZhipuAiDirectService.StreamListener() {
+                    @Override
+                    public void onDelta(String content) {
+                        send(emitter, cancelled, "delta", content);
+                    }
+
+                    @Override
+                    public void onReasoning(String reasoning) {
+                        send(emitter, cancelled, "reasoning", reasoning);
+                    }
+
+                    @Override
+                    public void onActionDetected(int actionId) {
+                        if (actionMappingService.isEmergencyAction(actionId)) {
+                            log.warn("流式推理识别到紧急动作: {}", actionId);
+                            send(emitter, cancelled, "emergency", Map.of(
+                                "action_id", actionId,
+                                "action_name", actionMappingService.getChineseName(actionId)
+                            ));
+                        }
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return cancelled.get();
+                    }
+                });
+
+            send(emitter, cancelled, result.isSuccess() ? "result" : "error", result);
+            emitter.complete();
+        } catch (Exception e) {
+            log.error("流式推理异常: {}", e.getMessage(), e);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void send(SseEmitter emitter, AtomicBoolean cancelled, String event, Object data) {
+        if (cancelled.get()) {
+            return;
+        }
+        try {
+            MediaType mediaType = data instanceof String ? MediaType.TEXT_PLAIN : MediaType.APPLICATION_JSON;
+            emitter.send(SseEmitter.event().name(event).data(data, mediaType));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("发送SSE事件失败，客户端可能已断开: {}", e.getMessage());
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * 获取流式推理状态
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "active", executor.getActiveCount(),
+            "queued", executor.getQueue().size(),
+            "workerThreads", llmConfig.getStreaming().getWorkerThreads()
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,129 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 增量JSON扫描器
+ * 逐段接收模型输出，定位第一个包含识别结果的完整JSON对象，并尽早识别其中的action_id。
+ * 括号配对的候选对象需能解析为JSON且包含detected_action或action_id才算完整，
+ * 否则（如说明文字中的{ACTION}或示例）从其后的下一个'{'继续扫描。
+ */
+public class StreamingJsonScanner {
+
+    private static final Pattern ACTION_ID_PATTERN = Pattern.compile("\"action_id\"\\s*:\\s*(-?\\d+)[^\\d]");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final StringBuilder buffer = new StringBuilder();
+    private int scanned;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private int objectStart = -1;
+    private int objectEnd = -1;
+    private int actionSearchFrom;
+    private Integer actionId;
+
+    /**
+     * 追加一段输出并推进扫描状态
+     */
+    public void append(CharSequence chunk) {
+        buffer.append(chunk);
+        if (objectEnd >= 0) {
+            return;
+        }
+        for (; scanned < buffer.length(); scanned++) {
+            char c = buffer.charAt(scanned);
+            if (objectStart < 0) {
+                if (c == '{') {
+                    objectStart = scanned;
+                    actionSearchFrom = scanned;
+                    depth = 1;
+                }
+                continue;
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                if (isResult(objectStart, scanned + 1)) {
+                    objectEnd = scanned + 1;
+                    scanned++;
+                    break;
+                }
+                // 不是识别结果，从候选对象的下一个字符重新查找
+                scanned = objectStart;
+                objectStart = -1;
+                actionId = null;
+            }
+        }
+        findActionId();
+    }
+
+    /**
+     * 候选对象是否为合法JSON且包含识别结果
+     */
+    private boolean isResult(int start, int end) {
+        try {
+            JsonNode node = OBJECT_MAPPER.readTree(buffer.substring(start, end));
+            return node.isObject() && (node.has("detected_action") || node.has("action_id"));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void findActionId() {
+        if (actionId != null || objectStart < 0) {
+            return;
+        }
+        int end = objectEnd >= 0 ? objectEnd : buffer.length();
+        Matcher matcher = ACTION_ID_PATTERN.matcher(buffer).region(actionSearchFrom, end);
+        if (matcher.find()) {
+            actionId = Integer.parseInt(matcher.group(1));
+        } else {
+            // 保留足够的回溯长度，以匹配跨分片的字段
+            actionSearchFrom = Math.max(objectStart, end - 32);
+        }
+    }
+
+    /**
+     * 是否已解析出包含识别结果的完整JSON对象
+     */
+    public boolean isComplete() {
+        return objectEnd >= 0;
+    }
+
+    /**
+     * 已识别的action_id，尚未出现时返回null
+     */
+    public Integer getActionId() {
+        return actionId;
+    }
+
+    /**
+     * 第一个包含识别结果的完整JSON对象文本，尚未完整时返回null
+     */
+    public String getJson() {
+        return objectEnd >= 0 ? buffer.substring(objectStart, objectEnd) : null;
+    }
+
+    /**
+     * 已接收的全部输出
+     */
+    public String getContent() {
+        return buffer.toString();
+    }
+}
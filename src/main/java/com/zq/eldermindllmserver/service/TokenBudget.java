@@ -0,0 +1,120 @@
+package com.zq.eldermindllmserver.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 每分钟token预算
+ * <p>
+ * 按秒分桶记录最近一分钟内预留的token数。请求发出前按估算值预留，收到上游usage后按实际用量修正预留所在的桶，
+ * 修正时该桶已滑出窗口则忽略。窗口为空时单个超出预算的请求也会放行，避免永远无法发出。
+ * 非线程安全，由{@link RateLimiterService}在锁内调用。
+ */
+class TokenBudget {
+
+    private static final int BUCKETS = 60;
+
+    private final long limit;
+    private final long bucketNanos;
+    private final LongSupplier clock;
+    private final long origin;
+    private final long[] epochs = new long[BUCKETS];
+    private final long[] tokens = new long[BUCKETS];
+    private long total;
+
+    /**
+     * @param tokensPerMinute 每分钟token上限，不大于0时只统计不限制
+     * @param clock           纳秒时钟
+     */
+    TokenBudget(long tokensPerMinute, LongSupplier clock) {
+        this.limit = tokensPerMinute;
+        this.bucketNanos = TimeUnit.MINUTES.toNanos(1) / BUCKETS;
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    /**
+     * 最近一分钟内预留（已修正为实际用量）的token数
+     */
+    long used() {
+        advance();
+        return total;
+    }
+
+    /**
+     * 距离能够预留指定token数的等待时间（纳秒），可以立即预留时返回0
+     */
+    long nanosUntilAvailable(long amount) {
+        long current = advance();
+        long excess = total + amount - limit;
+        if (limit <= 0 || excess <= 0 || total == 0) {
+            return 0;
+        }
+        long freed = 0;
+        for (long epoch = current - BUCKETS + 1; epoch <= current; epoch++) {
+            int slot = slot(epoch);
+            if (epochs[slot] == epoch) {
+                freed += tokens[slot];
+            }
+            if (freed >= excess) {
+                return Math.max(1, origin + (epoch + BUCKETS) * bucketNanos - clock.getAsLong());
+            }
+        }
+        return TimeUnit.MINUTES.toNanos(1);
+    }
+
+    /**
+     * 预留token，调用方需先确认{@link #nanosUntilAvailable}为0
+     *
+     * @return 预留所在的时间片编号，用于修正
+     */
+    long reserve(long amount) {
+        long epoch = advance();
+        int slot = slot(epoch);
+        if (epochs[slot] != epoch) {
+            epochs[slot] = epoch;
+            tokens[slot] = 0;
+        }
+        tokens[slot] += amount;
+        total += amount;
+        return epoch;
+    }
+
+    /**
+     * 按实际用量修正一次预留
+     *
+     * @param delta 实际用量减去预留值
+     */
+    void adjust(long epoch, long delta) {
+        long current = advance();
+        int slot = slot(epoch);
+        if (current - epoch >= BUCKETS || epochs[slot] != epoch) {
+            return;
+        }
+        long adjusted = Math.max(0, tokens[slot] + delta);
+        total += adjusted - tokens[slot];
+        tokens[slot] = adjusted;
+    }
+
+    /**
+     * 清理滑出窗口的桶，返回当前时间片编号
+     */
+    private long advance() {
+        long current = Math.floorDiv(clock.getAsLong() - origin, bucketNanos);
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            if (tokens[slot] != 0 && current - epochs[slot] >= BUCKETS) {
+                total -= tokens[slot];
+                tokens[slot] = 0;
+            }
+        }
+        return current;
+    }
+
+    private static int slot(long epoch) {
+        return (int) Math.floorMod(epoch, BUCKETS);
+    }
+}
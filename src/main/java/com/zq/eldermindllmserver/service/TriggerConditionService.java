@@ -0,0 +1,236 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * 推理触发条件服务
+ * <p>
+ * 将触发条件配置与动作目录分类编译为按动作ID索引的规则数组，判断边缘端检测事件是否值得调用LLM。
+ * 动作目录版本变化后重新编译；按规则统计放行和丢弃次数。
+ */
+@Slf4j
+@Service
+public class TriggerConditionService {
+
+    private final LLMConfig.TriggerConditions config;
+    private final ActionMappingService actionMappingService;
+    private final DoubleSupplier random;
+    private final LongAdder[] counters = new LongAdder[Rule.values().length];
+    private volatile Compiled compiled;
+
+    @Autowired
+    public TriggerConditionService(LLMConfig llmConfig, ActionMappingService actionMappingService) {
+        this(llmConfig, actionMappingService, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    TriggerConditionService(LLMConfig llmConfig, ActionMappingService actionMappingService, DoubleSupplier random) {
+        this.config = llmConfig.getTriggerConditions();
+        this.actionMappingService = actionMappingService;
+        this.random = random;
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 判断检测事件是否触发推理
+     */
+    public Decision evaluate(LLMInferenceResult.OriginalEvent event) {
+        Decision decision = decide(event.getActionId(), event.getConfidence());
+        counters[decision.rule().ordinal()].increment();
+        return decision;
+    }
+
+    private Decision decide(Integer actionId, Double confidence) {
+        if (config.isAllEvents()) {
+            return Decision.of(Rule.ALL_EVENTS);
+        }
+
+        ActionRule rule = compiledRules().rule(actionId);
+        if (!rule.target()) {
+            return Decision.of(Rule.NOT_TARGET);
+        }
+        if (!rule.critical()) {
+            return Decision.of(Rule.NOT_CRITICAL);
+        }
+        if (confidence != null) {
+            if (confidence < rule.minConfidence()) {
+                return Decision.of(Rule.BELOW_MIN_CONFIDENCE);
+            }
+            if (confidence > rule.maxConfidence()) {
+                return Decision.of(Rule.ABOVE_MAX_CONFIDENCE);
+            }
+        }
+        if (rule.sampleRate() < 1.0 && random.getAsDouble() >= rule.sampleRate()) {
+            return Decision.of(Rule.SAMPLED_OUT);
+        }
+        return Decision.of(Rule.MATCHED);
+    }
+
+    private Compiled compiledRules() {
+        Compiled current = compiled;
+        if (current == null || current.catalogVersion() != actionMappingService.getVersion()) {
+            current = compile();
+        }
+        return current;
+    }
+
+    /**
+     * 按当前动作目录编译每个动作的规则
+     */
+    private synchronized Compiled compile() {
+        long catalogVersion = actionMappingService.getVersion();
+        Compiled current = compiled;
+        if (current != null && current.catalogVersion() == catalogVersion) {
+            return current;
+        }
+
+        Set<Integer> targets = new HashSet<>(config.getTargetActions());
+        List<ActionMappingService.ActionInfo> actions = actionMappingService.getActions();
+        int maxId = actions.isEmpty() ? -1 : actions.get(actions.size() - 1).getId();
+        for (Integer id : config.getActionThresholds().keySet()) {
+            if (id <= 4095) {
+                maxId = Math.max(maxId, id);
+            }
+        }
+
+        ActionRule[] rules = new ActionRule[maxId + 1];
+        for (int id = 0; id <= maxId; id++) {
+            rules[id] = compileRule(id, actionMappingService.getActionInfo(id) != null, targets);
+        }
+        ActionRule unknown = compileRule(-1, false, targets);
+
+        current = new Compiled(catalogVersion, rules, unknown);
+        compiled = current;
+        log.info("触发条件已编译: 动作目录版本={}, 动作规则={}条", catalogVersion, rules.length);
+        return current;
+    }
+
+    private ActionRule compileRule(int actionId, boolean known, Set<Integer> targets) {
+        LLMConfig.ActionThreshold threshold = config.getActionThresholds().get(actionId);
+        boolean emergency = known && actionMappingService.isEmergencyAction(actionId);
+        boolean bypass = emergency && config.isEmergencyBypass();
+        RequestPriority priority = known ? actionMappingService.getPriority(actionId) : RequestPriority.ROUTINE;
+
+        boolean target = !config.isTargetActionsOnly() || bypass
+                || (targets.isEmpty() ? known : targets.contains(actionId));
+        boolean critical = !config.isCriticalActionsOnly() || priority != RequestPriority.ROUTINE;
+
+        double minConfidence = threshold != null && threshold.getMinConfidence() != null
+                ? threshold.getMinConfidence() : config.getMinConfidence();
+        double maxConfidence = threshold != null && threshold.getMaxConfidence() != null
+                ? threshold.getMaxConfidence() : (bypass ? Double.MAX_VALUE : config.getMaxConfidence());
+        double sampleRate = threshold != null && threshold.getSampleRate() != null
+                ? threshold.getSampleRate()
+                : (priority == RequestPriority.ROUTINE && !bypass ? config.getRoutineSampleRate() : 1.0);
+
+        return new ActionRule(target, critical, minConfidence, maxConfidence, sampleRate);
+    }
+
+    /**
+     * 获取各规则的放行/丢弃计数
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> rules = new LinkedHashMap<>();
+        long passed = 0;
+        long dropped = 0;
+        for (Rule rule : Rule.values()) {
+            long count = counters[rule.ordinal()].sum();
+            rules.put(rule.getCode(), count);
+            if (rule.isForward()) {
+                passed += count;
+            } else {
+                dropped += count;
+            }
+        }
+        Compiled current = compiled;
+        return Map.of(
+            "passed", passed,
+            "dropped", dropped,
+            "rules", rules,
+            "catalogVersion", current != null ? current.catalogVersion() : 0
+        );
+    }
+
+    /**
+     * 触发规则，forward为true表示放行
+     */
+    public enum Rule {
+        ALL_EVENTS("all-events", true),
+        MATCHED("matched", true),
+        NOT_TARGET("target-actions-only", false),
+        NOT_CRITICAL("critical-actions-only", false),
+        BELOW_MIN_CONFIDENCE("min-confidence", false),
+        ABOVE_MAX_CONFIDENCE("max-confidence", false),
+        SAMPLED_OUT("sampling", false);
+
+        private final String code;
+        private final boolean forward;
+
+        Rule(String code, boolean forward) {
+            this.code = code;
+            this.forward = forward;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public boolean isForward() {
+            return forward;
+        }
+    }
+
+    /**
+     * 判定结果
+     */
+    public record Decision(Rule rule) {
+
+        private static final Decision[] CACHED = new Decision[Rule.values().length];
+
+        static {
+            for (Rule rule : Rule.values()) {
+                CACHED[rule.ordinal()] = new Decision(rule);
+            }
+        }
+
+        static Decision of(Rule rule) {
+            return CACHED[rule.ordinal()];
+        }
+
+        public boolean forward() {
+            return rule.isForward();
+        }
+    }
+
+    /**
+     * 单个动作编译后的规则
+     */
+    private record ActionRule(boolean target, boolean critical, double minConfidence, double maxConfidence,
+                              double sampleRate) {
+    }
+
+    private record Compiled(long catalogVersion, ActionRule[] rules, ActionRule unknown) {
+
+        ActionRule rule(Integer actionId) {
+            if (actionId == null || actionId < 0 || actionId >= rules.length) {
+                return unknown;
+            }
+            return rules[actionId];
+        }
+    }
+}
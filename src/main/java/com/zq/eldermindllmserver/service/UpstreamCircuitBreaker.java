@@ -0,0 +1,173 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 上游熔断器
+ * <p>
+ * 连续出现可重试的失败（网络错误、超时、429、5xx）达到阈值后打开，打开期间直接拒绝请求而不是排队等待；
+ * 经过打开时长后进入半开状态，只放行少量探测请求：探测成功则关闭，失败则重新打开。
+ */
+@Slf4j
+@Service
+public class UpstreamCircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final LLMConfig.CircuitBreaker config;
+    private final LongSupplier clock;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private int probesInFlight;
+    private long halfOpenGeneration;
+    private long rejectedCount;
+    private long openedCount;
+
+    @Autowired
+    public UpstreamCircuitBreaker(LLMConfig llmConfig) {
+        this(llmConfig, System::nanoTime);
+    }
+
+    UpstreamCircuitBreaker(LLMConfig llmConfig, LongSupplier clock) {
+        this.config = llmConfig.getCircuitBreaker();
+        this.clock = clock;
+    }
+
+    /**
+     * 放行凭证，记录该调用是否占用了探测名额
+     *
+     * @param probeGeneration 放行探测时的半开代数，0表示关闭状态下放行的普通调用
+     */
+    public record Permit(long probeGeneration) {
+
+        static final Permit CALL = new Permit(0);
+
+        public boolean isProbe() {
+            return probeGeneration != 0;
+        }
+    }
+
+    /**
+     * 判断是否放行一次上游调用，拒绝时返回null；
+     * 放行后必须调用{@link #onSuccess()}、{@link #onFailure()}或{@link #release(Permit)}之一
+     */
+    public synchronized Permit tryAcquire() {
+        if (!config.isEnabled()) {
+            return Permit.CALL;
+        }
+        advance();
+        switch (state) {
+            case CLOSED:
+                return Permit.CALL;
+            case HALF_OPEN:
+                if (probesInFlight < config.getHalfOpenMaxCalls()) {
+                    probesInFlight++;
+                    return new Permit(halfOpenGeneration);
+                }
+                rejectedCount++;
+                return null;
+            default:
+                rejectedCount++;
+                return null;
+        }
+    }
+
+    /**
+     * 记录一次成功（包括上游可达但返回不可重试错误的情况）
+     */
+    public synchronized void onSuccess() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        consecutiveFailures = 0;
+        if (state == State.HALF_OPEN) {
+            probesInFlight = 0;
+            state = State.CLOSED;
+            log.info("上游熔断器关闭：探测请求成功");
+        }
+    }
+
+    /**
+     * 记录一次可重试的失败
+     */
+    public synchronized void onFailure() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            open("探测请求失败");
+        } else if (state == State.CLOSED && consecutiveFailures >= config.getFailureThreshold()) {
+            open("连续失败" + consecutiveFailures + "次");
+        }
+    }
+
+    /**
+     * 放行的调用未产生结果（如被取消）时归还探测名额；只有本轮半开放行的探测才归还
+     */
+    public synchronized void release(Permit permit) {
+        if (permit.isProbe() && state == State.HALF_OPEN && permit.probeGeneration() == halfOpenGeneration
+                && probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    public synchronized State getState() {
+        advance();
+        return state;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        probesInFlight = 0;
+        openedCount++;
+        log.warn("上游熔断器打开：{}，{}秒内快速失败", reason, config.getOpenDuration());
+    }
+
+    /**
+     * 打开时长结束后转为半开
+     */
+    private void advance() {
+        if (state == State.OPEN
+                && clock.getAsLong() - openedAt >= TimeUnit.SECONDS.toNanos(config.getOpenDuration())) {
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            halfOpenGeneration++;
+            log.info("上游熔断器半开，放行探测请求");
+        }
+    }
+
+    /**
+     * 获取熔断器状态
+     */
+    public synchronized Map<String, Object> getStatus() {
+        advance();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", config.isEnabled());
+        status.put("state", state);
+        status.put("consecutiveFailures", consecutiveFailures);
+        status.put("opened", openedCount);
+        status.put("rejected", rejectedCount);
+        if (state == State.OPEN) {
+            long elapsed = clock.getAsLong() - openedAt;
+            status.put("retryInMs", Math.max(0, TimeUnit.SECONDS.toMillis(config.getOpenDuration())
+                    - TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        }
+        return status;
+    }
+}
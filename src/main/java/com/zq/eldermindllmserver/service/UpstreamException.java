@@ -0,0 +1,91 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * 上游调用失败
+ * <p>
+ * 按失败原因区分是否值得重试：连接/读取超时等网络错误、408、429和5xx可以重试，
+ * 其余4xx和无法解析的响应重试也不会成功。可重试的失败同时计入熔断器。
+ */
+public class UpstreamException extends RuntimeException {
+
+    /**
+     * HTTP状态码，网络错误时为0
+     */
+    private final int statusCode;
+    private final boolean retryable;
+
+    /**
+     * 上游通过Retry-After要求的最短等待时间（毫秒），未提供时为0
+     */
+    private final long retryAfterMillis;
+
+    public UpstreamException(String message, int statusCode, boolean retryable, long retryAfterMillis, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.retryable = retryable;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * 根据非2xx响应创建
+     *
+     * @param retryAfter Retry-After响应头，可为空
+     */
+    public static UpstreamException ofStatus(int statusCode, String retryAfter) {
+        boolean retryable = statusCode == 408 || statusCode == 429 || statusCode >= 500;
+        return new UpstreamException("HTTP请求失败: " + statusCode, statusCode, retryable,
+                parseRetryAfter(retryAfter), null);
+    }
+
+    /**
+     * 根据调用过程中的异常创建
+     */
+    public static UpstreamException of(Exception e) {
+        if (e instanceof UpstreamException upstream) {
+            return upstream;
+        }
+        // 网络错误可以重试，响应内容无法解析时重试也没有意义
+        boolean retryable = e instanceof IOException && !(e instanceof JsonProcessingException);
+        return new UpstreamException(e.getMessage(), 0, retryable, 0, e);
+    }
+
+    /**
+     * 解析Retry-After：秒数或HTTP日期
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return 0;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,268 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 上游请求执行器
+ * <p>
+ * 每次上游尝试在独立线程上执行，调用方只等待到请求截止时间；到期、调用方被中断（如任务取消）
+ * 或已有其他尝试先返回时中止对应的HTTP请求。启用对冲时，首次尝试超过观测到的延迟分位数仍未返回，
+ * 再发起一次相同的请求，取先成功返回的结果。
+ * <p>
+ * 对冲请求同样受限流约束：发起前不等待地获取一个许可（并发、频率配额和token预算），获取不到时不对冲；
+ * 对冲请求结束（成功、失败或被中止）即释放该许可。延迟分位数只记录胜出尝试的耗时，
+ * 落败的尝试被中止，其耗时不完整，不计入样本。
+ */
+@Slf4j
+@Service
+public class UpstreamRequestExecutor implements MeterBinder {
+
+    private final LLMConfig llmConfig;
+    private final CloseableHttpClient upstreamHttpClient;
+    private final RateLimiterService rateLimiterService;
+    private final LatencyTracker latencyTracker;
+    private final ExecutorService executor;
+    private final AtomicLong attemptCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesSkipped = new AtomicLong();
+    private final AtomicLong deadlineExceeded = new AtomicLong();
+    private final AtomicLong abortedCount = new AtomicLong();
+
+    public UpstreamRequestExecutor(LLMConfig llmConfig, CloseableHttpClient upstreamHttpClient,
+                                   RateLimiterService rateLimiterService) {
+        this.llmConfig = llmConfig;
+        this.upstreamHttpClient = upstreamHttpClient;
+        this.rateLimiterService = rateLimiterService;
+        this.latencyTracker = new LatencyTracker(llmConfig.getHedging().getSampleSize());
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "llm-upstream-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 在截止时间内执行一次上游请求（可能包含一次对冲请求）
+     *
+     * @param deadline 请求截止时间
+     * @param estimate 单次请求的token估算，对冲时按此预留token，可为null
+     * @param request  创建HTTP请求，对冲时会再调用一次
+     * @param handler  响应处理，非2xx响应应抛出异常
+     * @throws Deadline.ExceededException 截止时间前没有尝试成功返回
+     * @throws InterruptedException       调用方被中断，进行中的请求已中止
+     */
+    public <T> T execute(Deadline deadline, RateLimiterService.TokenEstimate estimate, Supplier<HttpPost> request,
+                         HttpClientResponseHandler<T> handler) throws IOException, InterruptedException {
+        deadline.check("发起上游请求");
+        attemptCount.incrementAndGet();
+
+        List<Attempt<T>> attempts = new ArrayList<>(2);
+        Attempt<T> primary = start(deadline, request, handler);
+        attempts.add(primary);
+        try {
+            long hedgeDelay = hedgeDelayNanos();
+            if (hedgeDelay > 0 && hedgeDelay < deadline.remainingNanos()) {
+                try {
+                    primary.result.get(hedgeDelay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (hedgeAllowed(deadline)) {
+                        RateLimiterService.Permit permit = rateLimiterService.tryAcquirePermit(estimate);
+                        if (permit == null) {
+                            hedgesSkipped.incrementAndGet();
+                            log.debug("没有空闲的限流许可，放弃对冲");
+                        } else {
+                            hedgeCount.incrementAndGet();
+                            log.info("上游请求超过{}ms未返回，发起对冲请求", TimeUnit.NANOSECONDS.toMillis(hedgeDelay));
+                            attempts.add(startHedge(deadline, request, handler, permit));
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    // 首次尝试已失败，下面统一处理
+                }
+            }
+
+            Attempt<T> winner = firstSuccess(attempts).get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+            latencyTracker.record(System.nanoTime() - winner.startedNanos);
+            if (winner != primary) {
+                hedgeWins.incrementAndGet();
+            }
+            return winner.result.join();
+
+        } catch (TimeoutException e) {
+            deadlineExceeded.incrementAndGet();
+            throw new Deadline.ExceededException("等待上游响应", deadline.timeoutMillis());
+        } catch (InterruptedException e) {
+            log.info("上游请求被取消，中止进行中的请求");
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+        } finally {
+            for (Attempt<T> attempt : attempts) {
+                if (!attempt.result.isDone() && attempt.request.cancel()) {
+                    abortedCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 按剩余时间生成单次尝试的请求配置，单次尝试不超过配置的推理超时时间
+     */
+    public RequestConfig requestConfig(Deadline deadline) {
+        LLMConfig.HttpClient httpConfig = llmConfig.getHttpClient();
+        long attemptMillis = Math.max(1, Math.min(TimeUnit.SECONDS.toMillis(llmConfig.getTimeout()),
+                deadline.remainingMillis()));
+        long connectMillis = Math.min(TimeUnit.SECONDS.toMillis(httpConfig.getConnectTimeout()), attemptMillis);
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectMillis))
+                .setResponseTimeout(Timeout.ofMilliseconds(attemptMillis))
+                .setConnectionKeepAlive(TimeValue.ofSeconds(httpConfig.getKeepAlive()))
+                .build();
+    }
+
+    private <T> Attempt<T> start(Deadline deadline, Supplier<HttpPost> request, HttpClientResponseHandler<T> handler) {
+        HttpPost post = request.get();
+        post.setConfig(requestConfig(deadline));
+        Attempt<T> attempt = new Attempt<>(post, System.nanoTime(), new CompletableFuture<>());
+        executor.execute(() -> {
+            try {
+                attempt.result.complete(upstreamHttpClient.execute(post, handler));
+            } catch (Throwable e) {
+                attempt.result.completeExceptionally(e);
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * 发起对冲请求，请求结束后释放其许可；创建请求失败时立即释放
+     */
+    private <T> Attempt<T> startHedge(Deadline deadline, Supplier<HttpPost> request,
+                                      HttpClientResponseHandler<T> handler, RateLimiterService.Permit permit) {
+        Attempt<T> attempt;
+        try {
+            attempt = start(deadline, request, handler);
+        } catch (RuntimeException e) {
+            rateLimiterService.releasePermit(permit);
+            throw e;
+        }
+        attempt.result.whenComplete((value, error) -> rateLimiterService.releasePermit(permit));
+        return attempt;
+    }
+
+    /**
+     * 任一尝试成功即完成；全部失败时以最后一个失败原因结束
+     */
+    private static <T> CompletableFuture<Attempt<T>> firstSuccess(List<Attempt<T>> attempts) {
+        CompletableFuture<Attempt<T>> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(attempts.size());
+        for (Attempt<T> attempt : attempts) {
+            attempt.result.whenComplete((value, error) -> {
+                if (error == null) {
+                    winner.complete(attempt);
+                } else if (pending.decrementAndGet() == 0) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        return winner;
+    }
+
+    /**
+     * 对冲前的等待时间（纳秒），未启用或样本不足时返回0
+     */
+    private long hedgeDelayNanos() {
+        LLMConfig.Hedging config = llmConfig.getHedging();
+        if (!config.isEnabled() || latencyTracker.count() < config.getMinSamples()) {
+            return 0;
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(config.getMinDelay()),
+                latencyTracker.percentile(config.getPercentile()));
+    }
+
+    private boolean hedgeAllowed(Deadline deadline) {
+        LLMConfig.Hedging config = llmConfig.getHedging();
+        long minAttemptNanos = (long) (llmConfig.getRequestDeadline().getMinAttemptTime() * TimeUnit.SECONDS.toNanos(1));
+        return deadline.remainingNanos() > minAttemptNanos
+                && hedgeCount.get() + 1 <= config.getMaxRatio() * attemptCount.get();
+    }
+
+    /**
+     * 注册对冲、中止和截止时间超时计数
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("llm.upstream.hedges", hedgeCount, AtomicLong::get)
+                .description("发起的对冲请求数")
+                .register(registry);
+        FunctionCounter.builder("llm.upstream.hedge.wins", hedgeWins, AtomicLong::get)
+                .description("对冲请求先于首次请求返回的次数")
+                .register(registry);
+        FunctionCounter.builder("llm.upstream.hedges.skipped", hedgesSkipped, AtomicLong::get)
+                .description("因没有空闲限流许可而放弃的对冲请求数")
+                .register(registry);
+        FunctionCounter.builder("llm.upstream.aborted", abortedCount, AtomicLong::get)
+                .description("被中止的进行中HTTP请求数")
+                .register(registry);
+        FunctionCounter.builder("llm.upstream.deadline.exceeded", deadlineExceeded, AtomicLong::get)
+                .description("等待上游响应超过截止时间的次数")
+                .register(registry);
+    }
+
+    /**
+     * 获取上游请求统计
+     */
+    public Map<String, Object> getStatus() {
+        return Map.of(
+            "attempts", attemptCount.get(),
+            "hedges", hedgeCount.get(),
+            "hedgeWins", hedgeWins.get(),
+            "hedgesSkipped", hedgesSkipped.get(),
+            "deadlineExceeded", deadlineExceeded.get(),
+            "aborted", abortedCount.get(),
+            "latencySamples", latencyTracker.count(),
+            "p50Ms", TimeUnit.NANOSECONDS.toMillis(latencyTracker.percentile(0.5)),
+            "hedgeDelayMs", TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos())
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private record Attempt<T>(HttpPost request, long startedNanos, CompletableFuture<T> result) {
+    }
+}
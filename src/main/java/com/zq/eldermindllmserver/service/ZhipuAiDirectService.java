@@ -1,25 +1,31 @@
 package com.zq.eldermindllmserver.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.zq.eldermindllmserver.config.LLMConfig;
 import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.pool.PoolStats;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.util.StringUtils;
-import org.springframework.web.client.RestTemplate;
-
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -32,63 +38,170 @@ public class ZhipuAiDirectService {
 
     private final LLMConfig llmConfig;
     private final RateLimiterService rateLimiterService;
-    private final ObjectMapper objectMapper;
-    private final RestTemplate restTemplate;
+    private final PoolingHttpClientConnectionManager upstreamConnectionManager;
+    private final CloseableHttpClient upstreamHttpClient;
+    private final InferenceResultCache resultCache;
+    private final RequestCoalescingService requestCoalescingService;
+    private final ActionMappingService actionMappingService;
+    private final ResultJournalWriter resultJournalWriter;
+    private final PromptTemplateRegistry promptTemplateRegistry;
+    private final UpstreamRequestExecutor upstreamRequestExecutor;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final InferenceMetrics metrics;
+    private final ModelOutputParser modelOutputParser;
+    private final ChatCompletionCodec chatCompletionCodec;
     
     @Value("${spring.ai.zhipuai.api-key}")
     private String apiKey;
     
-    private static final String ZHIPU_API_URL = "https://open.bigmodel.cn/api/paas/v4/chat/completions";
+    /**
+     * 启动时校验配置的提示词模式，未知模式只在此提示一次
+     */
+    @PostConstruct
+    public void validatePromptMode() {
+        String mode = llmConfig.getPromptConfig().getMode();
+        if (!PromptTemplateRegistry.isKnownMode(mode)) {
+            log.warn("未知的prompt模式: {}，推理将使用默认模式", mode);
+        }
+    }
     
     /**
      * 执行视频推理
      */
     public LLMInferenceResult inference(String videoPath, String customPrompt) {
+        return inference(videoPath, customPrompt, null, null);
+    }
+    
+    /**
+     * 执行视频推理
+     *
+     * @param idempotencyKey 客户端幂等键，重试请求复用进行中或刚完成的推理，可为空
+     * @param edgeActionId   边缘端检测到的动作ID，用于确定排队优先级，可为空
+     */
+    public LLMInferenceResult inference(String videoPath, String customPrompt, String idempotencyKey,
+                                        Integer edgeActionId) {
+        return inference(videoPath, customPrompt, idempotencyKey, edgeActionId, null);
+    }
+
+    /**
+     * 在截止时间内执行视频推理
+     *
+     * @param deadline 请求截止时间，为空时使用配置的默认值
+     * @throws RequestCoalescingService.IdempotencyConflictException 幂等键已用于其他视频或提示词
+     */
+    public LLMInferenceResult inference(String videoPath, String customPrompt, String idempotencyKey,
+                                        Integer edgeActionId, Deadline deadline) {
         if (!llmConfig.isEnabled()) {
             return LLMInferenceResult.failure("LLM推理已禁用", videoPath, llmConfig.getMode());
         }
         
         long startTime = System.currentTimeMillis();
+        long metricsStart = metrics.inferenceStarted();
+        InferenceMetrics.Outcome outcome = InferenceMetrics.Outcome.FAILURE;
         
         try {
-            // 获取限流许可
-            if (!rateLimiterService.acquirePermit()) {
-                return LLMInferenceResult.failure("获取推理许可失败：限流", videoPath, llmConfig.getMode());
+            // 验证视频URL
+            String videoUrl = validateVideoUrl(videoPath);
+            if (videoUrl == null) {
+                return LLMInferenceResult.failure("无效的视频URL", videoPath, llmConfig.getMode());
             }
             
-            try {
-                // 验证视频URL
-                String videoUrl = validateVideoUrl(videoPath);
-                if (videoUrl == null) {
-                    return LLMInferenceResult.failure("无效的视频URL", videoPath, llmConfig.getMode());
-                }
-                
-                // 准备提示词
-                String prompt = createPromptWithEdgeDetectionResult(customPrompt);
-                
-                // 执行推理
-                String response = performInference(videoUrl, prompt);
-                
-                // 解析响应
-                Map<String, Object> parsedResult = parseJsonResponse(response);
-                
-                double inferenceTime = (System.currentTimeMillis() - startTime) / 1000.0;
-                
-                LLMInferenceResult result = LLMInferenceResult.success(
-                    parsedResult, response, inferenceTime, videoPath, llmConfig.getMode());
-                
-                // 保存结果
-                if (llmConfig.getResultProcessing().isSaveResults()) {
-                    saveResult(result);
-                }
-                
-                log.info("LLM推理完成，耗时: {}秒", String.format("%.2f", inferenceTime));
-                return result;
-                
-            } finally {
-                rateLimiterService.releasePermit();
+            // 准备提示词
+            PromptTemplateRegistry.CompiledPrompt template = promptTemplateRegistry.get(llmConfig.getPromptConfig().getMode());
+            String prompt = template.render(customPrompt);
+            
+            // 查询结果缓存，命中时无需占用限流许可
+            InferenceResultCache.CacheKey cacheKey = resultCache.keyOf(videoUrl, prompt);
+            LLMInferenceResult cachedResult = resultCache.get(cacheKey);
+            if (cachedResult != null) {
+                log.info("命中推理结果缓存: {}", videoUrl);
+                outcome = InferenceMetrics.Outcome.CACHED;
+                return cachedResult;
+            }
+            
+            // 相同请求并发到达时只调用一次上游
+            RequestPriority priority = actionMappingService.getPriority(edgeActionId);
+            Deadline requestDeadline = deadline != null ? deadline : newDeadline(null);
+            LLMInferenceResult result = requestCoalescingService.execute(cacheKey, idempotencyKey, requestDeadline,
+                () -> invokeUpstream(videoPath, videoUrl, prompt, template.version(), cacheKey, priority, startTime,
+                    requestDeadline));
+            if (result.isSuccess()) {
+                outcome = InferenceMetrics.Outcome.SUCCESS;
             }
+            return result;
             
+        } catch (RequestCoalescingService.IdempotencyConflictException e) {
+            // 交由调用方返回冲突，不作为普通的推理失败
+            throw e;
+        } catch (Deadline.ExceededException e) {
+            log.warn("LLM推理超时: {}", e.getMessage());
+            return LLMInferenceResult.failure("推理超时: " + e.getMessage(), videoPath, llmConfig.getMode());
+        } catch (Exception e) {
+            log.error("LLM推理失败: {}", e.getMessage(), e);
+            return LLMInferenceResult.failure("推理失败: " + e.getMessage(), videoPath, llmConfig.getMode());
+        } finally {
+            metrics.inferenceFinished(metricsStart, outcome);
+        }
+    }
+    
+    /**
+     * 创建请求截止时间
+     *
+     * @param requestedSeconds 客户端要求的截止时间（秒），为空或不大于0时使用配置的默认值，超过上限时截断
+     */
+    public Deadline newDeadline(Double requestedSeconds) {
+        LLMConfig.RequestDeadline config = llmConfig.getRequestDeadline();
+        double seconds = requestedSeconds != null && requestedSeconds > 0
+            ? Math.min(requestedSeconds, config.getMaxTimeout())
+            : config.getDefaultTimeout();
+        return Deadline.after((long) (seconds * 1000), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 调用上游推理并解析结果
+     */
+    private LLMInferenceResult invokeUpstream(String videoPath, String videoUrl, String prompt, String promptVersion,
+                                              InferenceResultCache.CacheKey cacheKey, RequestPriority priority,
+                                              long startTime, Deadline deadline) {
+        try {
+            // 执行推理
+            ChatCompletionCodec.Completion completion = performInference(videoUrl, prompt, priority, deadline);
+            String response = completion.content();
+            
+            // 解析响应
+            deadline.check("解析响应");
+            ModelOutputParser.Parsed parsed = modelOutputParser.parse(response);
+            
+            double inferenceTime = (System.currentTimeMillis() - startTime) / 1000.0;
+            
+            LLMInferenceResult result = LLMInferenceResult.success(
+                parsed.result(), response, inferenceTime, videoPath, llmConfig.getMode());
+            result.setOutput(parsed.output());
+            result.setValidationError(parsed.validationError());
+            applyCompletion(result, completion);
+            result.setModel(cacheKey.model());
+            result.setPromptHash(cacheKey.promptHash());
+            result.setPromptVersion(promptVersion);
+            resultCache.put(cacheKey, result);
+            
+            // 保存结果
+            if (llmConfig.getResultProcessing().isSaveResults()) {
+                saveResult(result);
+            }
+            
+            log.info("LLM推理完成，耗时: {}秒", String.format("%.2f", inferenceTime));
+            return result;
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("LLM推理被中断");
+            return LLMInferenceResult.failure("推理被中断", videoPath, llmConfig.getMode());
+        } catch (RejectedException e) {
+            log.warn("LLM推理被拒绝: {}", e.getMessage());
+            return LLMInferenceResult.failure(e.getMessage(), videoPath, llmConfig.getMode());
+        } catch (Deadline.ExceededException e) {
+            log.warn("LLM推理超时: {}", e.getMessage());
+            return LLMInferenceResult.failure("推理超时: " + e.getMessage(), videoPath, llmConfig.getMode());
         } catch (Exception e) {
             log.error("LLM推理失败: {}", e.getMessage(), e);
             return LLMInferenceResult.failure("推理失败: " + e.getMessage(), videoPath, llmConfig.getMode());
@@ -117,218 +230,439 @@ public class ZhipuAiDirectService {
     
     /**
      * 执行推理 - 直接调用智谱AI HTTP API
+     * <p>
+     * 每次尝试前检查熔断器并按优先级获取限流许可，尝试结束即释放许可，退避等待期间不占用许可。
+     * 只重试网络错误、超时、408、429和5xx；退避采用去相关抖动，并且不短于上游的Retry-After。
+     * 每次尝试只使用截止时间内剩余的时间，剩余时间不足时不再重试。
      */
-    private String performInference(String videoUrl, String prompt) {
-        // 构建请求体，按照智谱AI API文档格式
-        Map<String, Object> requestBody = Map.of(
-            "model", llmConfig.getModel(),
-            "messages", List.of(
-                Map.of(
-                    "role", "user",
-                    "content", List.of(
-                        Map.of(
-                            "type", "video_url",
-                            "video_url", Map.of("url", videoUrl)
-                        ),
-                        Map.of(
-                            "type", "text",
-                            "text", prompt
-                        )
-                    )
-                )
-            ),
-            "temperature", 0.7,
-            "max_tokens", 8192
-        );
-        
-        // 设置请求头
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(apiKey);
-        
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+    private ChatCompletionCodec.Completion performInference(String videoUrl, String prompt, RequestPriority priority,
+                                                            Deadline deadline)
+            throws IOException, InterruptedException {
+        byte[] requestBody = chatCompletionCodec.encodeRequest(videoUrl, prompt, false);
+        if (log.isDebugEnabled()) {
+            log.debug("请求体: {}", new String(requestBody, StandardCharsets.UTF_8));
+        }
+        RateLimiterService.TokenEstimate tokenEstimate = rateLimiterService.estimateTokens(prompt);
+        long minAttemptMillis = (long) (llmConfig.getRequestDeadline().getMinAttemptTime() * 1000);
+        LLMConfig.Retry retryConfig = llmConfig.getRetry();
+        RetryBackoff backoff = new RetryBackoff(retryConfig.getBaseDelay(), retryConfig.getMaxDelay(),
+            () -> ThreadLocalRandom.current().nextDouble());
         
         // 执行推理（带重试）
-        Exception lastException = null;
+        UpstreamException lastException = null;
         for (int attempt = 1; attempt <= llmConfig.getMaxRetries(); attempt++) {
+            UpstreamCircuitBreaker.Permit breakerPermit = circuitBreaker.tryAcquire();
+            if (breakerPermit == null) {
+                throw new RejectedException("上游熔断中，暂停调用");
+            }
+            // 按优先级获取限流许可并预留token，最多等待到截止时间
+            if (!rateLimiterService.acquirePermit(priority, deadline.remainingNanos(), tokenEstimate)) {
+                circuitBreaker.release(breakerPermit);
+                String reason = deadline.isExpired() ? "超过请求截止时间" : "限流";
+                throw new RejectedException("获取推理许可失败：" + reason);
+            }
+            
+            boolean limitedByCaller = limitedByCaller(deadline);
             try {
-                log.info("执行LLM推理，尝试次数: {}/{}", attempt, llmConfig.getMaxRetries());
-                log.debug("请求体: {}", objectMapper.writeValueAsString(requestBody));
-                
-                ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                    ZHIPU_API_URL,
-                    HttpMethod.POST,
-                    entity,
-                    new ParameterizedTypeReference<Map<String, Object>>() {}
-                );
-
-                if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                    Map<String, Object> responseBody = response.getBody();
-
-                    // 提取响应内容
-                    @SuppressWarnings("unchecked")
-                    List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-                    if (choices != null && !choices.isEmpty()) {
-                        Map<String, Object> choice = choices.get(0);
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> message = (Map<String, Object>) choice.get("message");
-                        String content = (String) message.get("content");
-                        
-                        log.info("LLM推理成功");
-                        return content;
-                    } else {
-                        throw new RuntimeException("响应中没有找到choices字段");
-                    }
-                } else {
-                    throw new RuntimeException("HTTP请求失败: " + response.getStatusCode());
-                }
-                
-            } catch (Exception e) {
-                lastException = e;
-                if (attempt < llmConfig.getMaxRetries()) {
-                    log.warn("LLM推理尝试 {}/{} 失败: {}, 重试中...", attempt, llmConfig.getMaxRetries(), e.getMessage());
-                    try {
-                        TimeUnit.SECONDS.sleep(1); // 重试延迟
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("推理被中断", ie);
-                    }
+                log.info("执行LLM推理，尝试次数: {}/{}，剩余时间: {}毫秒",
+                    attempt, llmConfig.getMaxRetries(), deadline.remainingMillis());
+                ChatCompletionCodec.Completion completion = attemptInference(requestBody, tokenEstimate, deadline);
+                reconcileTokens(completion);
+                circuitBreaker.onSuccess();
+                log.info("LLM推理成功");
+                return completion;
+            } catch (Deadline.ExceededException e) {
+                onTimeout(breakerPermit, limitedByCaller);
+                throw e;
+            } catch (InterruptedException e) {
+                circuitBreaker.release(breakerPermit);
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                lastException = UpstreamException.of(e);
+                if (lastException.isRetryable() && deadline.isExpired()) {
+                    // 读取超时发生在截止时间处
+                    onTimeout(breakerPermit, limitedByCaller);
+                } else if (lastException.isRetryable()) {
+                    circuitBreaker.onFailure();
                 } else {
-                    log.error("LLM推理在 {} 次尝试后失败: {}", llmConfig.getMaxRetries(), e.getMessage());
+                    // 上游可达，只是请求本身有问题
+                    circuitBreaker.onSuccess();
                 }
+            } finally {
+                rateLimiterService.releasePermit();
+            }
+            
+            if (!lastException.isRetryable()) {
+                log.error("LLM推理失败且不可重试: {}", lastException.getMessage());
+                throw lastException;
+            }
+            if (attempt == llmConfig.getMaxRetries()) {
+                log.error("LLM推理在 {} 次尝试后失败: {}", llmConfig.getMaxRetries(), lastException.getMessage());
+                break;
             }
+            
+            // 退避等待，此时已释放许可
+            long delay = Math.max(backoff.nextDelayMillis(), lastException.getRetryAfterMillis());
+            if (lastException.getRetryAfterMillis() > retryConfig.getMaxRetryAfter()
+                    || delay + minAttemptMillis > deadline.remainingMillis()) {
+                log.warn("LLM推理尝试 {}/{} 失败: {}, 等待{}毫秒后剩余时间不足，停止重试",
+                    attempt, llmConfig.getMaxRetries(), lastException.getMessage(), delay);
+                break;
+            }
+            log.warn("LLM推理尝试 {}/{} 失败: {}, {}毫秒后重试",
+                attempt, llmConfig.getMaxRetries(), lastException.getMessage(), delay);
+            metrics.recordRetry();
+            TimeUnit.MILLISECONDS.sleep(delay);
         }
         
         throw new RuntimeException("推理失败: " + (lastException != null ? lastException.getMessage() : "未知错误"));
     }
-    
+
     /**
-     * 解析JSON响应
+     * 执行一次上游调用（可能包含对冲请求），返回解码后的响应
      */
-    @SuppressWarnings("unchecked")
-    private Map<String, Object> parseJsonResponse(String response) {
+    private ChatCompletionCodec.Completion attemptInference(byte[] requestBody,
+                                                            RateLimiterService.TokenEstimate tokenEstimate,
+                                                            Deadline deadline)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        String status = InferenceMetrics.STATUS_IO_ERROR;
+        ChatCompletionCodec.Completion completion;
         try {
-            // 尝试直接解析
-            return objectMapper.readValue(response, Map.class);
-        } catch (JsonProcessingException e) {
-            try {
-                // 尝试提取JSON部分
-                int startIdx = response.indexOf('{');
-                int endIdx = response.lastIndexOf('}') + 1;
-                if (startIdx != -1 && endIdx > startIdx) {
-                    String jsonStr = response.substring(startIdx, endIdx);
-                    return objectMapper.readValue(jsonStr, Map.class);
-                }
-            } catch (JsonProcessingException ex) {
-                log.warn("无法解析JSON响应，返回原始文本");
+            completion = upstreamRequestExecutor.execute(deadline, tokenEstimate,
+                () -> newUpstreamRequest(requestBody, MediaType.APPLICATION_JSON_VALUE),
+                response -> {
+                    if (response.getCode() < 200 || response.getCode() >= 300) {
+                        EntityUtils.consume(response.getEntity());
+                        throw UpstreamException.ofStatus(response.getCode(), headerValue(response, HttpHeaders.RETRY_AFTER));
+                    }
+                    return chatCompletionCodec.decodeResponse(response.getEntity().getContent());
+                });
+            status = "200";
+        } catch (UpstreamException e) {
+            if (e.getStatusCode() > 0) {
+                status = String.valueOf(e.getStatusCode());
             }
+            throw e;
+        } catch (Deadline.ExceededException e) {
+            status = InferenceMetrics.STATUS_TIMEOUT;
+            throw e;
+        } catch (InterruptedException e) {
+            status = InferenceMetrics.STATUS_CANCELLED;
+            throw e;
+        } finally {
+            metrics.recordUpstream(status, System.nanoTime() - start);
         }
-        
-        // 如果无法解析为JSON，返回包含原始响应的Map
-        return Map.of("raw_response", response, "parsed", false);
+        if (completion.content() == null) {
+            throw new UpstreamException("响应中没有模型输出，结束原因: " + completion.finishReason(), 200, false, 0, null);
+        }
+        return completion;
     }
-    
+
     /**
-     * 创建默认提示词
+     * 本次尝试可用的时间是否短于配置的推理超时，即超时由调用方较短的截止时间造成
      */
-    private String createDefaultPrompt() {
-        String systemPrompt = llmConfig.getPromptConfig().getSystemPrompt();
-        String userPrompt = llmConfig.getPromptConfig().getUserPrompt();
-
-        // 使用模板替换动作列表
-        if (StringUtils.hasText(systemPrompt)) {
-            String enhancedPrompt = systemPrompt.replace("{ACTION_LIST}", getActionListDescription());
-            return enhancedPrompt + "\n\n" + userPrompt;
+    private boolean limitedByCaller(Deadline deadline) {
+        return deadline.remainingMillis() < TimeUnit.SECONDS.toMillis(llmConfig.getTimeout());
+    }
+
+    /**
+     * 记录一次超时：只有尝试拥有完整的推理超时时间时才计为上游失败，
+     * 受调用方截止时间限制的超时不能说明上游异常，只归还熔断器的放行名额
+     */
+    private void onTimeout(UpstreamCircuitBreaker.Permit breakerPermit, boolean limitedByCaller) {
+        if (limitedByCaller) {
+            circuitBreaker.release(breakerPermit);
+        } else {
+            circuitBreaker.onFailure();
         }
-        return userPrompt;
     }
 
     /**
-     * 获取动作列表描述
+     * 按上游返回的实际用量修正限流器中的token预留，需在释放许可前调用
      */
-    private String getActionListDescription() {
-        String actionList;
-
-        // 紧急情况
-        actionList = "【紧急情况】（最高优先级）：\n" +
-                "1. 摔倒 (falling) - ID:42\n" +
-                "2. 恶心或呕吐 (nausea or vomiting) - ID:47\n" +
-
-                // 健康相关
-                "\n【健康状况】（高优先级）：\n" +
-                "3. 蹒跚/摇摆 (staggering) - ID:41\n" +
-                "4. 打喷嚏/咳嗽 (sneeze/cough) - ID:40\n" +
-                "5. 摸头 (touch head) - ID:43\n" +
-                "6. 摸胸部 (touch chest) - ID:44\n" +
-                "7. 摸背部 (touch back) - ID:45\n" +
-                "8. 摸脖子 (touch neck) - ID:46\n" +
-
-                // 异常行为
-                "\n【异常行为】（中等优先级）：\n" +
-                "9. 打击/拍打 (punching/slapping) - ID:49\n" +
-                "10. 踢他人 (kicking other person) - ID:50\n" +
-                "11. 推他人 (pushing other person) - ID:51\n" +
-                "12. 摸他人口袋 (touch other person's pocket) - ID:56\n" +
-                "13. 掉落物品 (drop) - ID:4\n" +
-
-                // 基本动作
-                "\n【基本动作】（监控重点）：\n" +
-                "14. 坐下 (sitting down) - ID:7\n" +
-                "15. 起立 (standing up) - ID:8\n" +
-                "16. 相向而行 (walking towards each other) - ID:58\n" +
-                "17. 分开行走 (walking apart) - ID:59\n" +
-
-                // 日常活动（常见的）
-                "\n【日常活动】（正常行为）：\n" +
-                "18. 喝水 (drink water) - ID:0\n" +
-                "19. 吃饭/吃零食 (eat meal/snack) - ID:1\n" +
-                "20. 刷牙 (brushing teeth) - ID:2\n" +
-                "21. 阅读 (reading) - ID:10\n" +
-                "22. 写字 (writing) - ID:11\n" +
-                "23. 打电话 (make a phone call) - ID:27\n" +
-                "24. 玩手机/平板 (playing with phone/tablet) - ID:28\n" +
-                "25. 穿脱衣物鞋帽等\n" +
-
-                // 手势和社交
-                "\n【手势和社交】：\n" +
-                "26. 挥手 (hand waving) - ID:22\n" +
-                "27. 鼓掌 (clapping) - ID:9\n" +
-                "28. 握手 (handshaking) - ID:57\n" +
-                "29. 拥抱他人 (hugging other person) - ID:54\n" +
-                "30. 其他手势动作\n" +
-
-                "\n注意：如果检测到的动作不在上述列表中，请在返回结果中使用action_id: -1，并详细描述具体动作。";
-
-        return actionList;
+    private void reconcileTokens(ChatCompletionCodec.Completion completion) {
+        if (completion.usage() != null) {
+            rateLimiterService.reconcileTokens(completion.usage().promptTokens(), completion.usage().completionTokens());
+        }
     }
 
     /**
-     * 拼接边缘检测结果和LLM提示词
+     * 记录上游响应的结束原因和token用量
      */
-    private String createPromptWithEdgeDetectionResult(String edgeDetectionResult) {
-        return edgeDetectionResult + "\n\n" + createDefaultPrompt();
+    private void applyCompletion(LLMInferenceResult result, ChatCompletionCodec.Completion completion) {
+        metrics.recordCompletion(completion.finishReason(), completion.usage());
+        if (completion.isTruncated()) {
+            log.warn("模型输出达到max_tokens被截断，输出token数: {}",
+                completion.usage() != null ? completion.usage().completionTokens() : "未知");
+        }
+        result.setFinishReason(completion.finishReason());
+        if (completion.usage() != null) {
+            result.setPromptTokens(completion.usage().promptTokens());
+            result.setCompletionTokens(completion.usage().completionTokens());
+        }
+        if (llmConfig.getResultProcessing().isIncludeReasoning()) {
+            result.setReasoningContent(completion.reasoningContent());
+        }
+    }
+
+    private static String headerValue(ClassicHttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * 创建上游请求
+     */
+    private HttpPost newUpstreamRequest(byte[] body, String accept) {
+        HttpPost post = new HttpPost(llmConfig.getApiUrl());
+        post.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey);
+        post.setHeader(HttpHeaders.ACCEPT, accept);
+        post.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        return post;
     }
     
     /**
-     * 保存推理结果
+     * 流式视频推理
+     * 逐段转发模型输出，解析出完整JSON对象后立即停止读取上游响应
      */
-    private void saveResult(LLMInferenceResult result) {
+    public LLMInferenceResult streamInference(String videoPath, String customPrompt, Integer edgeActionId,
+                                              StreamListener listener) {
+        if (!llmConfig.isEnabled()) {
+            return LLMInferenceResult.failure("LLM推理已禁用", videoPath, llmConfig.getMode());
+        }
+
+        long startTime = System.currentTimeMillis();
+        long metricsStart = metrics.inferenceStarted();
+        InferenceMetrics.Outcome outcome = InferenceMetrics.Outcome.FAILURE;
+        Deadline deadline = newDeadline(null);
+
         try {
-            String resultsDir = llmConfig.getResultProcessing().getResultsDir();
-            Path dirPath = Paths.get(resultsDir);
-            Files.createDirectories(dirPath);
-            
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS"));
-            String filename = String.format("llm_result_%s.json", timestamp);
-            Path filePath = dirPath.resolve(filename);
-            
-            String jsonContent = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
-            Files.write(filePath, jsonContent.getBytes());
-            
-            log.debug("LLM结果已保存到: {}", filePath);
-            
+            PromptTemplateRegistry.CompiledPrompt template = promptTemplateRegistry.get(llmConfig.getPromptConfig().getMode());
+            String prompt = template.render(customPrompt);
+            String videoUrl = validateVideoUrl(videoPath);
+            if (videoUrl == null) {
+                return LLMInferenceResult.failure("无效的视频URL", videoPath, llmConfig.getMode());
+            }
+            UpstreamCircuitBreaker.Permit breakerPermit = circuitBreaker.tryAcquire();
+            if (breakerPermit == null) {
+                return LLMInferenceResult.failure("上游熔断中，暂停调用", videoPath, llmConfig.getMode());
+            }
+            if (!rateLimiterService.acquirePermit(actionMappingService.getPriority(edgeActionId),
+                    deadline.remainingNanos(), rateLimiterService.estimateTokens(prompt))) {
+                circuitBreaker.release(breakerPermit);
+                String reason = deadline.isExpired() ? "超过请求截止时间" : "限流";
+                return LLMInferenceResult.failure("获取推理许可失败：" + reason, videoPath, llmConfig.getMode());
+            }
+
+            try {
+                ChatCompletionCodec.Completion completion;
+                StreamingJsonScanner scanner = new StreamingJsonScanner();
+                long upstreamStart = System.nanoTime();
+                String status = InferenceMetrics.STATUS_IO_ERROR;
+                boolean limitedByCaller = limitedByCaller(deadline);
+                try {
+                    completion = performStreamingInference(videoUrl, prompt, scanner, listener, deadline);
+                    status = listener.isCancelled() ? InferenceMetrics.STATUS_CANCELLED : "200";
+                    reconcileTokens(completion);
+                    circuitBreaker.onSuccess();
+                } catch (IOException | RuntimeException e) {
+                    if (e instanceof Deadline.ExceededException) {
+                        status = InferenceMetrics.STATUS_TIMEOUT;
+                    } else if (e instanceof UpstreamException upstream && upstream.getStatusCode() > 0) {
+                        status = String.valueOf(upstream.getStatusCode());
+                    }
+                    if (deadline.isExpired() && (e instanceof Deadline.ExceededException
+                            || UpstreamException.of(e).isRetryable())) {
+                        onTimeout(breakerPermit, limitedByCaller);
+                    } else if (e instanceof Deadline.ExceededException || UpstreamException.of(e).isRetryable()) {
+                        circuitBreaker.onFailure();
+                    } else {
+                        circuitBreaker.onSuccess();
+                    }
+                    throw e;
+                } finally {
+                    metrics.recordUpstream(status, System.nanoTime() - upstreamStart);
+                }
+
+                String response = completion.content();
+                ModelOutputParser.Parsed parsed = modelOutputParser.parse(response);
+
+                double inferenceTime = (System.currentTimeMillis() - startTime) / 1000.0;
+
+                LLMInferenceResult result = LLMInferenceResult.success(
+                    parsed.result(), response, inferenceTime, videoPath, llmConfig.getMode());
+                result.setOutput(parsed.output());
+                result.setValidationError(parsed.validationError());
+                applyCompletion(result, completion);
+                InferenceResultCache.CacheKey cacheKey = resultCache.keyOf(videoUrl, prompt);
+                result.setModel(cacheKey.model());
+                result.setPromptHash(cacheKey.promptHash());
+                result.setPromptVersion(template.version());
+
+                // 客户端断开或上游未结束且没有完整的结果对象时，输出可能被截断，不缓存也不保存
+                boolean finished = !listener.isCancelled() && (scanner.isComplete() || completion.finishReason() != null);
+                if (finished) {
+                    resultCache.put(cacheKey, result);
+                    if (llmConfig.getResultProcessing().isSaveResults()) {
+                        saveResult(result);
+                    }
+                } else {
+                    log.info("流式推理未完整结束，结果不缓存也不保存: {}", videoPath);
+                }
+
+                log.info("LLM流式推理完成，耗时: {}秒", String.format("%.2f", inferenceTime));
+                outcome = InferenceMetrics.Outcome.SUCCESS;
+                return result;
+
+            } finally {
+                rateLimiterService.releasePermit();
+            }
+
         } catch (Exception e) {
-            log.error("保存LLM结果失败: {}", e.getMessage(), e);
+            log.error("LLM流式推理失败: {}", e.getMessage(), e);
+            return LLMInferenceResult.failure("推理失败: " + e.getMessage(), videoPath, llmConfig.getMode());
+        } finally {
+            metrics.inferenceFinished(metricsStart, outcome);
+        }
+    }
+
+    /**
+     * 执行流式推理，读取上游SSE响应
+     * <p>
+     * 返回拼接后的输出；提前结束读取时没有结束原因和token用量，调用方可通过scanner判断是否已读到完整的结果对象
+     */
+    private ChatCompletionCodec.Completion performStreamingInference(String videoUrl, String prompt,
+                                                                     StreamingJsonScanner scanner,
+                                                                     StreamListener listener,
+                                                                     Deadline deadline) throws IOException {
+        HttpPost post = newUpstreamRequest(
+            chatCompletionCodec.encodeRequest(videoUrl, prompt, true), MediaType.TEXT_EVENT_STREAM_VALUE);
+        post.setConfig(upstreamRequestExecutor.requestConfig(deadline));
+
+        StringBuilder reasoningContent = llmConfig.getResultProcessing().isIncludeReasoning() ? new StringBuilder() : null;
+        String finishReason = null;
+        ChatCompletionCodec.Usage usage = null;
+        ClassicHttpResponse response = upstreamHttpClient.executeOpen(null, post, null);
+        boolean stoppedEarly = false;
+        try {
+            if (response.getCode() < 200 || response.getCode() >= 300) {
+                throw UpstreamException.ofStatus(response.getCode(), headerValue(response, HttpHeaders.RETRY_AFTER));
+            }
+
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (listener.isCancelled()) {
+                    log.info("客户端已断开，停止流式推理");
+                    stoppedEarly = true;
+                    break;
+                }
+                if (deadline.isExpired()) {
+                    stoppedEarly = true;
+                    throw new Deadline.ExceededException("读取流式响应", deadline.timeoutMillis());
+                }
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+
+                ChatCompletionCodec.Completion chunk = chatCompletionCodec.decodeChunk(data);
+                if (chunk.finishReason() != null) {
+                    finishReason = chunk.finishReason();
+                }
+                if (chunk.usage() != null) {
+                    usage = chunk.usage();
+                }
+                String reasoning = chunk.reasoningContent();
+                if (reasoning != null && !reasoning.isEmpty()) {
+                    listener.onReasoning(reasoning);
+                    if (reasoningContent != null) {
+                        reasoningContent.append(reasoning);
+                    }
+                }
+                String content = chunk.content();
+                if (content == null || content.isEmpty()) {
+                    continue;
+                }
+
+                Integer previousActionId = scanner.getActionId();
+                scanner.append(content);
+                listener.onDelta(content);
+                if (previousActionId == null && scanner.getActionId() != null) {
+                    listener.onActionDetected(scanner.getActionId());
+                }
+                if (scanner.isComplete()) {
+                    log.debug("已解析到完整JSON对象，提前结束读取");
+                    stoppedEarly = true;
+                    break;
+                }
+            }
+        } finally {
+            if (stoppedEarly) {
+                // 中止连接，避免关闭时继续读取剩余的响应
+                post.cancel();
+            }
+            try {
+                response.close();
+            } catch (IOException e) {
+                log.debug("关闭流式响应: {}", e.getMessage());
+            }
+        }
+        return new ChatCompletionCodec.Completion(scanner.getContent(),
+            reasoningContent != null && !reasoningContent.isEmpty() ? reasoningContent.toString() : null,
+            finishReason, usage);
+    }
+    
+    /**
+     * 保存推理结果
+     */
+    private void saveResult(LLMInferenceResult result) {
+        // 交由后台线程批量写入，不阻塞请求线程
+        resultJournalWriter.append(result);
+    }
+    
+    /**
+     * 熔断或未获得限流许可，请求未发往上游
+     */
+    private static class RejectedException extends RuntimeException {
+
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 流式推理回调
+     */
+    public interface StreamListener {
+
+        /**
+         * 收到一段模型输出
+         */
+        void onDelta(String content);
+
+        /**
+         * 收到一段思考过程输出
+         */
+        default void onReasoning(String reasoning) {
+        }
+
+        /**
+         * 输出中首次识别出action_id
+         */
+        default void onActionDetected(int actionId) {
+        }
+
+        /**
+         * 调用方是否已取消（如客户端断开）
+         */
+        default boolean isCancelled() {
+            return false;
         }
     }
     
@@ -336,17 +670,32 @@ public class ZhipuAiDirectService {
      * 获取服务状态
      */
     public Map<String, Object> getStatus() {
-        return Map.of(
-            "enabled", llmConfig.isEnabled(),
-            "mode", llmConfig.getMode(),
-            "model", llmConfig.getModel(),
-            "apiUrl", ZHIPU_API_URL,
-            "rateLimiter", rateLimiterService.getStatus(),
-            "config", Map.of(
-                "timeout", llmConfig.getTimeout(),
-                "maxRetries", llmConfig.getMaxRetries(),
-                "saveResults", llmConfig.getResultProcessing().isSaveResults()
-            )
-        );
+        PoolStats poolStats = upstreamConnectionManager.getTotalStats();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", llmConfig.isEnabled());
+        status.put("mode", llmConfig.getMode());
+        status.put("model", llmConfig.getModel());
+        status.put("apiUrl", llmConfig.getApiUrl());
+        status.put("rateLimiter", rateLimiterService.getStatus());
+        status.put("httpPool", Map.of(
+            "leased", poolStats.getLeased(),
+            "available", poolStats.getAvailable(),
+            "pending", poolStats.getPending(),
+            "max", poolStats.getMax()
+        ));
+        status.put("cache", resultCache.getStatus());
+        status.put("coalescing", requestCoalescingService.getStatus());
+        status.put("journal", resultJournalWriter.getStatus());
+        status.put("prompts", promptTemplateRegistry.getStatus());
+        status.put("upstream", upstreamRequestExecutor.getStatus());
+        status.put("circuitBreaker", circuitBreaker.getStatus());
+        status.put("config", Map.of(
+            "timeout", llmConfig.getTimeout(),
+            "defaultDeadline", llmConfig.getRequestDeadline().getDefaultTimeout(),
+            "hedging", llmConfig.getHedging().isEnabled(),
+            "maxRetries", llmConfig.getMaxRetries(),
+            "saveResults", llmConfig.getResultProcessing().isSaveResults()
+        ));
+        return status;
     }
 }
@@ -0,0 +1,131 @@
+package com.zq.eldermindllmserver.benchmark;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import com.zq.eldermindllmserver.service.ActionMappingService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 动作目录查询基准：数组/BitSet快照对比原先的HashMap&lt;String, ActionInfo&gt;与HashSet&lt;Integer&gt;
+ * <p>
+ * 运行方式见README“性能基准”一节
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionCatalogBenchmark {
+
+    private ActionMappingService service;
+
+    // 原实现的数据结构
+    private Map<String, ActionMappingService.ActionInfo> actionMappings;
+    private Set<Integer> criticalActions;
+    private Set<Integer> emergencyActions;
+    private Set<Integer> healthRelatedActions;
+
+    private int[] ids;
+
+    @Setup
+    public void setup() {
+        service = new ActionMappingService(new LLMConfig());
+        service.init();
+
+        actionMappings = new HashMap<>();
+        for (int id = 0; id < 60; id++) {
+            ActionMappingService.ActionInfo action = service.getActionInfo(id);
+            if (action != null) {
+                actionMappings.put(String.valueOf(id), action);
+            }
+        }
+        criticalActions = new HashSet<>();
+        emergencyActions = new HashSet<>();
+        healthRelatedActions = new HashSet<>();
+        actionMappings.values().forEach(action -> {
+            if (service.isCriticalAction(action.getId())) {
+                criticalActions.add(action.getId());
+            }
+            if (service.isEmergencyAction(action.getId())) {
+                emergencyActions.add(action.getId());
+            }
+            if (service.isHealthRelatedAction(action.getId())) {
+                healthRelatedActions.add(action.getId());
+            }
+        });
+
+        // 模拟后处理路径上的动作ID分布，包含未知动作-1
+        Random random = new Random(42);
+        ids = new int[1024];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(10) == 0 ? -1 : random.nextInt(60);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void lookupMap(Blackhole blackhole) {
+        for (int id : ids) {
+            blackhole.consume(actionMappings.get(String.valueOf(id)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void lookupArray(Blackhole blackhole) {
+        for (int id : ids) {
+            blackhole.consume(service.getActionInfo(id));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void classifyHashSet(Blackhole blackhole) {
+        for (int id : ids) {
+            RequestPriority priority = emergencyActions.contains(id) ? RequestPriority.EMERGENCY
+                    : healthRelatedActions.contains(id) ? RequestPriority.HEALTH
+                    : criticalActions.contains(id) ? RequestPriority.CRITICAL
+                    : RequestPriority.ROUTINE;
+            blackhole.consume(priority);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1024)
+    public void classifyBitSet(Blackhole blackhole) {
+        for (int id : ids) {
+            blackhole.consume(service.getPriority(id));
+        }
+    }
+
+    @Benchmark
+    public List<String> criticalNamesStream() {
+        return criticalActions.stream()
+                .map(id -> {
+                    ActionMappingService.ActionInfo action = actionMappings.get(String.valueOf(id));
+                    return action != null ? action.getChinese() : "未知动作";
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> criticalNamesPrecomputed() {
+        return service.getCriticalActionNames();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ActionCatalogBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.zq.eldermindllmserver.benchmark;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.service.ActionMappingService;
+import com.zq.eldermindllmserver.service.PromptGeneratorService;
+import com.zq.eldermindllmserver.service.PromptTemplateRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 提示词生成基准：每次按动作目录重新生成对比使用已编译模板只拼接边缘检测结果
+ * <p>
+ * 运行方式见README“性能基准”一节
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptGenerationBenchmark {
+
+    private PromptGeneratorService generator;
+    private PromptTemplateRegistry registry;
+
+    @Setup
+    public void setup() {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getPromptConfig().setSystemPrompt("请分析该视频并识别是否发生了以下关键事件：\n\n{ACTION_LIST}\n\n请以JSON格式输出。");
+        ActionMappingService actionMappingService = new ActionMappingService(llmConfig);
+        actionMappingService.init();
+        generator = new PromptGeneratorService(actionMappingService, llmConfig);
+        registry = new PromptTemplateRegistry(generator, actionMappingService);
+    }
+
+    @Benchmark
+    public String generateDefault() {
+        return generator.generateDefaultPrompt();
+    }
+
+    @Benchmark
+    public String generateDetailed() {
+        return generator.generateSystemPrompt();
+    }
+
+    @Benchmark
+    public String renderCompiled() {
+        return registry.get(PromptTemplateRegistry.MODE_DEFAULT).render("边缘端检测结果：摔倒，置信度0.62");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PromptGenerationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
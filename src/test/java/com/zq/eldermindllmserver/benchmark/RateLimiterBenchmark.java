@@ -0,0 +1,107 @@
+package com.zq.eldermindllmserver.benchmark;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import com.zq.eldermindllmserver.service.RateLimitBackend;
+import com.zq.eldermindllmserver.service.RateLimiterService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 限流器许可获取与释放基准：1~64个线程竞争，并发上限小于线程数时包含排队唤醒的开销
+ * <p>
+ * 频率配额后端始终放行，只测量优先级队列、锁和许可计数本身。运行方式见README“性能基准”一节
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    @Param({"4", "64"})
+    public int maxConcurrentRequests;
+
+    private RateLimiterService limiter;
+
+    @Setup
+    public void setup() {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getRateLimiter().setMaxConcurrentRequests(maxConcurrentRequests);
+        limiter = new RateLimiterService(llmConfig, new UnlimitedBackend());
+        limiter.bindTo(new SimpleMeterRegistry());
+    }
+
+    private boolean acquireRelease() throws InterruptedException {
+        boolean acquired = limiter.acquirePermit(RequestPriority.ROUTINE);
+        if (acquired) {
+            limiter.releasePermit();
+        }
+        return acquired;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads01() throws InterruptedException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads04() throws InterruptedException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public boolean threads16() throws InterruptedException {
+        return acquireRelease();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public boolean threads64() throws InterruptedException {
+        return acquireRelease();
+    }
+
+    private static final class UnlimitedBackend implements RateLimitBackend {
+
+        @Override
+        public int tryAcquire(int permits) {
+            return permits;
+        }
+
+        @Override
+        public long nanosUntilCapacity() {
+            return 0;
+        }
+
+        @Override
+        public int minuteCount() {
+            return 0;
+        }
+
+        @Override
+        public int hourCount() {
+            return 0;
+        }
+
+        @Override
+        public String getName() {
+            return "unlimited";
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RateLimiterBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,146 @@
+package com.zq.eldermindllmserver.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.service.ActionMappingService;
+import com.zq.eldermindllmserver.service.ChatCompletionCodec;
+import com.zq.eldermindllmserver.service.InferenceMetrics;
+import com.zq.eldermindllmserver.service.ModelOutputParser;
+import com.zq.eldermindllmserver.service.PromptGeneratorService;
+import com.zq.eldermindllmserver.service.PromptTemplateRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型输出解析与请求体编码基准：纯JSON输出对比思考模型常见的“说明文字+代码块”输出，以及额外生成未类型化Map的开销；
+ * 上游响应信封的流式解码对比构建完整JSON树
+ * <p>
+ * 运行方式见README“性能基准”一节
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    static final String RESULT_JSON = """
+            {
+              "detected_action": {
+                "action_id": 42,
+                "chinese_name": "摔倒",
+                "english_name": "falling",
+                "category": "紧急情况",
+                "priority_level": "最高"
+              },
+              "analysis": {
+                "confidence": 0.95,
+                "description": "检测到人员在客厅摔倒，倒地后约十秒内没有自行起身的动作",
+                "risk_assessment": "紧急",
+                "requires_immediate_attention": true
+              },
+              "recommendations": {
+                "alert_level": "紧急",
+                "suggested_actions": ["立即联系看护人员", "确认是否有外伤", "必要时拨打急救电话"],
+                "monitoring_priority": "最高"
+              }
+            }""";
+
+    /**
+     * 思考过程越长，截取和二次解析复制的内容越多
+     */
+    @Param({"0", "4096"})
+    public int proseLength;
+
+    /**
+     * 是否额外生成未类型化的Map
+     */
+    @Param({"false", "true"})
+    public boolean untypedResult;
+
+    private ModelOutputParser parser;
+    private ChatCompletionCodec codec;
+    private String cleanOutput;
+    private String fencedOutput;
+    private String prompt;
+    private ObjectMapper objectMapper;
+    private byte[] envelope;
+
+    @Setup
+    public void setup() {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getResultProcessing().setUntypedResult(untypedResult);
+        llmConfig.getPromptConfig().setSystemPrompt("请分析该视频并识别是否发生了以下关键事件：\n\n{ACTION_LIST}\n\n请以JSON格式输出。");
+        ActionMappingService actionMappingService = new ActionMappingService(llmConfig);
+        actionMappingService.init();
+        PromptTemplateRegistry registry = new PromptTemplateRegistry(
+                new PromptGeneratorService(actionMappingService, llmConfig), actionMappingService);
+
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        parser = new ModelOutputParser(objectMapper, new InferenceMetrics(new SimpleMeterRegistry()),
+                actionMappingService, llmConfig);
+        codec = new ChatCompletionCodec(llmConfig, objectMapper);
+        prompt = registry.get(PromptTemplateRegistry.MODE_DEFAULT).render("边缘端检测结果：摔倒，置信度0.62");
+
+        String prose = "视频中一位老人从沙发起身后失去平衡。".repeat(proseLength / 18 + 1).substring(0, proseLength);
+        cleanOutput = RESULT_JSON;
+        fencedOutput = prose + "\n以下是分析结果：\n```json\n" + RESULT_JSON + "\n```\n如有需要请进一步确认。";
+        try {
+            envelope = objectMapper.writeValueAsBytes(Map.of(
+                    "id", "bench",
+                    "choices", List.of(Map.of(
+                            "index", 0,
+                            "finish_reason", "stop",
+                            "message", Map.of("role", "assistant", "content", fencedOutput, "reasoning_content", prose))),
+                    "usage", Map.of("prompt_tokens", 1800, "completion_tokens", 600, "total_tokens", 2400)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public ModelOutputParser.Parsed parseClean() {
+        return parser.parse(cleanOutput);
+    }
+
+    @Benchmark
+    public ModelOutputParser.Parsed parseFenced() {
+        return parser.parse(fencedOutput);
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() throws JsonProcessingException {
+        return codec.encodeRequest("https://example.com/videos/clip-0001.mp4", prompt, false);
+    }
+
+    @Benchmark
+    public ChatCompletionCodec.Completion decodeEnvelope() throws IOException {
+        return codec.decodeResponse(new ByteArrayInputStream(envelope));
+    }
+
+    @Benchmark
+    public String decodeEnvelopeTree() throws IOException {
+        JsonNode tree = objectMapper.readTree(new ByteArrayInputStream(envelope));
+        return tree.path("choices").path(0).path("message").path("content").asText();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ResponseParsingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.zq.eldermindllmserver.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.model.InferenceOutput;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推理结果序列化基准：结果日志按NDJSON写入复用的缓冲区，接口响应序列化为独立的字节数组
+ * <p>
+ * 运行方式见README“性能基准”一节
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private LLMInferenceResult result;
+    private ByteArrayOutputStream buffer;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        result = LLMInferenceResult.success(null, ResponseParsingBenchmark.RESULT_JSON, 12.34,
+                "https://example.com/videos/clip-0001.mp4", "api");
+        result.setOutput(objectMapper.readValue(ResponseParsingBenchmark.RESULT_JSON, InferenceOutput.class));
+        result.setModel("glm-4.1v-thinking-flashx");
+        result.setPromptHash("9f2c1e7a");
+        result.setPromptVersion("3a5b7c9d");
+        result.setOriginalEvent(new LLMInferenceResult.OriginalEvent(42, "摔倒", 0.62, 1024L, LocalDateTime.now()));
+        buffer = new ByteArrayOutputStream(64 * 1024);
+    }
+
+    @Benchmark
+    public int writeJournalLine() throws IOException {
+        buffer.reset();
+        objectMapper.writeValue(buffer, result);
+        buffer.write('\n');
+        return buffer.size();
+    }
+
+    @Benchmark
+    public byte[] writeBytes() throws IOException {
+        return objectMapper.writeValueAsBytes(result);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ResultSerializationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,92 @@
+package com.zq.eldermindllmserver.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * 测试动作目录接口的ETag与预压缩响应
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ActionMappingControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testConditionalRequestReturnsNotModified() throws Exception {
+        MvcResult first = mockMvc.perform(get("/api/actions/mappings"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        String body = first.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.contains("critical_actions"));
+
+        mockMvc.perform(get("/api/actions/mappings").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+
+        // 内容不变时重新加载后ETag不变
+        mockMvc.perform(post("/api/actions/reload")).andExpect(status().isOk());
+        mockMvc.perform(get("/api/actions/mappings").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/api/actions/check/critical/42"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.is_emergency").value(true));
+        mockMvc.perform(get("/api/actions/action/9999"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testSystemPromptModeMapping() throws Exception {
+        mockMvc.perform(get("/api/actions/prompt/system"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.mode").value("simple"));
+        for (String mode : new String[] {"default", "detailed", "full", "unknown"}) {
+            mockMvc.perform(get("/api/actions/prompt/system").param("mode", mode))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.mode").value("detailed"));
+        }
+    }
+
+    @Test
+    void testGzipRepresentationHasItsOwnEtag() throws Exception {
+        String plainEtag = mockMvc.perform(get("/api/actions/prompt/detailed"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        MvcResult gzipped = mockMvc.perform(get("/api/actions/prompt/detailed")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+        String gzipEtag = gzipped.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(plainEtag, gzipEtag);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray()))) {
+            assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("\"mode\":\"detailed\""));
+        }
+
+        mockMvc.perform(get("/api/actions/prompt/detailed")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                        .header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isNotModified());
+    }
+}
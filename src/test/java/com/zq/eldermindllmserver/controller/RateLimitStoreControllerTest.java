@@ -0,0 +1,41 @@
+package com.zq.eldermindllmserver.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * 测试共享配额存储的单次预留上限
+ */
+@SpringBootTest(properties = {
+        "llm.inference.rate-limiter.store-enabled=true",
+        "llm.inference.rate-limiter.lease-batch-size=5"
+})
+@AutoConfigureMockMvc
+class RateLimitStoreControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testPermitsAreBoundedByLeaseBatchSize() throws Exception {
+        mockMvc.perform(post("/api/ratelimit/store/acquire")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"permits\": 1000000}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.granted").value(5))
+                .andExpect(jsonPath("$.minute").value(5));
+
+        mockMvc.perform(post("/api/ratelimit/store/acquire")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"permits\": 0}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").exists());
+    }
+}
@@ -0,0 +1,77 @@
+package com.zq.eldermindllmserver.loadtest;
+
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import com.zq.eldermindllmserver.service.ZhipuAiDirectService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试上游地址可配置，以及容量测试工具对桩服务的端到端调用
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class InferenceLoadHarnessTest {
+
+    private static final ZhipuApiStub STUB;
+
+    static {
+        try {
+            STUB = new ZhipuApiStub(new ZhipuApiStub.Options()
+                    .latency(ZhipuApiStub.LatencyDistribution.parse("fixed:20"))
+                    .responseSize(1024));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void upstream(DynamicPropertyRegistry registry) {
+        registry.add("llm.inference.api-url", STUB::url);
+        registry.add("llm.inference.result-processing.save-results", () -> "false");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Autowired
+    private ZhipuAiDirectService zhipuAiDirectService;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void testInferenceAgainstStub() {
+        LLMInferenceResult result = zhipuAiDirectService.inference("https://example.com/stub/clip.mp4", null);
+
+        assertTrue(result.isSuccess(), result.getError());
+        assertEquals(42, result.getOutput().actionId(), "说明文字+代码块形式的输出应解析出识别结果");
+        assertNull(result.getValidationError());
+        assertEquals("stop", result.getFinishReason());
+        assertEquals(1800, result.getPromptTokens());
+        assertEquals(STUB.url(), zhipuAiDirectService.getStatus().get("apiUrl"));
+    }
+
+    @Test
+    void testOpenLoopRun() throws InterruptedException {
+        InferenceLoadTest loadTest = new InferenceLoadTest(
+                "http://127.0.0.1:" + port + "/api/llm/inference", Duration.ofSeconds(30));
+
+        InferenceLoadTest.Report report = loadTest.run(10, 1);
+
+        assertEquals(10, report.count(InferenceLoadTest.Outcome.OK));
+        assertTrue(report.percentile(0.5) >= 20, "延迟应包含上游桩服务的20毫秒");
+        assertTrue(report.throughput() > 0);
+    }
+}
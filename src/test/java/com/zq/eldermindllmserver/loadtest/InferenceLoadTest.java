@@ -0,0 +1,253 @@
+package com.zq.eldermindllmserver.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.ElderMindLlmServerApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 端到端容量测试
+ * <p>
+ * 启动本地桩服务和完整的应用（上游地址指向桩服务），按固定到达率开环地向/api/llm/inference发送请求：
+ * 请求按计划时间发出，不等待前一个请求返回，延迟从计划发出时间算起，避免协同遗漏低估排队时间。
+ * 每个到达率输出吞吐量、延迟分位数和被拒绝/超时/失败的数量，用于确定并发许可和线程池大小。
+ * <p>
+ * 参数：
+ * <ul>
+ *     <li>--load.rates=1,2,5 到达率（请求/秒），依次测试</li>
+ *     <li>--load.duration=30 每个到达率的持续时间（秒）</li>
+ *     <li>--load.timeout=120 客户端等待单个响应的最长时间（秒）</li>
+ *     <li>--stub.latency=lognormal:800:3000 上游延迟分布（见{@link ZhipuApiStub.LatencyDistribution}）</li>
+ *     <li>--stub.error-rate=0.01 上游500比例</li>
+ *     <li>--stub.throttle-rate=0.05 上游429比例</li>
+ *     <li>--stub.retry-after=1 429的Retry-After（秒）</li>
+ *     <li>--stub.response-size=2048 模型输出字符数</li>
+ * </ul>
+ * 其余参数原样传给应用，如--llm.inference.rate-limiter.max-concurrent-requests=8。运行方式见README“容量测试”一节。
+ */
+public class InferenceLoadTest {
+
+    /**
+     * 响应分类
+     */
+    enum Outcome {
+        OK, REJECTED, TIMEOUT, ERROR
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client;
+    private final String endpoint;
+    private final Duration timeout;
+    private final AtomicLong sequence = new AtomicLong();
+
+    InferenceLoadTest(String endpoint, Duration timeout) {
+        this.endpoint = endpoint;
+        this.timeout = timeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newCachedThreadPool(daemonThreads("load-client-")))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--stub.") || arg.startsWith("--load.")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                appArgs.add(arg);
+            }
+        }
+
+        ZhipuApiStub.Options stubOptions = new ZhipuApiStub.Options()
+                .latency(ZhipuApiStub.LatencyDistribution.parse(options.getOrDefault("stub.latency", "lognormal:800:3000")))
+                .errorRate(Double.parseDouble(options.getOrDefault("stub.error-rate", "0.01")))
+                .throttleRate(Double.parseDouble(options.getOrDefault("stub.throttle-rate", "0.05")))
+                .retryAfterSeconds(Integer.parseInt(options.getOrDefault("stub.retry-after", "1")))
+                .responseSize(Integer.parseInt(options.getOrDefault("stub.response-size", "2048")));
+        double[] rates = Arrays.stream(options.getOrDefault("load.rates", "1,2,5").split(","))
+                .mapToDouble(Double::parseDouble).toArray();
+        int duration = Integer.parseInt(options.getOrDefault("load.duration", "30"));
+        int timeoutSeconds = Integer.parseInt(options.getOrDefault("load.timeout", "120"));
+
+        try (ZhipuApiStub stub = new ZhipuApiStub(stubOptions)) {
+            List<String> springArgs = new ArrayList<>(List.of(
+                    "--server.port=0",
+                    "--llm.inference.api-url=" + stub.url(),
+                    "--llm.inference.result-processing.results-dir=target/loadtest-results",
+                    "--llm.inference.result-store.index-on-startup=false",
+                    "--logging.level.com.zq.eldermindllmserver=WARN",
+                    "--logging.level.org.springframework.ai=WARN"));
+            springArgs.addAll(appArgs);
+            ConfigurableApplicationContext context = SpringApplication.run(ElderMindLlmServerApplication.class,
+                    springArgs.toArray(String[]::new));
+            try {
+                String port = context.getEnvironment().getProperty("local.server.port");
+                InferenceLoadTest loadTest = new InferenceLoadTest(
+                        "http://127.0.0.1:" + port + "/api/llm/inference", Duration.ofSeconds(timeoutSeconds));
+                System.out.println("桩服务: " + stubOptions);
+                System.out.println("应用参数: " + appArgs);
+                System.out.printf("%8s %8s %8s %8s %8s %8s %8s %8s %8s %8s %8s %8s %8s%n",
+                        "rate", "sent", "ok", "reject", "timeout", "error", "tput/s",
+                        "p50ms", "p90ms", "p99ms", "maxms", "up429", "upMaxIn");
+                for (double rate : rates) {
+                    stub.resetCounters();
+                    Report report = loadTest.run(rate, duration);
+                    System.out.printf("%8.1f %8d %8d %8d %8d %8d %8.2f %8d %8d %8d %8d %8d %8d%n",
+                            rate, report.sent, report.count(Outcome.OK), report.count(Outcome.REJECTED),
+                            report.count(Outcome.TIMEOUT), report.count(Outcome.ERROR), report.throughput(),
+                            report.percentile(0.5), report.percentile(0.9), report.percentile(0.99),
+                            report.percentile(1.0), stub.throttled(), stub.maxInFlight());
+                }
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * 以固定到达率发送请求，发送结束后等待全部响应
+     */
+    Report run(double rate, int durationSeconds) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        int total = (int) Math.max(1, Math.round(rate * durationSeconds));
+        Report report = new Report();
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger scheduled = new AtomicInteger();
+        long start = System.nanoTime();
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("load-arrivals-"));
+        ScheduledFuture<?> arrivals = scheduler.scheduleAtFixedRate(() -> {
+            int index = scheduled.getAndIncrement();
+            if (index >= total) {
+                return;
+            }
+            send(start + index * intervalNanos, report, done);
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+        done.await(durationSeconds + timeout.toSeconds() + 10, TimeUnit.SECONDS);
+        arrivals.cancel(false);
+        scheduler.shutdownNow();
+        report.sent = Math.min(total, scheduled.get());
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private void send(long intendedNanos, Report report, CountDownLatch done) {
+        // 每个请求使用不同的视频URL，避免命中结果缓存和请求合并
+        String body = "{\"videoUrl\":\"https://example.com/load/clip-" + sequence.incrementAndGet() + ".mp4\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(endpoint))
+                .timeout(timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    long latency = System.nanoTime() - intendedNanos;
+                    report.record(error != null ? Outcome.ERROR : classify(response), latency);
+                    done.countDown();
+                });
+    }
+
+    private Outcome classify(HttpResponse<String> response) {
+        if (response.statusCode() == 200) {
+            return Outcome.OK;
+        }
+        try {
+            JsonNode error = objectMapper.readTree(response.body()).path("error");
+            String message = error.asText("");
+            if (message.startsWith("获取推理许可失败") || message.startsWith("上游熔断")) {
+                return Outcome.REJECTED;
+            }
+            if (message.startsWith("推理超时")) {
+                return Outcome.TIMEOUT;
+            }
+        } catch (Exception e) {
+            // 非JSON响应按失败统计
+        }
+        return Outcome.ERROR;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 单个到达率的统计
+     */
+    static class Report {
+
+        private final Map<Outcome, AtomicInteger> counts = new EnumMap<>(Outcome.class);
+        private final ConcurrentLinkedQueue<Long> okLatencies = new ConcurrentLinkedQueue<>();
+        private int sent;
+        private long elapsedNanos;
+        private long[] sorted;
+
+        Report() {
+            for (Outcome outcome : Outcome.values()) {
+                counts.put(outcome, new AtomicInteger());
+            }
+        }
+
+        void record(Outcome outcome, long latencyNanos) {
+            counts.get(outcome).incrementAndGet();
+            if (outcome == Outcome.OK) {
+                okLatencies.add(latencyNanos);
+            }
+        }
+
+        int count(Outcome outcome) {
+            return counts.get(outcome).get();
+        }
+
+        /**
+         * 成功响应的吞吐量（次/秒）
+         */
+        double throughput() {
+            return count(Outcome.OK) / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * 成功响应的延迟分位数（毫秒）
+         */
+        long percentile(double percentile) {
+            if (sorted == null) {
+                sorted = okLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.min(sorted.length - 1, Math.max(0, index))]);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.zq.eldermindllmserver.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地智谱AI对话补全接口桩服务
+ * <p>
+ * 按配置的延迟分布返回固定的识别结果，并按比例返回500和带Retry-After的429，
+ * 用于在不消耗真实配额的情况下做容量测试。只支持非流式请求。
+ */
+public class ZhipuApiStub implements AutoCloseable {
+
+    static final String RESULT_JSON = """
+            {"detected_action":{"action_id":42,"chinese_name":"摔倒","english_name":"falling","category":"紧急情况","priority_level":"最高"},\
+            "analysis":{"confidence":0.95,"description":"检测到人员摔倒，需要立即关注","risk_assessment":"紧急","requires_immediate_attention":true},\
+            "recommendations":{"alert_level":"紧急","suggested_actions":["立即派遣医护人员","通知紧急联系人"],"monitoring_priority":"最高"}}""";
+
+    private static final String PROSE = "视频中一位老人从沙发起身后失去平衡，随后倒地。";
+
+    private final Options options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] successBody;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public ZhipuApiStub(Options options) throws IOException {
+        this.options = options;
+        this.successBody = objectMapper.writeValueAsBytes(envelope(content(options.responseSize)));
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "zhipu-stub-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * 对话补全接口地址
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/paas/v4/chat/completions";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+            TimeUnit.MILLISECONDS.sleep(options.latency.sampleMillis());
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < options.throttleRate) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                respond(exchange, 429, "{\"error\":{\"code\":\"1302\",\"message\":\"请求频率过高\"}}".getBytes(StandardCharsets.UTF_8));
+            } else if (roll < options.throttleRate + options.errorRate) {
+                failed.incrementAndGet();
+                respond(exchange, 500, "{\"error\":{\"code\":\"500\",\"message\":\"内部错误\"}}".getBytes(StandardCharsets.UTF_8));
+            } else {
+                served.incrementAndGet();
+                respond(exchange, 200, successBody);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 客户端已中止请求
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * 模型输出：内容长度超过识别结果时，在前面加上思考模型常见的说明文字并用代码块包裹JSON
+     */
+    private static String content(int size) {
+        if (size <= RESULT_JSON.length()) {
+            return RESULT_JSON;
+        }
+        int proseLength = size - RESULT_JSON.length();
+        String prose = PROSE.repeat(proseLength / PROSE.length() + 1).substring(0, proseLength);
+        return prose + "\n```json\n" + RESULT_JSON + "\n```";
+    }
+
+    private static Map<String, Object> envelope(String content) {
+        return Map.of(
+            "id", "stub",
+            "model", "stub",
+            "choices", List.of(Map.of(
+                "index", 0,
+                "finish_reason", "stop",
+                "message", Map.of("role", "assistant", "content", content)
+            )),
+            "usage", Map.of(
+                "prompt_tokens", 1800,
+                "completion_tokens", content.length() / 2,
+                "total_tokens", 1800 + content.length() / 2
+            )
+        );
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long served() {
+        return served.get();
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    public long failed() {
+        return failed.get();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * 清零统计，用于按到达率分段统计
+     */
+    public void resetCounters() {
+        requests.set(0);
+        served.set(0);
+        throttled.set(0);
+        failed.set(0);
+        maxInFlight.set(inFlight.get());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * 桩服务配置
+     */
+    public static class Options {
+
+        private LatencyDistribution latency = LatencyDistribution.parse("fixed:100");
+        private double errorRate;
+        private double throttleRate;
+        private int retryAfterSeconds = 1;
+        private int responseSize;
+
+        public Options latency(LatencyDistribution latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        public Options errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Options throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        public Options retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        /**
+         * 模型输出内容的字符数
+         */
+        public Options responseSize(int responseSize) {
+            this.responseSize = responseSize;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latency + ", errorRate=" + errorRate + ", throttleRate=" + throttleRate
+                    + ", retryAfter=" + retryAfterSeconds + "s, responseSize=" + responseSize;
+        }
+    }
+
+    /**
+     * 响应延迟分布
+     * <ul>
+     *     <li>fixed:毫秒</li>
+     *     <li>uniform:最小毫秒:最大毫秒</li>
+     *     <li>lognormal:中位数毫秒:P99毫秒</li>
+     * </ul>
+     */
+    public record LatencyDistribution(String spec, String type, double a, double b) {
+
+        private static final double Z_99 = 2.3263;
+
+        public static LatencyDistribution parse(String spec) {
+            String[] parts = spec.split(":");
+            return switch (parts[0]) {
+                case "fixed" -> new LatencyDistribution(spec, "fixed", Double.parseDouble(parts[1]), 0);
+                case "uniform" -> new LatencyDistribution(spec, "uniform",
+                        Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "lognormal" -> {
+                    double median = Double.parseDouble(parts[1]);
+                    double p99 = Double.parseDouble(parts[2]);
+                    yield new LatencyDistribution(spec, "lognormal", Math.log(median), Math.log(p99 / median) / Z_99);
+                }
+                default -> throw new IllegalArgumentException("未知的延迟分布: " + spec);
+            };
+        }
+
+        long sampleMillis() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return switch (type) {
+                case "uniform" -> (long) (a + random.nextDouble() * (b - a));
+                case "lognormal" -> (long) Math.exp(a + b * random.nextGaussian());
+                default -> (long) a;
+            };
+        }
+
+        @Override
+        public String toString() {
+            return spec;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试动作目录的外部加载与重新加载
+ */
+class ActionMappingServiceTest {
+
+    private static String catalogJson(String riskLevel, String emergencyActions) {
+        return """
+                {
+                  "actions": {
+                    "42": {"english": "falling", "chinese": "摔倒", "category": "紧急情况", "risk_level": "%s", "is_critical": true},
+                    "43": {"english": "touch head", "chinese": "摸头", "category": "健康状况", "risk_level": "中", "is_critical": true}
+                  },
+                  "categories": {},
+                  "critical_actions": [42, 43],
+                  "emergency_actions": [%s],
+                  "health_related_actions": [43]
+                }
+                """.formatted(riskLevel, emergencyActions);
+    }
+
+    private static ActionMappingService service(Path file, boolean watch) {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getActionCatalog().setPath(file.toString());
+        llmConfig.getActionCatalog().setWatch(watch);
+        llmConfig.getActionCatalog().setReloadDelay(50);
+        return new ActionMappingService(llmConfig);
+    }
+
+    @Test
+    void testReloadPublishesNewSnapshotAndKeepsOldOnFailure(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("actions.json");
+        Files.writeString(file, catalogJson("高", "42"));
+        ActionMappingService service = service(file, false);
+        service.init();
+
+        assertEquals(1, service.getVersion());
+        assertEquals("高", service.getActionInfo(42).getRiskLevel());
+        assertEquals(RequestPriority.EMERGENCY, service.getPriority(42));
+
+        Files.writeString(file, catalogJson("紧急", ""));
+        assertEquals(2, service.reload());
+        assertEquals("紧急", service.getActionInfo(42).getRiskLevel());
+        assertEquals(RequestPriority.CRITICAL, service.getPriority(42));
+
+        Files.writeString(file, "{ \"actions\": ");
+        assertThrows(IOException.class, service::reload);
+        assertEquals(2, service.getVersion(), "加载失败时保留当前快照");
+        assertEquals("紧急", service.getActionInfo(42).getRiskLevel());
+        assertNotNull(service.getStatus().get("lastReloadError"));
+    }
+
+    @Test
+    void testFileChangeTriggersReload(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("actions.json");
+        Files.writeString(file, catalogJson("高", "42"));
+        ActionMappingService service = service(file, true);
+        service.init();
+        try {
+            Files.writeString(file, catalogJson("低", "42"));
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (service.getVersion() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(service.getVersion() >= 2, "文件变化后应自动重新加载");
+            assertEquals("低", service.getActionInfo(42).getRiskLevel());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试对话补全响应的流式解码
+ */
+class ChatCompletionCodecTest {
+
+    private final ChatCompletionCodec codec = new ChatCompletionCodec(new LLMConfig(), new ObjectMapper());
+
+    private ChatCompletionCodec.Completion decode(String json) throws IOException {
+        return codec.decodeResponse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testDecodeResponseSkipsUnneededFields() throws IOException {
+        ChatCompletionCodec.Completion completion = decode("""
+                {"id": "1", "created": 1700000000, "web_search": [{"title": "x", "refs": [1, 2]}],
+                 "choices": [
+                   {"index": 0, "message": {"role": "assistant", "tool_calls": [{"id": "t"}],
+                     "reasoning_content": "先看画面", "content": "{\\"a\\": 1}"}, "finish_reason": "length"},
+                   {"index": 1, "message": {"content": "第二个"}, "finish_reason": "stop"}],
+                 "usage": {"prompt_tokens": 1800, "completion_tokens": 8192, "total_tokens": 9992,
+                   "prompt_tokens_details": {"cached_tokens": 0}}}""");
+
+        assertEquals("{\"a\": 1}", completion.content());
+        assertEquals("先看画面", completion.reasoningContent());
+        assertEquals("length", completion.finishReason());
+        assertTrue(completion.isTruncated());
+        assertEquals(new ChatCompletionCodec.Usage(1800, 8192, 9992), completion.usage());
+    }
+
+    @Test
+    void testDecodeResponseWithoutChoicesFails() {
+        UpstreamException e = assertThrows(UpstreamException.class,
+                () -> decode("{\"id\": \"1\", \"choices\": []}"));
+        assertFalse(e.isRetryable());
+        assertThrows(JsonProcessingException.class, () -> decode("[1, 2]"));
+    }
+
+    @Test
+    void testDecodeStreamChunks() throws IOException {
+        ChatCompletionCodec.Completion delta = codec.decodeChunk(
+                "{\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"{\\\"det\"}}]}");
+        assertEquals("{\"det", delta.content());
+        assertNull(delta.finishReason());
+        assertNull(delta.usage());
+
+        ChatCompletionCodec.Completion last = codec.decodeChunk(
+                "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"\"},\"finish_reason\":\"stop\"}],"
+                        + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5}}");
+        assertEquals("stop", last.finishReason());
+        assertEquals(new ChatCompletionCodec.Usage(10, 5, 15), last.usage());
+
+        ChatCompletionCodec.Completion empty = codec.decodeChunk("{\"id\":\"1\"}");
+        assertNull(empty.content());
+    }
+}
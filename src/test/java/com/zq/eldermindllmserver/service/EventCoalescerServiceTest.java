@@ -0,0 +1,148 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.InferenceJob;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试检测事件按来源合并
+ */
+class EventCoalescerServiceTest {
+
+    private static final String CATALOG = """
+            {
+              "actions": {
+                "42": {"english": "falling", "chinese": "摔倒", "category": "紧急情况", "risk_level": "高", "is_critical": true},
+                "43": {"english": "touch head", "chinese": "摸头", "category": "健康状况", "risk_level": "中", "is_critical": true},
+                "44": {"english": "lying on floor", "chinese": "躺在地上", "category": "紧急情况", "risk_level": "高", "is_critical": true}
+              },
+              "categories": {},
+              "critical_actions": [42, 43, 44],
+              "emergency_actions": [42, 44],
+              "health_related_actions": [43]
+            }
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Supplier<LLMInferenceResult.OriginalEvent>> dispatched = new ArrayList<>();
+    private EventCoalescerService service;
+
+    private EventCoalescerService service(LLMConfig llmConfig) throws IOException {
+        Path file = tempDir.resolve("actions.json");
+        Files.writeString(file, CATALOG);
+        llmConfig.getActionCatalog().setPath(file.toString());
+        ActionMappingService actions = new ActionMappingService(llmConfig);
+        actions.init();
+        service = new EventCoalescerService(llmConfig, actions, (videoUrl, customPrompt, actionId, event) -> {
+            dispatched.add(event);
+            return new InferenceJob("job-" + dispatched.size(), videoUrl);
+        }, clock::get);
+        return service;
+    }
+
+    private void advance(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    private EventCoalescerService.Admission submit(String source, int actionId, double confidence) {
+        return service.submit(source, "https://example.com/" + source + ".mp4", null,
+                LLMInferenceResult.OriginalEvent.builder().actionId(actionId).confidence(confidence).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testBurstSharesOneJobAndKeepsBestEvent() throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getEventCoalescing().setWindow(1000);
+        llmConfig.getEventCoalescing().setMaxWindow(5000);
+        service(llmConfig);
+
+        EventCoalescerService.Admission first = submit("cam-1", 42, 0.6);
+        assertFalse(first.joined());
+        for (double confidence : new double[]{0.7, 0.9, 0.8}) {
+            advance(500);
+            EventCoalescerService.Admission next = submit("cam-1", 42, confidence);
+            assertTrue(next.joined());
+            assertSame(first.job(), next.job());
+        }
+        // 同一分类的不同动作也合并，其他分类和其他来源单独推理
+        assertSame(first.job(), submit("cam-1", 44, 0.5).job());
+        assertNotSame(first.job(), submit("cam-1", 43, 0.5).job());
+        assertNotSame(first.job(), submit("cam-2", 42, 0.5).job());
+
+        assertEquals(3, dispatched.size());
+        assertEquals(0.9, dispatched.get(0).get().getConfidence());
+        assertEquals(4L, service.getStatus().get("eventsMerged"));
+
+        // 窗口结束后重新推理
+        advance(1500);
+        assertFalse(submit("cam-1", 42, 0.6).joined());
+        assertEquals(4, dispatched.size());
+    }
+
+    @Test
+    void testWindowIsCappedAndFailedJobsAreNotShared() throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getEventCoalescing().setWindow(1000);
+        llmConfig.getEventCoalescing().setMaxWindow(2000);
+        service(llmConfig);
+
+        InferenceJob job = submit("cam-1", 42, 0.6).job();
+        advance(900);
+        assertSame(job, submit("cam-1", 42, 0.6).job());
+        advance(900);
+        assertSame(job, submit("cam-1", 42, 0.6).job());
+        advance(900);
+        InferenceJob second = submit("cam-1", 42, 0.6).job();
+        assertNotSame(job, second);
+
+        second.cancel();
+        assertNotSame(second, submit("cam-1", 42, 0.6).job());
+    }
+
+    @Test
+    void testSourceStateIsBoundedAndEvicted() throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getEventCoalescing().setWindow(1000);
+        llmConfig.getEventCoalescing().setMaxSources(1);
+        llmConfig.getEventCoalescing().setIdleTimeout(5000);
+        service(llmConfig);
+
+        submit("cam-1", 42, 0.6);
+        InferenceJob overflow = submit("cam-2", 42, 0.6).job();
+        assertNotSame(overflow, submit("cam-2", 42, 0.6).job());
+        assertEquals(1, service.getStatus().get("sources"));
+
+        advance(2000);
+        service.evictIdleSources();
+        assertEquals(1, service.getStatus().get("sources"));
+        advance(5000);
+        service.evictIdleSources();
+        assertEquals(0, service.getStatus().get("sources"));
+        assertEquals(1L, service.getStatus().get("evictedSources"));
+
+        assertFalse(submit("cam-2", 42, 0.6).joined());
+        assertTrue(submit("cam-2", 42, 0.6).joined());
+    }
+}
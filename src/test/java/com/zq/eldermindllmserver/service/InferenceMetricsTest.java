@@ -0,0 +1,71 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试推理链路和限流器的监控指标
+ */
+class InferenceMetricsTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void testInferenceAndUpstreamMeters() {
+        InferenceMetrics metrics = new InferenceMetrics(registry);
+
+        long start = metrics.inferenceStarted();
+        assertEquals(1.0, registry.get("llm.inference.in.flight").gauge().value());
+        metrics.recordUpstream("429", TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.recordRetry();
+        metrics.recordUpstream("200", TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.recordUpstream("200", TimeUnit.MILLISECONDS.toNanos(40));
+        metrics.recordParse(InferenceMetrics.ParseResult.FALLBACK, 1000);
+        metrics.inferenceFinished(start, InferenceMetrics.Outcome.SUCCESS);
+
+        assertEquals(0.0, registry.get("llm.inference.in.flight").gauge().value());
+        assertEquals(1, registry.get("llm.inference").tag("outcome", "SUCCESS").timer().count());
+        assertEquals(0, registry.get("llm.inference").tag("outcome", "FAILURE").timer().count());
+        assertEquals(2, registry.get("llm.upstream.requests").tag("status", "200").timer().count());
+        assertEquals(1, registry.get("llm.upstream.requests").tag("status", "429").timer().count());
+        assertEquals(1.0, registry.get("llm.upstream.retries").counter().count());
+        assertEquals(1, registry.get("llm.response.parse").tag("result", "FALLBACK").timer().count());
+        assertEquals(0, registry.get("llm.response.parse").tag("result", "FAILED").timer().count());
+    }
+
+    @Test
+    void testPermitWaitRecordedByPriorityAndResult() throws InterruptedException {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getRateLimiter().setMaxConcurrentRequests(1);
+        llmConfig.getRateLimiter().setLoadShedding(false);
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        RateLimiterService limiter = new RateLimiterService(llmConfig, clock::get);
+
+        // 绑定前不记录
+        assertTrue(limiter.acquirePermit(RequestPriority.EMERGENCY));
+        limiter.releasePermit();
+
+        limiter.bindTo(registry);
+        assertTrue(limiter.acquirePermit(RequestPriority.EMERGENCY));
+        assertEquals(1.0, registry.get("llm.ratelimiter.in.flight").gauge().value());
+        assertFalse(limiter.acquirePermit(RequestPriority.ROUTINE, 0));
+        limiter.releasePermit();
+
+        assertEquals(1, registry.get("llm.ratelimiter.permit.wait")
+                .tags("priority", "EMERGENCY", "result", "acquired").timer().count());
+        assertEquals(1, registry.get("llm.ratelimiter.permit.wait")
+                .tags("priority", "ROUTINE", "result", "rejected").timer().count());
+        assertEquals(1.0, registry.get("llm.ratelimiter.rejections").tag("reason", "timeout")
+                .functionCounter().count());
+        assertEquals(0.0, registry.get("llm.ratelimiter.in.flight").gauge().value());
+        assertEquals(0.0, registry.get("llm.ratelimiter.waiting").tag("priority", "ROUTINE").gauge().value());
+    }
+}
@@ -0,0 +1,56 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试推理结果缓存只保存可复用的结果
+ */
+class InferenceResultCacheTest {
+
+    private final LLMConfig llmConfig = new LLMConfig();
+    private final InferenceResultCache cache = new InferenceResultCache(llmConfig, new ObjectMapper(), null);
+
+    private static LLMInferenceResult result(String finishReason, String validationError) {
+        LLMInferenceResult result = LLMInferenceResult.success(null, "{}", 1.0, "https://example.com/1.mp4", "api");
+        result.setFinishReason(finishReason);
+        result.setValidationError(validationError);
+        return result;
+    }
+
+    @Test
+    void testTruncatedOrInvalidOutputIsNotCached() {
+        InferenceResultCache.CacheKey key = cache.keyOf("https://example.com/1.mp4", "prompt");
+
+        cache.put(key, result("length", null));
+        assertNull(cache.get(key), "达到max_tokens被截断的结果不缓存");
+        cache.put(key, result("stop", "action_id不在动作目录中: 999"));
+        assertNull(cache.get(key), "未通过校验的结果不缓存");
+        cache.put(key, LLMInferenceResult.failure("推理失败", "https://example.com/1.mp4", "api"));
+        assertNull(cache.get(key), "失败结果不缓存");
+
+        cache.put(key, result("stop", null));
+        LLMInferenceResult cached = cache.get(key);
+        assertNotNull(cached);
+        assertTrue(cached.getCached());
+    }
+
+    @Test
+    void testWarmUpSkipsInvalidResults() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(10);
+        LLMInferenceResult invalid = result("stop", "模型输出缺少detected_action.action_id");
+        invalid.setModel(llmConfig.getModel());
+        invalid.setPromptHash(InferenceResultCache.hashPrompt("prompt"));
+        invalid.setTimestamp(LocalDateTime.now());
+
+        assertFalse(cache.warm(invalid, cutoff));
+        invalid.setValidationError(null);
+        assertTrue(cache.warm(invalid, cutoff));
+    }
+}
@@ -0,0 +1,34 @@
+package com.zq.eldermindllmserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试延迟分位数的快照复用
+ */
+class LatencyTrackerTest {
+
+    @Test
+    void testDifferentPercentilesShareOneSnapshot() {
+        LatencyTracker tracker = new LatencyTracker(160);
+        assertEquals(0, tracker.percentile(0.95), "没有样本时返回0");
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            assertEquals(95, tracker.percentile(0.95));
+            assertEquals(50, tracker.percentile(0.5));
+        }
+
+        // 新增样本不足重算间隔（容量/16=10）时沿用已排序的快照
+        for (int i = 0; i < 9; i++) {
+            tracker.record(1000);
+        }
+        assertEquals(100, tracker.percentile(1.0));
+        tracker.record(1000);
+        assertEquals(1000, tracker.percentile(1.0), "达到重算间隔后重新排序");
+        assertEquals(110, tracker.count());
+    }
+}
@@ -0,0 +1,135 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试模型输出的单遍提取、类型绑定和动作目录校验
+ */
+class ModelOutputParserTest {
+
+    private static final String JSON = """
+            {"detected_action": {"action_id": 42, "chinese_name": "摔倒", "category": "紧急情况"},
+             "analysis": {"confidence": 0.93, "description": "老人在客厅摔倒，内容含有{大括号}", "requires_immediate_attention": true},
+             "recommendations": {"alert_level": "紧急", "suggested_actions": "通知紧急联系人", "extra": 1}}""";
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private LLMConfig llmConfig;
+    private ModelOutputParser parser;
+
+    @BeforeEach
+    void setUp() {
+        llmConfig = new LLMConfig();
+        ActionMappingService actionMappingService = new ActionMappingService(llmConfig);
+        actionMappingService.init();
+        parser = new ModelOutputParser(new ObjectMapper(), new InferenceMetrics(registry), actionMappingService, llmConfig);
+    }
+
+    private long parseCount(InferenceMetrics.ParseResult result) {
+        return registry.get("llm.response.parse").tag("result", result.name()).timer().count();
+    }
+
+    @Test
+    void testCleanOutputBindsTypedResult() {
+        ModelOutputParser.Parsed parsed = parser.parse(JSON);
+
+        assertEquals(42, parsed.output().actionId());
+        assertEquals("摔倒", parsed.output().detectedAction().chineseName());
+        assertEquals(0.93, parsed.output().analysis().confidence());
+        assertTrue(parsed.output().analysis().requiresImmediateAttention());
+        assertEquals(List.of("通知紧急联系人"), parsed.output().recommendations().suggestedActions());
+        assertNull(parsed.validationError());
+        assertNull(parsed.result(), "默认不生成未类型化的结果");
+        assertEquals(1, parseCount(InferenceMetrics.ParseResult.DIRECT));
+    }
+
+    @Test
+    void testProseAndCodeFenceAroundJson() {
+        String output = "根据视频内容，{ACTION_LIST}中的摔倒最符合。\n```json\n" + JSON + "\n```\n以上为分析结果 {完}";
+
+        ModelOutputParser.Parsed parsed = parser.parse(output);
+
+        assertEquals(42, parsed.output().actionId(), "跳过说明文字中不是JSON的大括号");
+        assertNull(parsed.validationError());
+        assertEquals(1, parseCount(InferenceMetrics.ParseResult.FALLBACK));
+    }
+
+    @Test
+    void testSimpleModeFlatOutputMapsToDetectedAction() {
+        ModelOutputParser.Parsed parsed = parser.parse(
+                "{\"action_id\": 42, \"action_name\": \"摔倒\", \"confidence\": 0.95, \"description\": \"检测到人员摔倒\"}");
+
+        assertEquals(42, parsed.output().actionId());
+        assertEquals("摔倒", parsed.output().detectedAction().chineseName());
+        assertEquals(0.95, parsed.output().analysis().confidence());
+        assertEquals("检测到人员摔倒", parsed.output().analysis().description());
+        assertNull(parsed.validationError());
+        assertEquals(1, parseCount(InferenceMetrics.ParseResult.DIRECT));
+    }
+
+    @Test
+    void testDetailedModeFieldsAreBound() {
+        ModelOutputParser.Parsed parsed = parser.parse("""
+                {"detected_action": {"action_id": 42, "risk_level": "紧急"},
+                 "analysis": {"confidence": 0.9, "is_critical": true, "is_emergency": true}}""");
+
+        assertEquals("紧急", parsed.output().detectedAction().riskLevel());
+        assertTrue(parsed.output().analysis().critical());
+        assertTrue(parsed.output().analysis().emergency());
+    }
+
+    @Test
+    void testObjectWithoutActionIsSkipped() {
+        ModelOutputParser.Parsed parsed = parser.parse("示例格式：{\"note\": \"说明\"}\n结果：" + JSON);
+        assertEquals(42, parsed.output().actionId(), "跳过说明文字中没有识别结果的对象");
+
+        parsed = parser.parse("{\"analysis\": {\"confidence\": 0.5}}");
+        assertNull(parsed.output());
+        assertEquals(Map.of("confidence", 0.5), parsed.result().get("analysis"), "没有识别结果时保留未类型化的结果");
+        assertEquals("模型输出缺少detected_action.action_id", parsed.validationError());
+    }
+
+    @Test
+    void testValidationAgainstActionCatalog() {
+        assertEquals("action_id不在动作目录中: 999",
+                parser.parse("{\"detected_action\": {\"action_id\": 999}}").validationError());
+        assertNull(parser.parse("{\"detected_action\": {\"action_id\": -1, \"chinese_name\": \"浇花\"}}").validationError(),
+                "-1表示不在目录中的动作");
+        assertNotNull(parser.parse("{\"analysis\": {\"confidence\": 0.5}}").validationError(), "缺少action_id");
+        assertNotNull(parser.parse("{\"detected_action\": {\"action_id\": 42}, \"analysis\": {\"confidence\": 1.5}}")
+                .validationError(), "confidence超出范围");
+    }
+
+    @Test
+    void testMismatchedStructureKeepsUntypedResult() {
+        ModelOutputParser.Parsed parsed = parser.parse("{\"detected_action\": [42], \"analysis\": {}}");
+
+        assertNull(parsed.output());
+        assertEquals(List.of(42), parsed.result().get("detected_action"));
+        assertNotNull(parsed.validationError());
+        assertEquals(1, parseCount(InferenceMetrics.ParseResult.UNTYPED));
+    }
+
+    @Test
+    void testUnparseableOutputAndUntypedOptIn() {
+        ModelOutputParser.Parsed parsed = parser.parse("视频中没有检测到任何人");
+        assertNull(parsed.output());
+        assertNull(parsed.result());
+        assertNotNull(parsed.validationError());
+        assertEquals(1, parseCount(InferenceMetrics.ParseResult.FAILED));
+
+        llmConfig.getResultProcessing().setUntypedResult(true);
+        assertEquals(Map.of("raw_response", "无法解析", "parsed", false), parser.parse("无法解析").result());
+        Map<String, Object> result = parser.parse("说明\n" + JSON).result();
+        assertEquals(Map.of("action_id", 42, "chinese_name", "摔倒", "category", "紧急情况"), result.get("detected_action"));
+    }
+}
@@ -19,6 +19,12 @@ class PromptTemplateTest {
     @Autowired
     private LLMConfig llmConfig;
     
+    @Autowired
+    private PromptTemplateRegistry promptTemplateRegistry;
+    
+    @Autowired
+    private ActionMappingService actionMappingService;
+    
     @Test
     void testPromptTemplate() {
         // 获取配置的system-prompt模板
@@ -41,4 +47,27 @@ class PromptTemplateTest {
         assertNotNull(llmConfig.getPromptConfig().getSystemPrompt());
         assertNotNull(llmConfig.getPromptConfig().getUserPrompt());
     }
+    
+    @Test
+    void testCompiledPromptIsCachedAndFollowsCatalog() throws Exception {
+        PromptTemplateRegistry.CompiledPrompt prompt = promptTemplateRegistry.get(PromptTemplateRegistry.MODE_DEFAULT);
+        
+        // 动作列表来自动作目录，覆盖全部动作
+        assertFalse(prompt.text().contains("{ACTION_LIST}"));
+        assertTrue(prompt.text().contains("蹒跚/摇摆 (staggering) - ID:41"));
+        assertTrue(prompt.text().contains("- ID:59"));
+        assertSame(prompt, promptTemplateRegistry.get(null), "重复获取应返回同一编译结果");
+        
+        // 只拼接边缘检测结果
+        assertEquals(prompt.text(), prompt.render(null));
+        assertEquals("边缘检测: 摔倒\n\n" + prompt.text(), prompt.render("边缘检测: 摔倒"));
+        
+        // 动作目录重新加载后重新编译，内容不变时哈希不变
+        actionMappingService.reload();
+        PromptTemplateRegistry.CompiledPrompt recompiled = promptTemplateRegistry.get(PromptTemplateRegistry.MODE_DEFAULT);
+        assertNotSame(prompt, recompiled);
+        assertNotEquals(prompt.version(), recompiled.version());
+        assertEquals(prompt.version().substring(prompt.version().indexOf('-')),
+                recompiled.version().substring(recompiled.version().indexOf('-')));
+    }
 }
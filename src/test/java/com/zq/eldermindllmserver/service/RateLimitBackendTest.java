@@ -0,0 +1,190 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试共享频率配额后端
+ */
+class RateLimitBackendTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static LLMConfig config(int perMinute, int perHour) {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getRateLimiter().setMaxRequestsPerMinute(perMinute);
+        llmConfig.getRateLimiter().setMaxRequestsPerHour(perHour);
+        return llmConfig;
+    }
+
+    @Test
+    void testMappedFileIsSharedAcrossInstancesAndSurvivesRestart(@TempDir Path dir) {
+        AtomicLong millis = new AtomicLong(TimeUnit.DAYS.toMillis(20_000));
+        LLMConfig.RateLimiter limits = config(5, 8).getRateLimiter();
+        Path file = dir.resolve("ratelimit.dat");
+
+        try (MappedFileRateLimitBackend first = new MappedFileRateLimitBackend(limits, file, millis::get);
+             MappedFileRateLimitBackend second = new MappedFileRateLimitBackend(limits, file, millis::get)) {
+            assertEquals(3, first.tryAcquire(3));
+            assertEquals(2, second.tryAcquire(5), "两个实例共享同一分钟配额");
+            assertEquals(0, first.tryAcquire(1));
+            assertTrue(first.nanosUntilCapacity() > 0);
+
+            millis.addAndGet(TimeUnit.SECONDS.toMillis(61));
+            assertEquals(3, second.tryAcquire(5), "分钟窗口滑出后只剩小时配额");
+        }
+
+        try (MappedFileRateLimitBackend restarted = new MappedFileRateLimitBackend(limits, file, millis::get)) {
+            assertEquals(8, restarted.hourCount(), "重启后小时窗口不丢失");
+            assertEquals(0, restarted.tryAcquire(1));
+        }
+    }
+
+    @Test
+    void testRemoteBackendsShareQuotaThroughStandInStore() throws IOException {
+        InMemoryRateLimitBackend store = new InMemoryRateLimitBackend(config(10, 100).getRateLimiter(), System::nanoTime);
+        AtomicInteger storeCalls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/store/acquire", exchange -> {
+            storeCalls.incrementAndGet();
+            Map<?, ?> body = objectMapper.readValue(exchange.getRequestBody(), Map.class);
+            int granted = store.tryAcquire(((Number) body.get("permits")).intValue());
+            respond(exchange, Map.of("granted", granted,
+                    "retryAfterNanos", granted == 0 ? store.nanosUntilCapacity() : 0));
+        });
+        server.createContext("/store/status", exchange ->
+                respond(exchange, Map.of("minute", store.minuteCount(), "hour", store.hourCount())));
+        server.start();
+
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/store";
+            LLMConfig llmConfig = config(10, 100);
+            llmConfig.getRateLimiter().setLeaseBatchSize(4);
+            llmConfig.getRateLimiter().setLeaseTtl(TimeUnit.MINUTES.toMillis(1));
+
+            RateLimiterService instanceA = new RateLimiterService(llmConfig,
+                    new RemoteRateLimitBackend(url, 1000, new InMemoryRateLimitBackend(llmConfig.getRateLimiter(), System::nanoTime)),
+                    System::nanoTime);
+            RateLimiterService instanceB = new RateLimiterService(llmConfig,
+                    new RemoteRateLimitBackend(url, 1000, new InMemoryRateLimitBackend(llmConfig.getRateLimiter(), System::nanoTime)),
+                    System::nanoTime);
+
+            int granted = 0;
+            for (int i = 0; i < 20; i++) {
+                if (instanceA.tryReserve()) {
+                    granted++;
+                }
+                if (instanceB.tryReserve()) {
+                    granted++;
+                }
+            }
+
+            assertEquals(10, granted, "两个实例合计不应超过共享配额");
+            assertEquals(10, store.minuteCount());
+            assertTrue(storeCalls.get() < 20, "批量预留应减少对存储的调用: " + storeCalls.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testRemoteBackendFallsBackToLocalLimitWhenStoreIsDown() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        int port = server.getAddress().getPort();
+        server.stop(0);
+
+        LLMConfig.RateLimiter limits = config(2, 100).getRateLimiter();
+        RemoteRateLimitBackend backend = new RemoteRateLimitBackend("http://127.0.0.1:" + port, 200,
+                new InMemoryRateLimitBackend(limits, System::nanoTime));
+
+        assertEquals(2, backend.tryAcquire(3));
+        assertEquals(0, backend.tryAcquire(1));
+        assertEquals(2, backend.getFallbackCount());
+    }
+
+    @Test
+    void testInvalidStoreResponseFallsBackAndSkipsStoreDuringRetryInterval() throws IOException {
+        AtomicInteger storeCalls = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/store/acquire", exchange -> {
+            storeCalls.incrementAndGet();
+            respond(exchange, Map.of("error", "busy"));
+        });
+        server.start();
+
+        try {
+            LLMConfig.RateLimiter limits = config(5, 100).getRateLimiter();
+            RemoteRateLimitBackend backend = new RemoteRateLimitBackend(
+                    "http://127.0.0.1:" + server.getAddress().getPort() + "/store", 1000,
+                    TimeUnit.MINUTES.toMillis(1), new InMemoryRateLimitBackend(limits, System::nanoTime));
+
+            assertEquals(1, backend.tryAcquire(1), "无效响应时退回本地限流");
+            assertEquals(1, backend.tryAcquire(1));
+            assertEquals(1, storeCalls.get(), "重试间隔内不再访问存储");
+            assertEquals(2, backend.getFallbackCount());
+            assertEquals(2, backend.minuteCount(), "存储不可用时显示本地计数");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testBackendCallDoesNotHoldLimiterLock() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        LLMConfig llmConfig = config(10, 100);
+        RateLimitBackend slowBackend = new InMemoryRateLimitBackend(llmConfig.getRateLimiter(), System::nanoTime) {
+            @Override
+            public int tryAcquire(int permits) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.tryAcquire(permits);
+            }
+        };
+        RateLimiterService limiter = new RateLimiterService(llmConfig, slowBackend, System::nanoTime);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> acquired = pool.submit(() -> limiter.acquirePermit());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            // 后端调用进行中，状态查询不应被阻塞
+            assertTimeoutPreemptively(Duration.ofSeconds(1), () -> limiter.getStatus());
+            release.countDown();
+            assertTrue(acquired.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private void respond(HttpExchange exchange, Map<String, Object> body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
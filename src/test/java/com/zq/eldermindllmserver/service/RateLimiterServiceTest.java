@@ -0,0 +1,270 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.RequestPriority;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试限流器在虚拟时钟和并发竞争下的限额
+ */
+class RateLimiterServiceTest {
+
+    private static LLMConfig config(int perMinute, int perHour, int concurrent) {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getRateLimiter().setMaxRequestsPerMinute(perMinute);
+        llmConfig.getRateLimiter().setMaxRequestsPerHour(perHour);
+        llmConfig.getRateLimiter().setMaxConcurrentRequests(concurrent);
+        return llmConfig;
+    }
+
+    @Test
+    void testVirtualClockEnforcesMinuteAndHourWindows() {
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        RateLimiterService limiter = new RateLimiterService(config(5, 8, 3), clock::get);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryReserve(), "分钟窗口内前5次应成功");
+        }
+        assertFalse(limiter.tryReserve(), "第6次应被分钟限制拒绝");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertFalse(limiter.tryReserve(), "30秒后分钟窗口仍未滑出");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryReserve(), "分钟窗口滑出后应恢复配额");
+        }
+        assertFalse(limiter.tryReserve(), "小时配额已用完");
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> perMinute = (Map<String, Object>)
+                ((Map<String, Object>) limiter.getStatus().get("rateLimits")).get("perMinute");
+        assertEquals(3, perMinute.get("current"), "被小时限制拒绝的预留应回滚");
+
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1) + TimeUnit.SECONDS.toNanos(1));
+        assertTrue(limiter.tryReserve(), "小时窗口滑出后应恢复配额");
+    }
+
+    @Test
+    void testConcurrentReservationsNeverExceedWindowLimit() throws Exception {
+        int limit = 200;
+        int threads = 32;
+        AtomicLong clock = new AtomicLong();
+        SlidingWindowCounter counter = new SlidingWindowCounter(limit, TimeUnit.MINUTES.toNanos(1), 60, clock::get);
+
+        // 每个阶段冻结时钟让所有线程争抢，阶段之间推进7秒
+        int phases = 20;
+        long step = TimeUnit.SECONDS.toNanos(7);
+        List<Integer> granted = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int phase = 0; phase < phases; phase++) {
+                AtomicInteger success = new AtomicInteger();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 100; i++) {
+                            if (counter.tryAcquire() >= 0) {
+                                success.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+                granted.add(success.get());
+                clock.addAndGet(step);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(limit, granted.get(0), "首个阶段应恰好放行上限数量");
+        for (int i = 0; i < phases; i++) {
+            int inWindow = 0;
+            for (int j = i; j >= 0 && (i - j) * step < TimeUnit.MINUTES.toNanos(1); j--) {
+                inWindow += granted.get(j);
+            }
+            assertTrue(inWindow <= limit, "任意60秒窗口内放行数不应超过上限: " + inWindow);
+        }
+        assertTrue(granted.stream().skip(9).anyMatch(n -> n > 0), "窗口滑出后应继续放行");
+    }
+
+    @Test
+    void testConcurrentPermitsRespectMaxConcurrency() throws Exception {
+        RateLimiterService limiter = new RateLimiterService(config(10_000, 100_000, 3));
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger acquired = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        assertTrue(limiter.acquirePermit());
+                        try {
+                            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                            acquired.incrementAndGet();
+                            Thread.onSpinWait();
+                        } finally {
+                            active.decrementAndGet();
+                            limiter.releasePermit();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(800, acquired.get());
+        assertTrue(maxActive.get() <= 3, "并发数不应超过上限: " + maxActive.get());
+    }
+
+    @Test
+    void testEmergencyWaiterIsServedBeforeRoutine() throws Exception {
+        RateLimiterService limiter = new RateLimiterService(config(10_000, 100_000, 1));
+        assertTrue(limiter.acquirePermit());
+
+        List<RequestPriority> order = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> routine = pool.submit(() -> acquireAndRecord(limiter, RequestPriority.ROUTINE, order));
+            awaitWaiting(limiter, 1);
+            Future<?> emergency = pool.submit(() -> acquireAndRecord(limiter, RequestPriority.EMERGENCY, order));
+            awaitWaiting(limiter, 2);
+
+            limiter.releasePermit();
+            routine.get(10, TimeUnit.SECONDS);
+            emergency.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(List.of(RequestPriority.EMERGENCY, RequestPriority.ROUTINE), order);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testTokenBudgetReservesEstimateAndReconcilesActualUsage() throws InterruptedException {
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        LLMConfig llmConfig = config(10_000, 100_000, 3);
+        llmConfig.getRateLimiter().setMaxTokensPerMinute(1000);
+        llmConfig.getRateLimiter().setCharsPerToken(1.0);
+        llmConfig.getRateLimiter().setMediaTokens(100);
+        llmConfig.getRateLimiter().setCompletionTokens(200);
+        RateLimiterService limiter = new RateLimiterService(llmConfig, clock::get);
+        String prompt = "x".repeat(100);
+
+        RateLimiterService.TokenEstimate estimate = limiter.estimateTokens(prompt);
+        assertEquals(new RateLimiterService.TokenEstimate(200, 200), estimate);
+
+        // 未修正的预留按估算值保留
+        assertTrue(limiter.acquirePermit(RequestPriority.ROUTINE, 0, estimate));
+        limiter.releasePermit();
+        // 按实际用量修正，并更新后续估算
+        assertTrue(limiter.acquirePermit(RequestPriority.ROUTINE, 0, estimate));
+        limiter.reconcileTokens(150, 50);
+        limiter.releasePermit();
+
+        Map<String, Object> tokens = (Map<String, Object>)
+                ((Map<String, Object>) limiter.getStatus().get("rateLimits")).get("tokensPerMinute");
+        assertEquals(600L, tokens.get("current"));
+        assertEquals(0L, tokens.get("pending"));
+        assertEquals(400L, tokens.get("remaining"));
+
+        RateLimiterService.TokenEstimate learned = limiter.estimateTokens(prompt);
+        assertEquals(new RateLimiterService.TokenEstimate(190, 170), learned);
+        assertTrue(limiter.acquirePermit(RequestPriority.ROUTINE, 0, learned));
+        limiter.releasePermit();
+        assertFalse(limiter.acquirePermit(RequestPriority.ROUTINE, 0, learned), "超出每分钟token预算应被拒绝");
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        assertTrue(limiter.acquirePermit(RequestPriority.ROUTINE, 0, learned), "窗口滑出后应恢复token预算");
+        limiter.releasePermit();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testTryAcquirePermitCountsConcurrencyQuotaAndTokens() throws InterruptedException {
+        AtomicLong clock = new AtomicLong(1_000_000L);
+        LLMConfig llmConfig = config(2, 100, 2);
+        llmConfig.getRateLimiter().setMaxTokensPerMinute(1000);
+        RateLimiterService limiter = new RateLimiterService(llmConfig, clock::get);
+        RateLimiterService.TokenEstimate estimate = new RateLimiterService.TokenEstimate(300, 100);
+
+        assertTrue(limiter.acquirePermit(RequestPriority.ROUTINE, 0, estimate));
+        RateLimiterService.Permit permit = limiter.tryAcquirePermit(estimate);
+        assertNotNull(permit);
+        assertNull(limiter.tryAcquirePermit(estimate), "并发已满时不应获得许可");
+
+        Map<String, Object> rateLimits = (Map<String, Object>) limiter.getStatus().get("rateLimits");
+        assertEquals(2, ((Map<String, Object>) rateLimits.get("perMinute")).get("current"));
+        assertEquals(800L, ((Map<String, Object>) rateLimits.get("tokensPerMinute")).get("pending"));
+
+        limiter.releasePermit(permit);
+        limiter.releasePermit();
+        assertNull(limiter.tryAcquirePermit(estimate), "分钟配额用完时不应获得许可");
+        Map<String, Object> concurrent = (Map<String, Object>) limiter.getStatus().get("concurrent");
+        assertEquals(0, concurrent.get("current"));
+    }
+
+    @Test
+    void testTokenBudgetAdmitsOversizedRequestOnlyIntoEmptyWindow() {
+        AtomicLong clock = new AtomicLong();
+        TokenBudget budget = new TokenBudget(1000, clock::get);
+
+        assertEquals(0, budget.nanosUntilAvailable(5000), "窗口为空时超出预算的单个请求应放行");
+        budget.reserve(300);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        long epoch = budget.reserve(600);
+
+        long wait = budget.nanosUntilAvailable(400);
+        assertEquals(TimeUnit.SECONDS.toNanos(50), wait, "应等待到第一笔预留滑出窗口");
+        budget.adjust(epoch, -300);
+        assertEquals(0, budget.nanosUntilAvailable(400));
+        assertEquals(600, budget.used());
+    }
+
+    private static Void acquireAndRecord(RateLimiterService limiter, RequestPriority priority,
+                                         List<RequestPriority> order) throws InterruptedException {
+        assertTrue(limiter.acquirePermit(priority));
+        order.add(priority);
+        limiter.releasePermit();
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void awaitWaiting(RateLimiterService limiter, int expected) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> queue = (Map<String, Object>) limiter.getStatus().get("queue");
+            Map<RequestPriority, Integer> waiting = (Map<RequestPriority, Integer>) queue.get("waiting");
+            if (waiting.values().stream().mapToInt(Integer::intValue).sum() == expected) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        fail("等待者未按预期进入队列");
+    }
+}
@@ -0,0 +1,82 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试合并请求的跟随者按自己的截止时间等待
+ */
+class RequestCoalescingServiceTest {
+
+    @Test
+    void testFollowerTimesOutWithoutCancellingSharedCall() throws Exception {
+        RequestCoalescingService service = new RequestCoalescingService(new LLMConfig());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        LLMInferenceResult expected = LLMInferenceResult.failure("上游结果", "https://example.com/a.mp4", "test");
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<LLMInferenceResult> leader = pool.submit(() ->
+                    service.execute("key", null, Deadline.after(10, TimeUnit.SECONDS), () -> {
+                        calls.incrementAndGet();
+                        started.countDown();
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return expected;
+                    }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            assertThrows(Deadline.ExceededException.class, () ->
+                    service.execute("key", null, Deadline.after(200, TimeUnit.MILLISECONDS), () -> {
+                        calls.incrementAndGet();
+                        return expected;
+                    }));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3), "跟随者应在自己的截止时间返回");
+
+            release.countDown();
+            assertSame(expected, leader.get(5, TimeUnit.SECONDS), "跟随者超时不影响共享的调用");
+            assertEquals(1, calls.get());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testIdempotencyKeyReusedForDifferentRequestIsRejected() throws Exception {
+        RequestCoalescingService service = new RequestCoalescingService(new LLMConfig());
+        AtomicInteger calls = new AtomicInteger();
+        LLMInferenceResult first = LLMInferenceResult.success(null, "{}", 1.0, "https://example.com/a.mp4", "test");
+
+        assertSame(first, service.execute("a.mp4", "retry-1", () -> {
+            calls.incrementAndGet();
+            return first;
+        }));
+        assertTrue(service.execute("a.mp4", "retry-1", () -> {
+            calls.incrementAndGet();
+            return first;
+        }).getCoalesced(), "相同请求重试时复用结果");
+        assertThrows(RequestCoalescingService.IdempotencyConflictException.class, () ->
+                service.execute("b.mp4", "retry-1", () -> {
+                    calls.incrementAndGet();
+                    return first;
+                }), "幂等键用于其他视频时拒绝");
+        assertEquals(1, calls.get());
+    }
+}
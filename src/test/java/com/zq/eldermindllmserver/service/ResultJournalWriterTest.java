@@ -0,0 +1,51 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试结果日志停机时写完队列
+ */
+class ResultJournalWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void testShutdownFlushesQueuedResults(@TempDir Path dir) throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getResultProcessing().setResultsDir(dir.toString());
+        llmConfig.getResultProcessing().setFsyncPolicy("batch");
+        llmConfig.getResultProcessing().setMaxBatchSize(16);
+        ResultJournalWriter writer = new ResultJournalWriter(llmConfig, objectMapper);
+        writer.start();
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(writer.append(LLMInferenceResult.success(
+                    Map.of("action_id", 42), "{}", 1.0, "https://example.com/" + i + ".mp4", "api")));
+        }
+        writer.shutdown();
+
+        long lines = 0;
+        for (Path segment : writer.listSegments()) {
+            try (Stream<String> stream = Files.lines(segment)) {
+                lines += stream.filter(line -> !line.isBlank()).count();
+            }
+        }
+        assertEquals(500, lines, "停机时写完队列中的全部结果");
+        assertEquals(0L, writer.getStatus().get("failed"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.zq.eldermindllmserver.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试结果查询存储的索引、分页和重启后重建索引
+ */
+class ResultStoreServiceTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 8, 0);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private static LLMConfig config(Path dir) {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getResultProcessing().setResultsDir(dir.toString());
+        llmConfig.getResultProcessing().setFsyncPolicy("none");
+        llmConfig.getResultStore().setRecentCapacity(4);
+        return llmConfig;
+    }
+
+    private static LLMInferenceResult result(int i) {
+        LLMInferenceResult result = LLMInferenceResult.success(
+                Map.of("action_id", i % 2 == 0 ? 42 : 7), "{}", 1.0, "https://example.com/" + i + ".mp4", "api");
+        result.setTimestamp(BASE.plusMinutes(i));
+        return result;
+    }
+
+    private static void awaitIndexed(ResultStoreService store, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((int) store.getStatus().get("indexed") < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "结果未在超时前写入");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testQueryByActionAndTimeRangeWithCursor(@TempDir Path dir) throws InterruptedException {
+        LLMConfig llmConfig = config(dir);
+        ResultJournalWriter writer = new ResultJournalWriter(llmConfig, objectMapper);
+        ResultStoreService store = new ResultStoreService(llmConfig, objectMapper, writer);
+        writer.start();
+        store.init();
+        try {
+            for (int i = 0; i < 20; i++) {
+                writer.append(result(i));
+            }
+            awaitIndexed(store, 20);
+
+            List<String> videos = new ArrayList<>();
+            String cursor = null;
+            do {
+                ResultStoreService.ResultPage page = store.query(new ResultStoreService.ResultQuery(
+                        BASE.plusMinutes(4), BASE.plusMinutes(15), 42, null, null, cursor, 2));
+                page.items().forEach(r -> videos.add(r.getVideoPath()));
+                cursor = page.nextCursor();
+            } while (cursor != null);
+
+            assertEquals(List.of(14, 12, 10, 8, 6, 4).stream().map(i -> "https://example.com/" + i + ".mp4").toList(),
+                    videos, "按时间倒序返回范围内action_id=42的结果且分页不重不漏");
+
+            ResultStoreService.ResultPage byVideo = store.query(new ResultStoreService.ResultQuery(
+                    null, null, null, "https://example.com/3.mp4", true, null, null));
+            assertEquals(1, byVideo.items().size());
+            assertEquals(BASE.plusMinutes(3), byVideo.items().get(0).getTimestamp(), "超出环形缓冲区的结果从分段文件读取");
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void testIndexIsRebuiltFromSegmentsAfterRestart(@TempDir Path dir) throws InterruptedException {
+        LLMConfig llmConfig = config(dir);
+        ResultJournalWriter writer = new ResultJournalWriter(llmConfig, objectMapper);
+        ResultStoreService store = new ResultStoreService(llmConfig, objectMapper, writer);
+        writer.start();
+        store.init();
+        for (int i = 0; i < 10; i++) {
+            writer.append(result(i));
+        }
+        awaitIndexed(store, 10);
+        writer.shutdown();
+
+        llmConfig.getResultStore().setMaxIndexEntries(6);
+        ResultJournalWriter restartedWriter = new ResultJournalWriter(llmConfig, objectMapper);
+        ResultStoreService restarted = new ResultStoreService(llmConfig, objectMapper, restartedWriter);
+        restarted.init();
+
+        assertEquals(6, restarted.getStatus().get("indexed"), "索引条数受上限约束");
+        ResultStoreService.ResultPage page = restarted.query(new ResultStoreService.ResultQuery(
+                null, null, 7, null, null, null, 10));
+        assertEquals(List.of(9, 7, 5).stream().map(i -> "https://example.com/" + i + ".mp4").toList(),
+                page.items().stream().map(LLMInferenceResult::getVideoPath).toList(), "保留最新的结果");
+        assertNull(page.nextCursor());
+        assertEquals(3L, restarted.getStatus().get("diskReads"));
+    }
+
+    @Test
+    void testLegacyResultFilesAreImportedOnce(@TempDir Path dir) throws Exception {
+        for (int i = 0; i < 3; i++) {
+            objectMapper.writerWithDefaultPrettyPrinter()
+                    .writeValue(dir.resolve("llm_result_2025010" + (i + 1) + "_080000_000.json").toFile(), result(i * 1440));
+        }
+        Files.writeString(dir.resolve("llm_result_20250101_090000_000.json"), "{ 不完整");
+
+        LLMConfig llmConfig = config(dir);
+        ResultJournalWriter writer = new ResultJournalWriter(llmConfig, objectMapper);
+        ResultStoreService store = new ResultStoreService(llmConfig, objectMapper, writer);
+        writer.start();
+        store.init();
+        writer.importLegacyResults();
+        writer.shutdown();
+
+        assertEquals(3, store.getStatus().get("indexed"), "导入的分段提交后建立索引");
+        ResultStoreService.ResultPage page = store.query(new ResultStoreService.ResultQuery(
+                null, null, 42, null, null, null, 10));
+        assertEquals(List.of(2880, 1440, 0).stream().map(i -> "https://example.com/" + i + ".mp4").toList(),
+                page.items().stream().map(LLMInferenceResult::getVideoPath).toList());
+        Path legacy = dir.resolve("legacy");
+        assertTrue(Files.exists(legacy.resolve("llm_result_20250101_080000_000.json")), "原文件移至legacy目录");
+        assertTrue(Files.exists(legacy.resolve("llm_result_20250101_090000_000.json")), "无法解析的文件同样移走");
+        assertEquals(3, writer.listSegments().size(), "按文件名中的日期分别写入分段");
+
+        // 模拟上次导入已提交分段但未移走原文件
+        Files.copy(legacy.resolve("llm_result_20250102_080000_000.json"), dir.resolve("llm_result_20250102_080000_000.json"));
+        ResultJournalWriter restartedWriter = new ResultJournalWriter(llmConfig, objectMapper);
+        ResultStoreService restarted = new ResultStoreService(llmConfig, objectMapper, restartedWriter);
+        restartedWriter.start();
+        restarted.init();
+        restartedWriter.importLegacyResults();
+        restartedWriter.shutdown();
+        assertEquals(3, restarted.getStatus().get("indexed"), "重启后不重复导入");
+        assertFalse(Files.exists(dir.resolve("llm_result_20250102_080000_000.json")));
+    }
+}
@@ -0,0 +1,59 @@
+package com.zq.eldermindllmserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试增量JSON扫描
+ */
+class StreamingJsonScannerTest {
+
+    @Test
+    void testDetectsActionIdBeforeObjectCompletes() {
+        StreamingJsonScanner scanner = new StreamingJsonScanner();
+        scanner.append("分析如下：```json\n{\"detected_action\": {\"action_");
+        assertNull(scanner.getActionId());
+
+        scanner.append("id\": 4");
+        assertNull(scanner.getActionId(), "数字尚未结束时不应识别");
+
+        scanner.append("2, \"chinese_name\": \"摔倒\"}");
+        assertEquals(42, scanner.getActionId());
+        assertFalse(scanner.isComplete());
+
+        scanner.append(", \"analysis\": {\"description\": \"含有}的文本\"}}\n```后续说明");
+        assertTrue(scanner.isComplete());
+        assertTrue(scanner.getJson().startsWith("{\"detected_action\""));
+        assertTrue(scanner.getJson().endsWith("}}"));
+    }
+
+    @Test
+    void testSkipsBracePairsInPreambleProse() {
+        StreamingJsonScanner scanner = new StreamingJsonScanner();
+        scanner.append("按照{ACTION}模板，示例为{\"note\": \"格式\"}，结果：");
+        assertFalse(scanner.isComplete(), "说明文字中的括号对不是识别结果");
+
+        scanner.append("{\"detected_action\": {\"action_id\": 42}}");
+        assertTrue(scanner.isComplete());
+        assertEquals("{\"detected_action\": {\"action_id\": 42}}", scanner.getJson());
+        assertEquals(42, scanner.getActionId());
+    }
+
+    @Test
+    void testSimpleModeFlatObjectIsComplete() {
+        StreamingJsonScanner scanner = new StreamingJsonScanner();
+        scanner.append("{\"action_id\": 42, \"action_name\": \"摔倒\"}");
+        assertTrue(scanner.isComplete());
+        assertEquals(42, scanner.getActionId());
+    }
+
+    @Test
+    void testIncompleteWithoutObject() {
+        StreamingJsonScanner scanner = new StreamingJsonScanner();
+        scanner.append("没有JSON的输出");
+        assertFalse(scanner.isComplete());
+        assertNull(scanner.getJson());
+        assertNull(scanner.getActionId());
+    }
+}
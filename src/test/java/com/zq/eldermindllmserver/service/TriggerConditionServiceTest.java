@@ -0,0 +1,127 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import com.zq.eldermindllmserver.model.LLMInferenceResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试触发条件的判定规则与计数
+ */
+class TriggerConditionServiceTest {
+
+    private static final String CATALOG = """
+            {
+              "actions": {
+                "0": {"english": "drink water", "chinese": "喝水", "category": "日常活动", "risk_level": "低", "is_critical": false},
+                "42": {"english": "falling", "chinese": "摔倒", "category": "紧急情况", "risk_level": "高", "is_critical": true},
+                "43": {"english": "touch head", "chinese": "摸头", "category": "健康状况", "risk_level": "中", "is_critical": true}
+              },
+              "categories": {},
+              "critical_actions": [42, 43],
+              "emergency_actions": [%s],
+              "health_related_actions": [43]
+            }
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    private ActionMappingService catalog(String emergencyActions) throws IOException {
+        Path file = tempDir.resolve("actions.json");
+        Files.writeString(file, CATALOG.formatted(emergencyActions));
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getActionCatalog().setPath(file.toString());
+        ActionMappingService service = new ActionMappingService(llmConfig);
+        service.init();
+        return service;
+    }
+
+    private static LLMInferenceResult.OriginalEvent event(int actionId, double confidence) {
+        return LLMInferenceResult.OriginalEvent.builder().actionId(actionId).confidence(confidence).build();
+    }
+
+    @Test
+    void testConfidenceWindowAndEmergencyBypass() throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        LLMConfig.TriggerConditions conditions = llmConfig.getTriggerConditions();
+        conditions.setMinConfidence(0.1);
+        conditions.setMaxConfidence(0.8);
+        TriggerConditionService service = new TriggerConditionService(llmConfig, catalog("42"), () -> 0.5);
+
+        assertEquals(TriggerConditionService.Rule.MATCHED, service.evaluate(event(0, 0.5)).rule());
+        assertEquals(TriggerConditionService.Rule.BELOW_MIN_CONFIDENCE, service.evaluate(event(0, 0.05)).rule());
+        assertEquals(TriggerConditionService.Rule.ABOVE_MAX_CONFIDENCE, service.evaluate(event(43, 0.95)).rule());
+        // 紧急动作置信度再高也要推理
+        assertTrue(service.evaluate(event(42, 0.95)).forward());
+        assertEquals(TriggerConditionService.Rule.BELOW_MIN_CONFIDENCE, service.evaluate(event(42, 0.01)).rule());
+
+        conditions.setEmergencyBypass(false);
+        TriggerConditionService strict = new TriggerConditionService(llmConfig, catalog("42"), () -> 0.5);
+        assertEquals(TriggerConditionService.Rule.ABOVE_MAX_CONFIDENCE, strict.evaluate(event(42, 0.95)).rule());
+
+        Map<String, Object> status = service.getStatus();
+        assertEquals(2L, status.get("passed"));
+        assertEquals(3L, status.get("dropped"));
+    }
+
+    @Test
+    void testTargetCriticalAndSampling() throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        LLMConfig.TriggerConditions conditions = llmConfig.getTriggerConditions();
+        conditions.setMaxConfidence(1.0);
+        conditions.setRoutineSampleRate(0.25);
+        ActionMappingService actions = catalog("42");
+
+        TriggerConditionService sampled = new TriggerConditionService(llmConfig, actions, () -> 0.5);
+        assertEquals(TriggerConditionService.Rule.SAMPLED_OUT, sampled.evaluate(event(0, 0.5)).rule());
+        assertTrue(sampled.evaluate(event(43, 0.5)).forward());
+        TriggerConditionService lucky = new TriggerConditionService(llmConfig, actions, () -> 0.1);
+        assertTrue(lucky.evaluate(event(0, 0.5)).forward());
+
+        // 按动作覆盖采样率
+        LLMConfig.ActionThreshold threshold = new LLMConfig.ActionThreshold();
+        threshold.setSampleRate(1.0);
+        conditions.getActionThresholds().put(0, threshold);
+        assertTrue(new TriggerConditionService(llmConfig, actions, () -> 0.5).evaluate(event(0, 0.5)).forward());
+
+        conditions.setCriticalActionsOnly(true);
+        TriggerConditionService critical = new TriggerConditionService(llmConfig, actions, () -> 0.5);
+        assertEquals(TriggerConditionService.Rule.NOT_CRITICAL, critical.evaluate(event(0, 0.5)).rule());
+        assertTrue(critical.evaluate(event(43, 0.5)).forward());
+
+        conditions.setCriticalActionsOnly(false);
+        conditions.setTargetActionsOnly(true);
+        conditions.setTargetActions(List.of(43));
+        TriggerConditionService target = new TriggerConditionService(llmConfig, actions, () -> 0.5);
+        assertEquals(TriggerConditionService.Rule.NOT_TARGET, target.evaluate(event(0, 0.5)).rule());
+        assertEquals(TriggerConditionService.Rule.NOT_TARGET, target.evaluate(event(999, 0.5)).rule());
+        assertTrue(target.evaluate(event(43, 0.5)).forward());
+        assertTrue(target.evaluate(event(42, 0.5)).forward());
+
+        conditions.setAllEvents(true);
+        assertEquals(TriggerConditionService.Rule.ALL_EVENTS,
+                new TriggerConditionService(llmConfig, actions, () -> 0.5).evaluate(event(999, 0.0)).rule());
+    }
+
+    @Test
+    void testRecompilesAfterCatalogReload() throws IOException {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getTriggerConditions().setMaxConfidence(0.8);
+        ActionMappingService actions = catalog("");
+        TriggerConditionService service = new TriggerConditionService(llmConfig, actions, () -> 0.5);
+        assertFalse(service.evaluate(event(42, 0.95)).forward());
+
+        Files.writeString(tempDir.resolve("actions.json"), CATALOG.formatted("42"));
+        actions.reload();
+        assertTrue(service.evaluate(event(42, 0.95)).forward());
+    }
+}
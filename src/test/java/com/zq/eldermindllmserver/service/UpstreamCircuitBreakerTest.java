@@ -0,0 +1,115 @@
+package com.zq.eldermindllmserver.service;
+
+import com.zq.eldermindllmserver.config.LLMConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试上游熔断、错误分类与退避
+ */
+class UpstreamCircuitBreakerTest {
+
+    @Test
+    void testOpensAfterConsecutiveFailuresAndProbesWhenHalfOpen() {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getCircuitBreaker().setFailureThreshold(3);
+        llmConfig.getCircuitBreaker().setOpenDuration(10);
+        AtomicLong clock = new AtomicLong();
+        UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker(llmConfig, clock::get);
+
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        // 成功会清零连续失败次数
+        assertNotNull(breaker.tryAcquire());
+        breaker.onSuccess();
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(UpstreamCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(UpstreamCircuitBreaker.State.OPEN, breaker.getState());
+
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        breaker.release(breaker.tryAcquire());
+        assertNotNull(breaker.tryAcquire());
+        breaker.onSuccess();
+        assertEquals(UpstreamCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2L, breaker.getStatus().get("opened"));
+        assertEquals(2L, breaker.getStatus().get("rejected"));
+    }
+
+    @Test
+    void testReleasingNormalCallDoesNotFreeProbeSlot() {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getCircuitBreaker().setFailureThreshold(1);
+        llmConfig.getCircuitBreaker().setOpenDuration(10);
+        llmConfig.getCircuitBreaker().setHalfOpenMaxCalls(1);
+        AtomicLong clock = new AtomicLong();
+        UpstreamCircuitBreaker breaker = new UpstreamCircuitBreaker(llmConfig, clock::get);
+
+        // 关闭状态下放行的调用，在半开期间才结束
+        UpstreamCircuitBreaker.Permit call = breaker.tryAcquire();
+        assertFalse(call.isProbe());
+        assertNotNull(breaker.tryAcquire());
+        breaker.onFailure();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        UpstreamCircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertTrue(probe.isProbe());
+        breaker.release(call);
+        assertNull(breaker.tryAcquire(), "归还普通调用不应释放探测名额");
+
+        // 上一轮半开的探测在下一轮半开期间归还也不影响当前名额
+        breaker.onFailure();
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertNotNull(breaker.tryAcquire());
+        breaker.release(probe);
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void testErrorClassification() {
+        assertTrue(UpstreamException.ofStatus(503, null).isRetryable());
+        assertTrue(UpstreamException.ofStatus(429, "7").isRetryable());
+        assertEquals(7000, UpstreamException.ofStatus(429, "7").getRetryAfterMillis());
+        assertFalse(UpstreamException.ofStatus(400, null).isRetryable());
+        assertFalse(UpstreamException.ofStatus(401, null).isRetryable());
+        assertTrue(UpstreamException.of(new SocketTimeoutException("Read timed out")).isRetryable());
+        assertTrue(UpstreamException.of(new IOException("Connection reset")).isRetryable());
+        assertFalse(UpstreamException.of(new IllegalStateException("bad")).isRetryable());
+
+        assertEquals(0, UpstreamException.parseRetryAfter("not a date"));
+        assertEquals(0, UpstreamException.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    void testDecorrelatedJitterBackoffIsBounded() {
+        RetryBackoff max = new RetryBackoff(500, 10000, () -> 0.999);
+        long previous = 500;
+        for (int i = 0; i < 10; i++) {
+            long delay = max.nextDelayMillis();
+            assertTrue(delay >= 500 && delay <= Math.min(10000, previous * 3));
+            previous = delay;
+        }
+        assertTrue(previous > 9000);
+
+        RetryBackoff min = new RetryBackoff(500, 10000, () -> 0.0);
+        assertEquals(500, min.nextDelayMillis());
+        assertEquals(500, min.nextDelayMillis());
+    }
+}
@@ -0,0 +1,144 @@
+package com.zq.eldermindllmserver.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.zq.eldermindllmserver.config.LLMConfig;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 测试上游请求的截止时间与对冲
+ */
+class UpstreamRequestExecutorTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private UpstreamRequestExecutor executor;
+    private RateLimiterService rateLimiter;
+    private String url;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        // 第一个请求一直挂起，之后的请求立即返回
+        server.createContext("/", exchange -> {
+            int n = requests.incrementAndGet();
+            if (n == 1) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = ("response-" + n).getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = exchange.getResponseBody()) {
+                exchange.sendResponseHeaders(200, body.length);
+                out.write(body);
+            } catch (IOException e) {
+                // 客户端已中止
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        httpClient = HttpClients.createDefault();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        executor.shutdown();
+        httpClient.close();
+        server.stop(0);
+    }
+
+    private String call(Deadline deadline) throws Exception {
+        return executor.execute(deadline, null, () -> new HttpPost(url),
+                response -> EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    void testHedgedRequestWinsOverSlowAttempt() throws Exception {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getHedging().setEnabled(true);
+        llmConfig.getHedging().setMinSamples(0);
+        llmConfig.getHedging().setMinDelay(100);
+        llmConfig.getHedging().setMaxRatio(1.0);
+        rateLimiter = new RateLimiterService(llmConfig);
+        executor = new UpstreamRequestExecutor(llmConfig, httpClient, rateLimiter);
+
+        long start = System.nanoTime();
+        assertEquals("response-2", call(Deadline.after(5, TimeUnit.SECONDS)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        assertEquals(1L, executor.getStatus().get("hedges"));
+        assertEquals(1L, executor.getStatus().get("hedgeWins"));
+        assertEquals(1L, executor.getStatus().get("aborted"));
+        // 对冲请求结束后归还许可
+        long released = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (concurrent() != 0 && System.nanoTime() - released < 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, concurrent());
+    }
+
+    @Test
+    void testHedgeSkippedWithoutFreePermit() throws Exception {
+        LLMConfig llmConfig = new LLMConfig();
+        llmConfig.getHedging().setEnabled(true);
+        llmConfig.getHedging().setMinSamples(0);
+        llmConfig.getHedging().setMinDelay(100);
+        llmConfig.getHedging().setMaxRatio(1.0);
+        llmConfig.getRateLimiter().setMaxConcurrentRequests(1);
+        rateLimiter = new RateLimiterService(llmConfig);
+        executor = new UpstreamRequestExecutor(llmConfig, httpClient, rateLimiter);
+
+        // 首次请求占用唯一的许可，对冲请求拿不到许可
+        assertTrue(rateLimiter.acquirePermit());
+        try {
+            assertThrows(Deadline.ExceededException.class, () -> call(Deadline.after(1500, TimeUnit.MILLISECONDS)));
+        } finally {
+            rateLimiter.releasePermit();
+        }
+        assertEquals(0L, executor.getStatus().get("hedges"));
+        assertEquals(1L, executor.getStatus().get("hedgesSkipped"));
+        assertEquals(1, requests.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private int concurrent() {
+        Map<String, Object> concurrent = (Map<String, Object>) rateLimiter.getStatus().get("concurrent");
+        return (Integer) concurrent.get("current");
+    }
+
+    @Test
+    void testDeadlineAbortsSlowAttempt() {
+        LLMConfig llmConfig = new LLMConfig();
+        executor = new UpstreamRequestExecutor(llmConfig, httpClient, new RateLimiterService(llmConfig));
+
+        long start = System.nanoTime();
+        assertThrows(Deadline.ExceededException.class, () -> call(Deadline.after(300, TimeUnit.MILLISECONDS)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        assertEquals(1L, executor.getStatus().get("deadlineExceeded"));
+        assertEquals(0L, executor.getStatus().get("hedges"));
+
+        assertThrows(Deadline.ExceededException.class, () -> call(Deadline.after(0, TimeUnit.MILLISECONDS)));
+    }
+}